@@ -0,0 +1,101 @@
+package com.sap.refactoring.models;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link UserSerializer} with the reflection based bean serializer of Jackson it replaced, in json, smile and cbor.
+ * A list of users is written like the response of {@code GET /users}. The {@link OutputSize} counters add up the bytes
+ * and the users written, so that the size per user of every format is {@code bytes / users} of the results.
+ * Run with {@code ./gradlew jmh -PjmhIncludes=UserSerializationBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserSerializationBenchmark {
+    private static final int USERS_COUNT = 1000;
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    @Param({"userSerializer", "beanSerializer"})
+    private String serializer;
+
+    private ObjectWriter writer;
+    private List<User> users;
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream(256 * USERS_COUNT);
+
+    /**
+     * Turns {@link UserSerializer} off, so that the bean serializer is used like before it was added
+     */
+    @JsonSerialize(using = JsonSerializer.None.class)
+    private abstract static class BeanSerialized {
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final ObjectMapper mapper = switch (format) {
+            case "smile" -> new SmileMapper();
+            case "cbor" -> new CBORMapper();
+            default -> new ObjectMapper();
+        };
+        if (serializer.equals("beanSerializer")) {
+            mapper.addMixIn(User.class, BeanSerialized.class);
+        }
+        writer = mapper.writerFor(new TypeReference<Collection<User>>() {});
+
+        users = new ArrayList<>(USERS_COUNT);
+        for (int i = 0; i < USERS_COUNT; i++) {
+            users.add(User.builder()
+                    .id(UUID.randomUUID())
+                    .name("name" + i)
+                    .email("user" + i + "@bench.com")
+                    .roles(List.of("user", "admin"))
+                    .version(0L)
+                    .build());
+        }
+    }
+
+    /**
+     * Bytes and users written in an iteration, reported next to the time of the benchmark.
+     * JMH sums both over the iterations
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class OutputSize {
+        public long bytes;
+        public long users;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            users = 0;
+        }
+    }
+
+    @Benchmark
+    public int serializeUsers(OutputSize outputSize) throws IOException {
+        output.reset();
+        writer.writeValue(output, users);
+        outputSize.bytes += output.size();
+        outputSize.users += users.size();
+        return output.size();
+    }
+}
@@ -0,0 +1,73 @@
+package com.sap.refactoring.persistence.inmemory;
+
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.models.UserUniqueKey;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the name index of {@link InMemoryUserDao} with the linear stream filter it replaced.
+ * The filter works on its own map filled with the same users, exactly as the dao did before the index was added.
+ * Run with {@code ./gradlew jmh -PjmhIncludes=FindUsersByNameBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FindUsersByNameBenchmark {
+    private static final int USERS_PER_NAME = 10;
+
+    @Param({"10000", "100000", "1000000"})
+    private int storeSize;
+
+    private InMemoryUserDao userDao;
+    private Map<UserUniqueKey, User> users;
+    private String[] names;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        userDao = new InMemoryUserDao();
+        users = new ConcurrentHashMap<>();
+        names = new String[storeSize / USERS_PER_NAME];
+
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "name" + i;
+        }
+
+        for (int i = 0; i < storeSize; i++) {
+            final User user = User.builder()
+                    .name(names[i / USERS_PER_NAME])
+                    .email("user" + i + "@bench.com")
+                    .roles(List.of("user"))
+                    .build();
+            final User savedUser = userDao.saveUser(user);
+            users.put(new UserUniqueKey(savedUser), new User(savedUser));
+        }
+    }
+
+    @Benchmark
+    public Collection<User> nameIndex() {
+        return userDao.findUsersByName(randomName(), true);
+    }
+
+    @Benchmark
+    public Collection<User> streamFilter() {
+        final String name = randomName();
+        return users.values().stream()
+                .filter(u -> u.getName().equals(name))
+                .map(User::new)
+                .toList();
+    }
+
+    private String randomName() {
+        return names[ThreadLocalRandom.current().nextInt(names.length)];
+    }
+}
@@ -0,0 +1,81 @@
+package com.sap.refactoring.persistence.inmemory;
+
+import com.sap.refactoring.models.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reads of {@link InMemoryUserDao}. The interesting figure is the allocation per operation reported by the gc profiler,
+ * reads create only the returned {@link User}s, which share the immutable roles of the stored users.
+ * Run with {@code ./gradlew jmh -PjmhIncludes=ReadUsersBenchmark -PjmhProfilers=gc}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadUsersBenchmark {
+    private static final int USERS_PER_NAME = 10;
+
+    @Param({"100000", "1000000"})
+    private int storeSize;
+
+    private InMemoryUserDao userDao;
+    private String[] ids;
+    private String[] names;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        userDao = new InMemoryUserDao();
+        ids = new String[storeSize];
+        names = new String[storeSize / USERS_PER_NAME];
+
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "name" + i;
+        }
+
+        for (int i = 0; i < storeSize; i++) {
+            final User user = User.builder()
+                    .name(names[i / USERS_PER_NAME])
+                    .email("user" + i + "@bench.com")
+                    .roles(List.of("user", "admin"))
+                    .build();
+            ids[i] = userDao.saveUser(user).getId().toString();
+        }
+    }
+
+    @Benchmark
+    public Collection<User> getAllUsers() {
+        return userDao.getAllUsers(true);
+    }
+
+    @Benchmark
+    public User getUserById() {
+        return userDao.getUserById(ids[ThreadLocalRandom.current().nextInt(ids.length)], true);
+    }
+
+    @Benchmark
+    public Collection<User> findUsersByName() {
+        return userDao.findUsersByName(names[ThreadLocalRandom.current().nextInt(names.length)], true);
+    }
+
+    /**
+     * Type-ahead search by the first characters of a name, e.g. {@code Name12} finds users named {@code name12}, {@code name120}...
+     */
+    @Benchmark
+    public List<User> findUsersByNamePrefix() {
+        final String name = names[ThreadLocalRandom.current().nextInt(names.length)];
+        return userDao.findUsersByNamePrefix("N" + name.substring(1, Math.min(name.length(), 6)), 20, true);
+    }
+
+    @Benchmark
+    public List<User> getUsersPage() {
+        return userDao.getUsersPage(UUID.fromString(ids[ThreadLocalRandom.current().nextInt(ids.length)]), 100, true);
+    }
+}
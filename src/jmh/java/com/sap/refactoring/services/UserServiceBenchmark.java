@@ -0,0 +1,138 @@
+package com.sap.refactoring.services;
+
+import com.sap.refactoring.JavaRefactoringTestApplication;
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.persistence.UserDao;
+import com.sap.refactoring.persistence.db.DataBaseUserDao;
+import com.sap.refactoring.persistence.inmemory.InMemoryUserDao;
+import com.sap.refactoring.persistence.offheap.OffHeapUserDao;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput of {@link UserService} operations against {@link InMemoryUserDao}, {@link OffHeapUserDao}
+ * and against {@link DataBaseUserDao} on the Postgres database of {@code docker-compose.yaml}, configured by the {@code local} profile.
+ * The database dao works in the schema {@value #SCHEMA}, which is cleaned at the start of every trial,
+ * and uses Postgres specific statements like the bulk insert of {@link DataBaseUserDao#saveUsers(List)}.
+ * The number of threads is set by {@code -PjmhThreads}, results are written to {@code build/results/jmh/results.json}.
+ * Saving users makes the store grow during the measurement, so its results are comparable only between runs of the same length.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserServiceBenchmark {
+    private static final int USERS_PER_NAME = 10;
+    private static final int SAVE_CHUNK_SIZE = 10_000;
+    private static final int OFF_HEAP_SLAB_SIZE = 64 * 1024 * 1024;
+    private static final String SCHEMA = "users_benchmark";
+
+    @Param({"inMemory", "offHeap", "dataBase"})
+    private String dao;
+
+    @Param({"1000", "100000"})
+    private int storeSize;
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+    private List<User> savedUsers;
+    private final AtomicLong emailCounter = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        userService = new UserService(createUserDao(), new SimpleMeterRegistry());
+
+        savedUsers = new ArrayList<>(storeSize);
+        final List<User> chunk = new ArrayList<>(SAVE_CHUNK_SIZE);
+        for (int i = 0; i < storeSize; i++) {
+            chunk.add(newUser("name" + i / USERS_PER_NAME));
+            if (chunk.size() == SAVE_CHUNK_SIZE || i == storeSize - 1) {
+                userService.saveUsers(chunk).forEach(result -> savedUsers.add(result.getUser()));
+                chunk.clear();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public User saveUser() {
+        return userService.saveUser(newUser("newName"));
+    }
+
+    @Benchmark
+    public User getUserById() {
+        return userService.getUserById(randomUser().getId().toString(), true);
+    }
+
+    @Benchmark
+    public Collection<User> findUsersByName() {
+        return userService.findUsersByName(randomUser().getName(), true);
+    }
+
+    @Benchmark
+    public User updateUser() {
+        final User user = new User(randomUser());
+        user.setRoles(List.of("role", "updated"));
+        return userService.updateUser(user.getId().toString(), user);
+    }
+
+    @Benchmark
+    public Collection<User> getAllUsers() {
+        return userService.getAllUsers(true);
+    }
+
+    private UserDao createUserDao() {
+        if ("inMemory".equals(dao)) {
+            return new InMemoryUserDao();
+        }
+        if ("offHeap".equals(dao)) {
+            return new OffHeapUserDao(OFF_HEAP_SLAB_SIZE);
+        }
+
+        context = new SpringApplicationBuilder(JavaRefactoringTestApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("local")
+                .properties(
+                        "spring.datasource.url=jdbc:postgresql://localhost:5432/JAVA_REFACTOR?reWriteBatchedInserts=true&currentSchema=" + SCHEMA,
+                        "spring.flyway.schemas=" + SCHEMA,
+                        "spring.flyway.clean-disabled=false",
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=WARN")
+                .run();
+        final Flyway flyway = context.getBean(Flyway.class);
+        flyway.clean();
+        flyway.migrate();
+        return context.getBean(DataBaseUserDao.class);
+    }
+
+    private User newUser(String name) {
+        return User.builder()
+                .name(name)
+                .email("user" + emailCounter.incrementAndGet() + "@bench.com")
+                .roles(List.of("role"))
+                .build();
+    }
+
+    private User randomUser() {
+        return savedUsers.get(ThreadLocalRandom.current().nextInt(savedUsers.size()));
+    }
+}
@@ -0,0 +1,151 @@
+package com.sap.refactoring.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of the user API: a number of concurrent clients read and update random users for a fixed time,
+ * then throughput and latency percentiles are printed.
+ * To compare execution modes run it once against the application started without and once with the
+ * {@code virtual-threads} profile, e.g. {@code ./gradlew loadTest -PloadTestClients=1000 -PloadTestDuration=60}
+ * Arguments: base url, number of clients, duration in seconds, number of users to create before the test
+ */
+public class UserApiLoadTest {
+    private static final int UPDATES_PER_100_REQUESTS = 10;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient;
+    private final String usersUrl;
+
+    public UserApiLoadTest(String baseUrl, ExecutorService executor) {
+        this.usersUrl = baseUrl + "/users";
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(executor)
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        final String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        final int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        final Duration duration = Duration.ofSeconds(args.length > 2 ? Long.parseLong(args[2]) : 60);
+        final int users = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            final UserApiLoadTest loadTest = new UserApiLoadTest(baseUrl, executor);
+            final List<String> ids = loadTest.createUsers(users);
+            System.out.printf("created %d users, running %d clients for %s%n", ids.size(), clients, duration);
+            loadTest.run(executor, ids, clients, duration).print(duration);
+        }
+    }
+
+    private List<String> createUsers(int count) throws Exception {
+        final String prefix = UUID.randomUUID().toString();
+        final List<Map<String, Object>> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(Map.of("name", "load" + i, "email", "load" + i + "@" + prefix + ".com", "roles", List.of("load")));
+        }
+
+        final HttpResponse<String> response = httpClient.send(
+                HttpRequest.newBuilder(URI.create(usersUrl + "/batch"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(users)))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("failed to create users: " + response.statusCode() + " " + response.body());
+        }
+
+        final List<String> ids = new ArrayList<>(count);
+        for (JsonNode result : objectMapper.readTree(response.body())) {
+            ids.add(result.path("user").path("id").asText());
+        }
+        return ids;
+    }
+
+    private Result run(ExecutorService executor, List<String> ids, int clients, Duration duration) throws Exception {
+        final long deadline = System.nanoTime() + duration.toNanos();
+        final AtomicLong errors = new AtomicLong();
+        final List<Future<long[]>> futures = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            futures.add(executor.submit(() -> runClient(ids, deadline, errors)));
+        }
+
+        final List<long[]> latencies = new ArrayList<>(clients);
+        for (Future<long[]> future : futures) {
+            latencies.add(future.get());
+        }
+        return new Result(latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray(), errors.get());
+    }
+
+    private long[] runClient(List<String> ids, long deadline, AtomicLong errors) {
+        long[] latencies = new long[1024];
+        int count = 0;
+        while (System.nanoTime() < deadline) {
+            final String id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+            final long start = System.nanoTime();
+            try {
+                final HttpResponse<String> response = httpClient.send(nextRequest(id), HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() >= 400) {
+                    errors.incrementAndGet();
+                }
+            } catch (Exception e) {
+                errors.incrementAndGet();
+                continue;
+            }
+
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = System.nanoTime() - start;
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private HttpRequest nextRequest(String id) throws Exception {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(usersUrl + "/" + id)).timeout(Duration.ofSeconds(30));
+        if (ThreadLocalRandom.current().nextInt(100) >= UPDATES_PER_100_REQUESTS) {
+            return builder.GET().build();
+        }
+
+        final JsonNode user = objectMapper.readTree(httpClient.send(builder.GET().build(), HttpResponse.BodyHandlers.ofString()).body());
+        return builder.header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(Map.of(
+                        "name", "updated" + ThreadLocalRandom.current().nextInt(1000),
+                        "email", user.path("email").asText(),
+                        "roles", List.of("load", "updated")))))
+                .build();
+    }
+
+    private record Result(long[] latencies, long errors) {
+        void print(Duration duration) {
+            System.out.printf("requests: %d, errors: %d, throughput: %.1f req/s%n",
+                    latencies.length, errors, latencies.length / (double) duration.toSeconds());
+            if (latencies.length > 0) {
+                System.out.printf("latency ms: p50 %.2f, p90 %.2f, p99 %.2f, max %.2f%n",
+                        percentile(0.5), percentile(0.9), percentile(0.99), latencies[latencies.length - 1] / 1e6);
+            }
+        }
+
+        private double percentile(double percentile) {
+            return latencies[(int) Math.min(latencies.length - 1, Math.ceil(percentile * latencies.length) - 1)] / 1e6;
+        }
+    }
+}
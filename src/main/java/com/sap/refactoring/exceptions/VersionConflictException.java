@@ -0,0 +1,10 @@
+package com.sap.refactoring.exceptions;
+
+/**
+ * Exception indicating that the resource has been modified since the version the request is based on
+ */
+public class VersionConflictException extends RuntimeException {
+    public VersionConflictException(String message) {
+        super(message);
+    }
+}
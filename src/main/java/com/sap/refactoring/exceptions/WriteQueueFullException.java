@@ -0,0 +1,11 @@
+package com.sap.refactoring.exceptions;
+
+/**
+ * Exception indicating that a modification could not be queued for writing to the database in time
+ * because the queue of pending modifications is full
+ */
+public class WriteQueueFullException extends RuntimeException {
+    public WriteQueueFullException(String message) {
+        super(message);
+    }
+}
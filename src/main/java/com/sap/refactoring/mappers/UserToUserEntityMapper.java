@@ -3,6 +3,7 @@ package com.sap.refactoring.mappers;
 import com.sap.refactoring.models.User;
 import com.sap.refactoring.persistence.RoleEntity;
 import com.sap.refactoring.persistence.UserEntity;
+import com.sap.refactoring.persistence.UserSummary;
 
 import java.util.List;
 import java.util.Set;
@@ -18,6 +19,7 @@ public class UserToUserEntityMapper {
         userEntity.setId(user.getId());
         userEntity.setName(user.getName());
         userEntity.setEmail(user.getEmail());
+        userEntity.setVersion(user.getVersion());
 
         Set<RoleEntity> roles = user.getRoles().stream()
                 .map(roleName -> RoleEntity.builder().name(roleName).build())
@@ -29,19 +31,44 @@ public class UserToUserEntityMapper {
     }
 
     public static User toDTO(UserEntity userEntity) {
+        return toDTO(userEntity, true);
+    }
+
+    /**
+     * Maps the entity without touching its roles unless {@code withRoles} is set, the roles of the dto are empty then
+     */
+    public static User toDTO(UserEntity userEntity, boolean withRoles) {
         User userDTO = new User();
 
         // Set basic properties
         userDTO.setId(userEntity.getId());
         userDTO.setName(userEntity.getName());
         userDTO.setEmail(userEntity.getEmail());
+        userDTO.setVersion(userEntity.getVersion());
+        userDTO.setUpdatedAt(userEntity.getUpdatedAt());
+
+        if (withRoles) {
+            List<String> roles = userEntity.getRoles().stream()
+                    .map(RoleEntity::getName)
+                    .toList();
 
-        List<String> roles = userEntity.getRoles().stream()
-                .map(RoleEntity::getName)
-                .toList();
+            userDTO.setRoles(roles);
+        }
 
-        userDTO.setRoles(roles);
+        return userDTO;
+    }
 
+    /**
+     * Maps the projection of a user without roles, the roles of the dto are empty
+     */
+    public static User toDTO(UserSummary userSummary) {
+        final User userDTO = User.builder()
+                .id(userSummary.getId())
+                .name(userSummary.getName())
+                .email(userSummary.getEmail())
+                .version(userSummary.getVersion())
+                .build();
+        userDTO.setUpdatedAt(userSummary.getUpdatedAt());
         return userDTO;
     }
 }
@@ -0,0 +1,102 @@
+package com.sap.refactoring.metrics;
+
+import com.sap.refactoring.exceptions.ConstraintViolationException;
+import com.sap.refactoring.exceptions.NotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times every public method of the user controller, of the user service and every {@code UserDao} method of the dao beans.
+ * Timers are named {@code users.operation} and tagged with the layer, the class and the method, so that the time spent
+ * in the dao can be told apart from the time spent in the layers above it.
+ * Their {@code exception} tag is the simple name of the thrown exception or {@code none}.
+ * {@link ConstraintViolationException} and {@link NotFoundException} are also counted by {@code users.errors}.
+ * The meters are built and registered once per combination of tags and then looked up by it
+ */
+@Aspect
+@Component
+public class LayerTimingAspect {
+    static final String TIMER_NAME = "users.operation";
+    static final String ERRORS_COUNTER_NAME = "users.errors";
+    private static final String NO_EXCEPTION = "none";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<MeterKey, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<MeterKey, Counter> errorCounters = new ConcurrentHashMap<>();
+
+    public LayerTimingAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(public * com.sap.refactoring.web.controller.UserController.*(..))")
+    public Object timeController(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(joinPoint, "controller");
+    }
+
+    @Around("execution(public * com.sap.refactoring.services.UserService.*(..))")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(joinPoint, "service");
+    }
+
+    @Around("execution(public * com.sap.refactoring.persistence.UserDao.*(..))")
+    public Object timeDao(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(joinPoint, "dao");
+    }
+
+    private Object time(ProceedingJoinPoint joinPoint, String layer) throws Throwable {
+        final Class<?> targetClass = joinPoint.getTarget().getClass();
+        final String method = joinPoint.getSignature().getName();
+        Class<?> exceptionClass = null;
+        final Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exceptionClass = e.getClass();
+            if (e instanceof ConstraintViolationException || e instanceof NotFoundException) {
+                errorCounters.computeIfAbsent(new MeterKey(layer, targetClass, method, exceptionClass), this::errorCounter)
+                        .increment();
+            }
+            throw e;
+        } finally {
+            sample.stop(timers.computeIfAbsent(new MeterKey(layer, targetClass, method, exceptionClass), this::timer));
+        }
+    }
+
+    private Timer timer(MeterKey key) {
+        return Timer.builder(TIMER_NAME)
+                .description("Time spent in the user controller, service and daos")
+                .tag("layer", key.layer())
+                .tag("class", key.targetClass().getSimpleName())
+                .tag("method", key.method())
+                .tag("exception", key.exception())
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Counter errorCounter(MeterKey key) {
+        return Counter.builder(ERRORS_COUNTER_NAME)
+                .description("Constraint violations and missing users by layer and method")
+                .tag("layer", key.layer())
+                .tag("class", key.targetClass().getSimpleName())
+                .tag("method", key.method())
+                .tag("exception", key.exception())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Tags of a meter, the exception class is null if nothing is thrown
+     */
+    private record MeterKey(String layer, Class<?> targetClass, String method, Class<?> exceptionClass) {
+        String exception() {
+            return exceptionClass != null ? exceptionClass.getSimpleName() : NO_EXCEPTION;
+        }
+    }
+}
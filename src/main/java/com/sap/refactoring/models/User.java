@@ -1,17 +1,20 @@
 package com.sap.refactoring.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import jakarta.validation.constraints.*;
 import lombok.*;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 
 @Data
-@AllArgsConstructor
 @NoArgsConstructor
-@Builder
+@JsonSerialize(using = UserSerializer.class)
 public class User
 {
 	private UUID id;
@@ -23,16 +26,44 @@ public class User
 	private String email;
 	@NotNull
 	@Size(min = 1, max = 100)
-    private List<String> roles;
+    private List<@NotNull String> roles = List.of();
+	/**
+	 * Number of modifications of the stored user, it is transferred as ETag and not as part of the body
+	 */
+	@JsonIgnore
+	@EqualsAndHashCode.Exclude
+	private Long version;
+	/**
+	 * Time of the last modification of the stored user if the store keeps it, it is transferred as Last-Modified
+	 */
+	@JsonIgnore
+	@EqualsAndHashCode.Exclude
+	private Instant updatedAt;
+
 
+	@Builder
+	public User(UUID id, String name, String email, List<String> roles, Long version) {
+		this.id = id;
+		this.name = name;
+		this.email = email;
+		this.roles = copyOfRoles(roles);
+		this.version = version;
+	}
 
-	// getters and setter for roles to avoid its modification from outside of this class
+	// roles are kept in an immutable list to avoid its modification from outside of this class.
+	// Copying an immutable list returns the same list, so users copied from each other share their roles
     public void setRoles(List<String> roles) {
-		this.roles = roles != null? new ArrayList<>(roles): List.of();
+		this.roles = copyOfRoles(roles);
 	}
 
-	public List<String> getRoles() {
-		return Collections.unmodifiableList(roles);
+	// immutable lists cannot hold null, so null roles are kept in an unmodifiable copy for the validation to reject them
+	private static List<String> copyOfRoles(List<String> roles) {
+		if (roles == null) {
+			return List.of();
+		}
+		return roles.stream().anyMatch(Objects::isNull)
+				? Collections.unmodifiableList(new ArrayList<>(roles))
+				: List.copyOf(roles);
 	}
 
 	/**
@@ -44,5 +75,7 @@ public class User
 		this.name = other.getName();
 		this.email = other.getEmail();
 		this.setRoles(other.getRoles());
+		this.version = other.getVersion();
+		this.updatedAt = other.getUpdatedAt();
 	}
 }
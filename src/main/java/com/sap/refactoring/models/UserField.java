@@ -0,0 +1,55 @@
+package com.sap.refactoring.models;
+
+import com.sap.refactoring.exceptions.IllegalRequestException;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Fields of {@link User} which a client can select to be returned, e.g. by {@code fields=id,email}
+ */
+@Getter
+public enum UserField {
+    ID("id"),
+    NAME("name"),
+    EMAIL("email"),
+    ROLES("roles");
+
+    public static final Set<UserField> ALL = Set.copyOf(EnumSet.allOf(UserField.class));
+
+    private final String name;
+
+    UserField(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Parses a comma separated list of field names.
+     * Throws {@link IllegalRequestException} if a name is unknown or no field is selected
+     * @param fields names of fields or null to select all of them
+     * @return the selected fields
+     */
+    public static Set<UserField> parse(String fields) {
+        if (fields == null) {
+            return ALL;
+        }
+
+        final Set<UserField> selectedFields = EnumSet.noneOf(UserField.class);
+        for (String name : fields.split(",")) {
+            final String trimmedName = name.trim();
+            if (trimmedName.isEmpty()) {
+                continue;
+            }
+            selectedFields.add(Arrays.stream(values())
+                    .filter(field -> field.name.equals(trimmedName))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalRequestException("unknown field %s of user".formatted(trimmedName))));
+        }
+        if (selectedFields.isEmpty()) {
+            throw new IllegalRequestException("fields must select at least one field of user");
+        }
+        return selectedFields;
+    }
+}
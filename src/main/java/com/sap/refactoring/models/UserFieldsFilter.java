@@ -0,0 +1,48 @@
+package com.sap.refactoring.models;
+
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import lombok.Getter;
+
+import java.util.Set;
+
+/**
+ * Filter selecting the {@link UserField}s to be written. {@link UserSerializer} looks it up by {@link #ID}
+ * in the filter provider of the writer, so the selection is made per request without another serializer
+ */
+@Getter
+public class UserFieldsFilter extends SimpleBeanPropertyFilter {
+    public static final String ID = "userFields";
+
+    private final Set<UserField> fields;
+
+    public UserFieldsFilter(Set<UserField> fields) {
+        this.fields = Set.copyOf(fields);
+    }
+
+    /**
+     * @return filter provider writing only the given fields of users
+     */
+    public static FilterProvider filterProvider(Set<UserField> fields) {
+        return new SimpleFilterProvider()
+                .setFailOnUnknownId(false)
+                .addFilter(ID, new UserFieldsFilter(fields));
+    }
+
+    @Override
+    protected boolean include(BeanPropertyWriter writer) {
+        return include(writer.getName());
+    }
+
+    @Override
+    protected boolean include(PropertyWriter writer) {
+        return include(writer.getName());
+    }
+
+    private boolean include(String name) {
+        return fields.stream().anyMatch(field -> field.getName().equals(name));
+    }
+}
@@ -0,0 +1,43 @@
+package com.sap.refactoring.models;
+
+import lombok.*;
+
+/**
+ * class which represents the outcome of saving one {@link User} of a bulk creation
+ */
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@ToString
+public class UserSaveResult {
+    public enum Status {
+        CREATED,
+        /**
+         * the user was not saved because another user with the same unique key already exists
+         */
+        DUPLICATE,
+        /**
+         * the user was not saved because the store could not accept more modifications in time, it can be sent again later
+         */
+        REJECTED
+    }
+
+    private final String email;
+    private final Status status;
+    /**
+     * the created user, null if the user was not created
+     */
+    private final User user;
+
+    public static UserSaveResult created(User user) {
+        return new UserSaveResult(user.getEmail(), Status.CREATED, user);
+    }
+
+    public static UserSaveResult duplicate(User user) {
+        return new UserSaveResult(user.getEmail(), Status.DUPLICATE, null);
+    }
+
+    public static UserSaveResult rejected(User user) {
+        return new UserSaveResult(user.getEmail(), Status.REJECTED, null);
+    }
+}
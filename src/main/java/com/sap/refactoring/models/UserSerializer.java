@@ -0,0 +1,98 @@
+package com.sap.refactoring.models;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Writes {@link User} field by field to the generator instead of going through the reflection based bean serializer.
+ * Field names are pre-encoded once. The output is the same as the one of the bean serializer:
+ * {@code id}, {@code name}, {@code email} and {@code roles} in this order, nulls included and the version left out
+ * as it is transferred as ETag. The generator decides the format, so the same serializer writes json, smile and cbor.
+ * If the writer has a {@link UserFieldsFilter}, only the fields selected by it are written
+ */
+public class UserSerializer extends StdSerializer<User> {
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString NAME = new SerializedString("name");
+    private static final SerializableString EMAIL = new SerializedString("email");
+    private static final SerializableString ROLES = new SerializedString("roles");
+
+    public UserSerializer() {
+        super(User.class);
+    }
+
+    @Override
+    public void serialize(User user, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        final Set<UserField> fields = selectedFields(provider);
+        generator.writeStartObject(user);
+
+        if (fields.contains(UserField.ID)) {
+            generator.writeFieldName(ID);
+            writeId(user.getId(), generator);
+        }
+
+        if (fields.contains(UserField.NAME)) {
+            generator.writeFieldName(NAME);
+            generator.writeString(user.getName());
+        }
+
+        if (fields.contains(UserField.EMAIL)) {
+            generator.writeFieldName(EMAIL);
+            generator.writeString(user.getEmail());
+        }
+
+        if (fields.contains(UserField.ROLES)) {
+            generator.writeFieldName(ROLES);
+            writeRoles(user.getRoles(), generator);
+        }
+
+        generator.writeEndObject();
+    }
+
+    private static Set<UserField> selectedFields(SerializerProvider provider) {
+        final FilterProvider filterProvider = provider.getFilterProvider();
+        if (filterProvider != null
+                && filterProvider.findPropertyFilter(UserFieldsFilter.ID, null) instanceof UserFieldsFilter filter) {
+            return filter.getFields();
+        }
+        return UserField.ALL;
+    }
+
+    private static void writeRoles(List<String> roles, JsonGenerator generator) throws IOException {
+        if (roles != null) {
+            generator.writeStartArray(roles, roles.size());
+            for (String role : roles) {
+                generator.writeString(role);
+            }
+            generator.writeEndArray();
+        } else {
+            generator.writeNull();
+        }
+    }
+
+    /**
+     * Writes the id as string, or as 16 bytes to binary formats like the default {@link UUID} serializer of Jackson does
+     */
+    private static void writeId(UUID id, JsonGenerator generator) throws IOException {
+        if (id == null) {
+            generator.writeNull();
+        } else if (generator.canWriteBinaryNatively() && !(generator instanceof TokenBuffer)) {
+            generator.writeBinary(ByteBuffer.allocate(2 * Long.BYTES)
+                    .putLong(id.getMostSignificantBits())
+                    .putLong(id.getLeastSignificantBits())
+                    .array());
+        } else {
+            generator.writeString(id.toString());
+        }
+    }
+}
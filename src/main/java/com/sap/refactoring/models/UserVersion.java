@@ -0,0 +1,21 @@
+package com.sap.refactoring.models;
+
+import lombok.Value;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Version of a stored {@link User} without its content, enough to tell whether a client has the current user.
+ * The modification time is known only if the store keeps it, i.e. the database
+ */
+@Value
+public class UserVersion {
+    UUID id;
+    Long version;
+    Instant updatedAt;
+
+    public static UserVersion of(User user) {
+        return new UserVersion(user.getId(), user.getVersion(), user.getUpdatedAt());
+    }
+}
@@ -0,0 +1,25 @@
+package com.sap.refactoring.models;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.*;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * class which represents one page of {@link User}s ordered by id.
+ * The id of the last user on the page is a cursor for the next page.
+ * It is written as {@code {"items": [...], "nextCursor": "..."}}
+ */
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+@ToString
+public class UsersPage {
+    @JsonProperty("items")
+    private final List<User> users;
+    /**
+     * id after which the next page starts, null if this page is the last one
+     */
+    private final UUID nextCursor;
+}
@@ -0,0 +1,63 @@
+package com.sap.refactoring.persistence;
+
+import com.sap.refactoring.exceptions.ConstraintViolationException;
+import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.models.User;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link UserDao}. Errors are signalled by the returned publishers.
+ */
+public interface ReactiveUserDao {
+
+    /**
+     * Creates a new user and generates an uuid.
+     * Signals {@link ConstraintViolationException} if another user with the same unique key already exists.
+     *
+     * @param newUser the new user to be created
+     * @return the created user
+     */
+    Mono<User> saveUser(User newUser);
+
+    /**
+     * Emits all users ordered by id (see {@link UserDao#ID_ORDER}).
+     * Users are read from the storage as they are requested, so a slow subscriber does not make the whole store buffered in memory.
+     *
+     * @return all users
+     */
+    Flux<User> getAllUsers();
+
+    /**
+     * Retrieves a user by its UUID.
+     * Signals {@link NotFoundException} if no user is found with the given UUID.
+     *
+     * @param uuid the UUID of the user to retrieve
+     * @return the user with the given UUID
+     */
+    Mono<User> getUserById(String uuid);
+
+    /**
+     * Deletes a user. If the user does not exist, no action is performed.
+     *
+     * @param userToDelete the user to be deleted
+     * @return completion of the deletion
+     */
+    Mono<Void> deleteUser(User userToDelete);
+
+    /**
+     * Updates an existing user. The caller must make sure beforehand that the user exists.
+     *
+     * @param userToUpdate the user to be updated
+     * @return the updated user
+     */
+    Mono<User> updateUser(User userToUpdate);
+
+    /**
+     * Finds users by their name.
+     *
+     * @param name the name of the users to find
+     * @return users with the given name
+     */
+    Flux<User> findUsersByName(String name);
+}
@@ -0,0 +1,35 @@
+package com.sap.refactoring.persistence;
+
+import com.sap.refactoring.persistence.r2dbc.R2dbcUserDao;
+import com.sap.refactoring.persistence.reactive.ReactiveUserDaoAdapter;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration choosing the {@link ReactiveUserDao} used by the reactive api.
+ * It is {@link R2dbcUserDao} if {@code users.reactive.r2dbc.url} is set, otherwise {@link ReactiveUserDaoAdapter} over {@link UserDao}.
+ * The R2DBC connection factory is owned by the dao and not exposed as a bean,
+ * because Spring Boot does not configure the JDBC data source used by JPA and Flyway when there is one
+ */
+@Configuration
+public class ReactiveUserDaoConfiguration {
+
+    @Bean
+    public ReactiveUserDao reactiveUserDao(UserDao userDao,
+                                           @Value("${users.reactive.r2dbc.url:}") String url,
+                                           @Value("${users.reactive.r2dbc.username:}") String username,
+                                           @Value("${users.reactive.r2dbc.password:}") String password) {
+        if (url.isEmpty()) {
+            return new ReactiveUserDaoAdapter(userDao);
+        }
+
+        final ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build();
+        return new R2dbcUserDao(ConnectionFactories.get(options));
+    }
+}
@@ -1,14 +1,20 @@
 package com.sap.refactoring.persistence;
 
 import jakarta.persistence.*;
-import lombok.AllArgsConstructor;
-import lombok.Builder;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.*;
+import org.hibernate.annotations.BatchSize;
 
+/**
+ * Role entity. It keeps the identity based equals and hashCode of {@link Object}
+ * so that lazy references to roles can be put into sets without being loaded from the db.
+ * References which still have to be loaded are loaded in batches
+ */
 @Entity
+@BatchSize(size = 100)
 @Table(name = "ROLES")
-@Data
+@Getter
+@Setter
+@ToString
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
@@ -1,18 +1,49 @@
 package com.sap.refactoring.persistence;
 
 import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.exceptions.VersionConflictException;
 import com.sap.refactoring.models.User;
+import com.sap.refactoring.models.UserSaveResult;
+import com.sap.refactoring.models.UserVersion;
 import jakarta.validation.ConstraintViolationException;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * Interface for operations related to user persistence of user.
+ * Every stored user has a version, which is 0 when the user is created and is incremented by every update.
+ * Updates and deletions given a version are applied only if it is still the version of the stored user,
+ * so concurrent modifications are detected without locking the user (optimistic concurrency).
+ * Reads of users take {@code withRoles} telling whether the roles of the users are needed. Without them an implementation
+ * may skip reading the roles, e.g. the join of {@code USER_ROLES} in the database, and return users with empty roles.
  */
 public interface UserDao {
 
     /**
-     * Creates a new user in the persistence layer and generates an uuid.
+     * Order of user ids used for pagination. It compares the bytes of uuid as unsigned values
+     * which is the same order as the one of uuid columns in the database
+     */
+    Comparator<UUID> ID_ORDER = Comparator
+            .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
+    /**
+     * Form of names compared by {@link #findUsersByNamePrefix(String, int, boolean)}. It is the lower case of the name
+     * like {@code LOWER(NAME)} in the database
+     */
+    static String normalizeName(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Creates a new user in the persistence layer and generates an uuid. The version of the created user is 0.
      * It saves a copy of {@link User} so that changes made outside dao don't affect the object.
      * Throws {@link ConstraintViolationException} if another user with the same unique key already exists.
      *
@@ -22,46 +53,161 @@ public interface UserDao {
      */
     User saveUser(User newUser) throws ConstraintViolationException;
 
+    /**
+     * Creates new users in bulk and generates an uuid for each of them like {@link #saveUser(User)} does.
+     * A user is not saved if another user with the same unique key already exists or precedes it in the given list.
+     *
+     * @param newUsers the new users to be created
+     * @return results of saving in the order of the given users
+     */
+    List<UserSaveResult> saveUsers(List<User> newUsers);
+
     /**
      * Retrieves all users from the persistence layer.
      *
+     * @param withRoles whether the roles of the users are needed
      * @return a collection of all users
      */
-    Collection<User> getAllUsers();
+    Collection<User> getAllUsers(boolean withRoles);
+
+    /**
+     * Retrieves a page of users ordered by id (see {@link #ID_ORDER}).
+     * It is a keyset pagination, so the cost of a page does not depend on how far it is from the beginning.
+     *
+     * @param afterId id of the last user of the previous page or null to get the first page
+     * @param limit maximal number of users to return
+     * @param withRoles whether the roles of the users are needed
+     * @return users with ids greater than {@code afterId}
+     */
+    List<User> getUsersPage(UUID afterId, int limit, boolean withRoles);
+
+    /**
+     * Retrieves a page of users having the given role, ordered by id like {@link #getUsersPage(UUID, int, boolean)}.
+     *
+     * @param role name of the role
+     * @param afterId id of the last user of the previous page or null to get the first page
+     * @param limit maximal number of users to return
+     * @param withRoles whether the roles of the users are needed
+     * @return users with the role and ids greater than {@code afterId}
+     */
+    List<User> findUsersByRole(String role, UUID afterId, int limit, boolean withRoles);
+
+    /**
+     * Passes all users to the given consumer one by one without holding all of them in memory at once.
+     * The consumer is called while the underlying storage is being read, so it should not block for long.
+     *
+     * @param consumer consumer of users
+     * @param withRoles whether the roles of the users are needed
+     */
+    void forEachUser(Consumer<User> consumer, boolean withRoles);
 
     /**
      * Retrieves a user by its UUID.
      * Throws {@link NotFoundException} if no users are found with the given UUID.
      *
      * @param uuid the UUID of the user to retrieve
+     * @param withRoles whether the roles of the user are needed
      * @return the user with the given UUID
      * @throws NotFoundException if no user is found with the given UUID
      */
-    User getUserById(String uuid) throws NotFoundException;
+    User getUserById(String uuid, boolean withRoles) throws NotFoundException;
+
+    /**
+     * Retrieves the users with the given ids, users which do not exist are left out
+     *
+     * @param ids ids of users
+     * @return found users in no particular order
+     */
+    default List<User> getUsersByIds(Collection<UUID> ids) {
+        final List<User> users = new ArrayList<>(ids.size());
+        for (UUID id : ids) {
+            try {
+                users.add(getUserById(id.toString(), true));
+            } catch (NotFoundException e) {
+                // left out
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Retrieves the version of a user without the rest of it, e.g. to answer a conditional request.
+     * Implementations should not read the roles of the user.
+     *
+     * @param id the UUID of the user
+     * @return the version of the user or empty if the user does not exist
+     */
+    default Optional<UserVersion> getUserVersion(UUID id) {
+        try {
+            return Optional.of(UserVersion.of(getUserById(id.toString(), false)));
+        } catch (NotFoundException e) {
+            return Optional.empty();
+        }
+    }
 
     /**
      * Deletes a user from the persistence layer.
      * If the user does not exist, no action is performed.
+     * If the version of the given user is set, the user is deleted only if it has not been modified since then.
      *
      * @param userToDelete the user to be deleted
+     * @throws VersionConflictException if the stored user has another version than the given one
      */
-    void deleteUser(User userToDelete);
+    void deleteUser(User userToDelete) throws VersionConflictException;
+
+    /**
+     * Deletes a user by its id without reading it beforehand.
+     * If the version is given, the user is deleted only if it has not been modified since then.
+     *
+     * @param id the UUID of the user to delete
+     * @param version the expected version of the user or null to delete any version
+     * @return true if the user has been deleted, false if it does not exist
+     * @throws VersionConflictException if the stored user has another version than the given one
+     */
+    boolean deleteUserById(UUID id, Long version) throws VersionConflictException;
 
     /**
      * Updates an existing user in the persistence layer.
      * It saves a copy of {@link User} to avoid external changes affecting the persisted object.
-     * The caller must make sure beforehand that the user exists as dao does not do such check.
+     * If the version of the given user is set, the user is updated only if it has not been modified since then.
+     * A deleted user is never recreated by an update.
      *
      * @param userToUpdate the user to be updated
-     * @return the updated user
+     * @return the updated user with the incremented version
+     * @throws NotFoundException if the user does not exist
+     * @throws VersionConflictException if the stored user has another version than the given one
      */
-    User updateUser(User userToUpdate);
+    User updateUser(User userToUpdate) throws NotFoundException, VersionConflictException;
 
     /**
      * Finds users by their name.
      *
      * @param name the name of the users to find
+     * @param withRoles whether the roles of the users are needed
      * @return a collection of users with the given name
      */
-    Collection<User> findUsersByName(String name);
+    Collection<User> findUsersByName(String name, boolean withRoles);
+
+    /**
+     * Finds the versions of the users found by {@link #findUsersByName(String, boolean)} without the rest of them.
+     *
+     * @param name the name of the users to find
+     * @return versions of the users with the given name
+     */
+    default Collection<UserVersion> findUserVersionsByName(String name) {
+        return findUsersByName(name, false).stream()
+                .map(UserVersion::of)
+                .toList();
+    }
+
+    /**
+     * Finds users whose name starts with the given prefix ignoring case, e.g. for type-ahead search.
+     * Names are compared in the form of {@link #normalizeName(String)}, users are ordered by it and then by id.
+     *
+     * @param prefix the beginning of the names of the users to find
+     * @param limit maximal number of users to return
+     * @param withRoles whether the roles of the users are needed
+     * @return users with matching names, at most {@code limit} of them
+     */
+    List<User> findUsersByNamePrefix(String prefix, int limit, boolean withRoles);
 }
@@ -0,0 +1,45 @@
+package com.sap.refactoring.persistence;
+
+import com.sap.refactoring.persistence.cache.CachingUserDao;
+import com.sap.refactoring.persistence.db.DataBaseUserDao;
+import com.sap.refactoring.persistence.invalidation.UserInvalidationBus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Configuration choosing the {@link UserDao} used by the application.
+ * It is {@link DataBaseUserDao}, optionally behind {@link CachingUserDao} if {@code users.cache.enabled} is set.
+ * Statistics of the caches are published as {@code cache.*} metrics.
+ * The cache evicts users changed by other instances of the application if {@link UserInvalidationBus} is enabled.
+ * Profiles selecting another implementation, {@code offheap} or {@code write-behind}, replace it
+ */
+@Configuration
+public class UserDaoConfiguration {
+
+    @Bean
+    @Primary
+    @Profile("!offheap & !write-behind")
+    public UserDao userDao(DataBaseUserDao dataBaseUserDao,
+                           @Value("${users.cache.enabled:false}") boolean cacheEnabled,
+                           @Value("${users.cache.max-size:10000}") long cacheMaxSize,
+                           @Value("${users.cache.time-to-live:5m}") Duration cacheTimeToLive,
+                           MeterRegistry meterRegistry,
+                           Optional<UserInvalidationBus> userInvalidationBus) {
+        if (!cacheEnabled) {
+            return dataBaseUserDao;
+        }
+
+        final CachingUserDao cachingUserDao = new CachingUserDao(dataBaseUserDao, cacheMaxSize, cacheTimeToLive);
+        cachingUserDao.getCaches().forEach((name, cache) -> CaffeineCacheMetrics.monitor(meterRegistry, cache, name));
+        userInvalidationBus.ifPresent(bus -> bus.subscribe(cachingUserDao));
+        return cachingUserDao;
+    }
+}
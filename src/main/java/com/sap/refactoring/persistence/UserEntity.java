@@ -5,21 +5,36 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.UpdateTimestamp;
+import org.springframework.data.domain.Persistable;
 
+import java.time.Instant;
 import java.util.Set;
 import java.util.UUID;
 
+/**
+ * User entity. Updates set only the changed columns
+ */
 @Entity
+@DynamicUpdate
 @Table(name = "USERS")
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-public class UserEntity {
+public class UserEntity implements Persistable<UUID> {
+    /**
+     * number of users whose roles are loaded by one statement when roles are not fetched together with users
+     */
+    public static final int ROLES_BATCH_SIZE = 100;
 
+    /**
+     * ids are generated by the application before inserting so that inserts of several users can be batched
+     */
     @Id
     @Column(name = "ID")
-    @GeneratedValue(strategy = GenerationType.UUID)
     private UUID id;
 
     @Column(name = "NAME")
@@ -28,6 +43,21 @@ public class UserEntity {
     @Column(name = "EMAIL")
     private String email;
 
+    /**
+     * checked and incremented by every update, so concurrent modifications of a user fail instead of overwriting each other
+     */
+    @Version
+    @Column(name = "VERSION")
+    private Long version;
+
+    /**
+     * time of the last modification, set by Hibernate whenever the user is inserted or updated
+     */
+    @UpdateTimestamp
+    @Column(name = "UPDATED_AT")
+    private Instant updatedAt;
+
+    @BatchSize(size = UserEntity.ROLES_BATCH_SIZE)
     @ManyToMany(cascade = {CascadeType.PERSIST, CascadeType.MERGE})
     @JoinTable(
             name = "USER_ROLES",
@@ -35,4 +65,21 @@ public class UserEntity {
             inverseJoinColumns = @JoinColumn(name = "ROLE_ID")
     )
     private Set<RoleEntity> roles;
+
+    /**
+     * tells whether the entity has to be inserted, as the id is assigned before the entity is persisted
+     */
+    @Transient
+    private boolean newEntity;
+
+    @Override
+    public boolean isNew() {
+        return newEntity;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        newEntity = false;
+    }
 }
@@ -1,15 +1,118 @@
 package com.sap.refactoring.persistence;
 
+import com.sap.refactoring.models.UserVersion;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 /**
- * Repository to work with {@link UserEntity} persistence
+ * Repository to work with {@link UserEntity} persistence.
+ * Queries without limit fetch roles in the same statement.
+ * Limited queries can't join a collection (it would be paginated in memory), their roles are loaded in batches instead.
+ * Queries taking a projection type, e.g. {@link UserSummary}, select only the columns of the projection
  */
 @Repository
 public interface UserRepository extends JpaRepository<UserEntity, UUID> {
+    @Override
+    @EntityGraph(attributePaths = "roles")
+    List<UserEntity> findAll();
+
+    @Override
+    @EntityGraph(attributePaths = "roles")
+    Optional<UserEntity> findById(UUID id);
+
+    @EntityGraph(attributePaths = "roles")
     Collection<UserEntity> findAllByName(String name);
+
+    <T> List<T> findAllByName(String name, Class<T> type);
+
+    <T> Optional<T> findProjectedById(UUID id, Class<T> type);
+
+    @EntityGraph(attributePaths = "roles")
+    List<UserEntity> findAllByIdIn(Collection<UUID> ids);
+
+    @Query("select new com.sap.refactoring.models.UserVersion(u.id, u.version, u.updatedAt) from UserEntity u where u.id = :id")
+    Optional<UserVersion> findVersionById(UUID id);
+
+    @Query("select new com.sap.refactoring.models.UserVersion(u.id, u.version, u.updatedAt) from UserEntity u where u.name = :name")
+    List<UserVersion> findVersionsByName(String name);
+
+    @Query("select u.email from UserEntity u where u.email in :emails")
+    Set<String> findExistingEmails(Collection<String> emails);
+
+    /**
+     * Finds users whose lower case names are within the range, ordered by the lower case name and id.
+     * The range is read from the index on {@code LOWER(NAME) COLLATE "C"} in its order, so no more than {@code limit} users are read
+     * @param from lower case names greater or equal to it are found
+     * @param to lower case names less than it are found
+     */
+    @Query(value = """
+            SELECT * FROM USERS
+            WHERE LOWER(NAME) COLLATE "C" >= :from AND LOWER(NAME) COLLATE "C" < :to
+            ORDER BY LOWER(NAME) COLLATE "C", ID
+            LIMIT :limit""", nativeQuery = true)
+    List<UserEntity> findAllByLowerCaseNameRange(String from, String to, int limit);
+
+    List<UserEntity> findAllByOrderByIdAsc(Limit limit);
+
+    <T> List<T> findAllByOrderByIdAsc(Limit limit, Class<T> type);
+
+    List<UserEntity> findAllByIdGreaterThanOrderByIdAsc(UUID id, Limit limit);
+
+    <T> List<T> findAllByIdGreaterThanOrderByIdAsc(UUID id, Limit limit, Class<T> type);
+
+    <T> List<T> findAllProjectedBy(Class<T> type);
+
+    List<UserEntity> findAllByRolesNameOrderByIdAsc(String role, Limit limit);
+
+    List<UserEntity> findAllByRolesNameAndIdGreaterThanOrderByIdAsc(String role, UUID id, Limit limit);
+
+    /**
+     * Deletes the user by a single statement, its roles are deleted by the cascade of the foreign key
+     * @return number of deleted users
+     */
+    @Modifying
+    @Query(value = "DELETE FROM USERS WHERE ID = :id", nativeQuery = true)
+    int deleteDirectlyById(UUID id);
+
+    /**
+     * Deletes the user of the given version by a single statement, like {@link #deleteDirectlyById(UUID)}
+     * @return number of deleted users
+     */
+    @Modifying
+    @Query(value = "DELETE FROM USERS WHERE ID = :id AND VERSION = :version", nativeQuery = true)
+    int deleteDirectlyByIdAndVersion(UUID id, long version);
+
+    /**
+     * Streams all users together with their roles through a server side cursor. The stream must be consumed and closed within a transaction.
+     * The roles are joined in the same statement, the rows are ordered by id so that the rows of one user follow each other
+     * and Hibernate assembles every user before handing it out
+     * @return stream of read only users
+     */
+    @EntityGraph(attributePaths = "roles")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<UserEntity> streamAllByOrderByIdAsc();
+
+    /**
+     * Streams all users in a projection like {@link #streamAllByOrderByIdAsc()}, the projected users are not managed
+     * @return stream of projected users
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    <T> Stream<T> streamAllByOrderByIdAsc(Class<T> type);
 }
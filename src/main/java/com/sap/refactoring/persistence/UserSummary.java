@@ -0,0 +1,20 @@
+package com.sap.refactoring.persistence;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Projection of {@link UserEntity} to its columns in the {@code USERS} table.
+ * Spring Data selects only these columns, so reading it never touches {@code USER_ROLES}
+ */
+public interface UserSummary {
+    UUID getId();
+
+    String getName();
+
+    String getEmail();
+
+    Long getVersion();
+
+    Instant getUpdatedAt();
+}
@@ -0,0 +1,258 @@
+package com.sap.refactoring.persistence.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.sap.refactoring.exceptions.VersionConflictException;
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.models.UserSaveResult;
+import com.sap.refactoring.models.UserVersion;
+import com.sap.refactoring.persistence.UserDao;
+import com.sap.refactoring.persistence.invalidation.UserChangeListener;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * Read-through cache in front of another {@link UserDao}.
+ * Users are cached by id and results of {@link #findUsersByName(String, boolean)} are cached by name,
+ * both caches are bounded by size and time to live.
+ * Modifications go to the underlying dao first and then invalidate the affected entries.
+ * Cached users are never handed out, callers get copies of them.
+ * A user whose modification fails on a {@link VersionConflictException} is invalidated too,
+ * as it has been modified by somebody else, e.g. by another instance of the application.
+ * Cached results of search by name are indexed by the ids of the users they contain, so a modified user invalidates
+ * only the results containing it and the results for its new name.
+ * As a {@link UserChangeListener} it evicts users changed by other instances together with the results containing them,
+ * the current names of the changed users are read by one call of the underlying dao if any result is cached.
+ * Pages, full scans and search by prefix of users are not cached.
+ * Users read without roles are served from the caches if they are cached there, but are not cached themselves.
+ * Versions of users are taken from the cached users if they are cached, so they always match the users handed out.
+ */
+public class CachingUserDao implements UserDao, UserChangeListener {
+    private final UserDao userDao;
+    private final Cache<UUID, User> usersById;
+    private final Cache<String, List<User>> usersByName;
+    /**
+     * Names of the cached results of search by name containing the user by the id of the user.
+     * It may hold more names than needed, which only invalidates more results, but never fewer
+     */
+    private final ConcurrentMap<UUID, Set<String>> namesById = new ConcurrentHashMap<>();
+
+    public CachingUserDao(UserDao userDao, long maxSize, Duration timeToLive) {
+        this.userDao = userDao;
+        this.usersById = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+        this.usersByName = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .executor(Runnable::run)
+                .removalListener(this::unindex)
+                .build();
+    }
+
+    /**
+     * @return caches by their names, they record hit, miss and eviction statistics
+     */
+    public Map<String, Cache<?, ?>> getCaches() {
+        return Map.of("usersById", usersById, "usersByName", usersByName);
+    }
+
+    @Override
+    public User saveUser(User newUser) {
+        final User savedUser = userDao.saveUser(newUser);
+        usersByName.invalidate(savedUser.getName());
+        return savedUser;
+    }
+
+    @Override
+    public List<UserSaveResult> saveUsers(List<User> newUsers) {
+        final List<UserSaveResult> results = userDao.saveUsers(newUsers);
+        results.stream()
+                .filter(result -> result.getUser() != null)
+                .forEach(result -> usersByName.invalidate(result.getUser().getName()));
+        return results;
+    }
+
+    @Override
+    public Collection<User> getAllUsers(boolean withRoles) {
+        return userDao.getAllUsers(withRoles);
+    }
+
+    @Override
+    public List<User> getUsersPage(UUID afterId, int limit, boolean withRoles) {
+        return userDao.getUsersPage(afterId, limit, withRoles);
+    }
+
+    @Override
+    public List<User> findUsersByRole(String role, UUID afterId, int limit, boolean withRoles) {
+        return userDao.findUsersByRole(role, afterId, limit, withRoles);
+    }
+
+    @Override
+    public void forEachUser(Consumer<User> consumer, boolean withRoles) {
+        userDao.forEachUser(consumer, withRoles);
+    }
+
+    /**
+     * Returns the cached user or loads it from the underlying dao.
+     * Users which are not found are not cached, and neither are users read without roles
+     * @param uuid the UUID of the user to retrieve
+     * @param withRoles whether the roles of the user are needed
+     * @return copy of the user
+     */
+    @Override
+    public User getUserById(String uuid, boolean withRoles) {
+        final UUID id;
+        try {
+            id = UUID.fromString(uuid);
+        } catch (IllegalArgumentException e) {
+            return userDao.getUserById(uuid, withRoles);
+        }
+
+        if (!withRoles) {
+            final User cachedUser = usersById.getIfPresent(id);
+            return cachedUser != null ? new User(cachedUser) : userDao.getUserById(uuid, false);
+        }
+        return new User(usersById.get(id, key -> userDao.getUserById(uuid, true)));
+    }
+
+    @Override
+    public Optional<UserVersion> getUserVersion(UUID id) {
+        final User cachedUser = usersById.getIfPresent(id);
+        return cachedUser != null ? Optional.of(UserVersion.of(cachedUser)) : userDao.getUserVersion(id);
+    }
+
+    @Override
+    public void deleteUser(User userToDelete) {
+        try {
+            userDao.deleteUser(userToDelete);
+        } catch (VersionConflictException e) {
+            invalidate(userToDelete.getId());
+            throw e;
+        }
+        usersByName.invalidate(userToDelete.getName());
+        invalidate(userToDelete.getId());
+    }
+
+    @Override
+    public boolean deleteUserById(UUID id, Long version) {
+        try {
+            return userDao.deleteUserById(id, version);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    /**
+     * Updates the user and invalidates it together with the results of search by its old and new names.
+     * The old name is known if the user is cached which is usually the case as the user is read before being updated.
+     * Search results containing the user are invalidated anyway
+     * @param userToUpdate the user to be updated
+     * @return the updated user
+     */
+    @Override
+    public User updateUser(User userToUpdate) {
+        final User oldUser = usersById.getIfPresent(userToUpdate.getId());
+        final User updatedUser;
+        try {
+            updatedUser = userDao.updateUser(userToUpdate);
+        } catch (VersionConflictException e) {
+            invalidate(userToUpdate.getId());
+            throw e;
+        }
+
+        if (oldUser != null) {
+            usersByName.invalidate(oldUser.getName());
+        }
+        usersByName.invalidate(updatedUser.getName());
+        invalidate(userToUpdate.getId());
+        return updatedUser;
+    }
+
+    @Override
+    public Collection<User> findUsersByName(String name, boolean withRoles) {
+        final List<User> users = withRoles
+                ? usersByName.get(name, this::findAndIndexUsersByName)
+                : usersByName.getIfPresent(name);
+        if (users == null) {
+            return userDao.findUsersByName(name, false);
+        }
+        return users.stream()
+                .map(User::new)
+                .toList();
+    }
+
+    @Override
+    public Collection<UserVersion> findUserVersionsByName(String name) {
+        final List<User> cachedUsers = usersByName.getIfPresent(name);
+        if (cachedUsers == null) {
+            return userDao.findUserVersionsByName(name);
+        }
+        return cachedUsers.stream()
+                .map(UserVersion::of)
+                .toList();
+    }
+
+    @Override
+    public List<User> findUsersByNamePrefix(String prefix, int limit, boolean withRoles) {
+        return userDao.findUsersByNamePrefix(prefix, limit, withRoles);
+    }
+
+    /**
+     * Invalidates the changed users and the results of search by name containing them.
+     * A changed user might have been created or renamed by another instance, so the results for the current names
+     * of the changed users are invalidated too. The names are only read if any result is cached
+     * @param ids ids of the changed users
+     */
+    @Override
+    public void usersChanged(Set<UUID> ids) {
+        ids.forEach(this::invalidate);
+        if (usersByName.estimatedSize() > 0) {
+            usersByName.invalidateAll(userDao.getUsersByIds(ids).stream()
+                    .map(User::getName)
+                    .toList());
+        }
+    }
+
+    @Override
+    public void allUsersChanged() {
+        usersById.invalidateAll();
+        usersByName.invalidateAll();
+        namesById.clear();
+    }
+
+    private List<User> findAndIndexUsersByName(String name) {
+        final List<User> users = List.copyOf(userDao.findUsersByName(name, true));
+        users.forEach(user -> namesById.computeIfAbsent(user.getId(), id -> ConcurrentHashMap.newKeySet()).add(name));
+        return users;
+    }
+
+    /**
+     * Removes the name of a removed result from the index unless the result has been loaded again meanwhile
+     */
+    private void unindex(String name, List<User> users, RemovalCause cause) {
+        if (users == null || usersByName.asMap().containsKey(name)) {
+            return;
+        }
+        users.forEach(user -> namesById.computeIfPresent(user.getId(), (id, names) -> {
+            names.remove(name);
+            return names.isEmpty() ? null : names;
+        }));
+    }
+
+    private void invalidate(UUID id) {
+        usersById.invalidate(id);
+        final Set<String> names = namesById.remove(id);
+        if (names != null) {
+            usersByName.invalidateAll(names);
+        }
+    }
+}
@@ -2,103 +2,567 @@ package com.sap.refactoring.persistence.db;
 
 import com.sap.refactoring.exceptions.ConstraintViolationException;
 import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.exceptions.VersionConflictException;
 import com.sap.refactoring.mappers.UserToUserEntityMapper;
 import com.sap.refactoring.models.User;
+import com.sap.refactoring.models.UserSaveResult;
+import com.sap.refactoring.models.UserVersion;
 import com.sap.refactoring.persistence.*;
+import jakarta.persistence.EntityManager;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.annotation.Primary;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.Collection;
-import java.util.Set;
-import java.util.UUID;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * This implementation use a database for saving data
- * and delegates a lot of race condition problems to the underlying db server
+ * and delegates a lot of race condition problems to the underlying db server.
+ * Every change of the {@code USERS} table is published by a trigger to the instances listening to it,
+ * see {@link com.sap.refactoring.persistence.invalidation.UserInvalidationBus}
  */
 @Repository
-@Primary
 @Slf4j
 public class DataBaseUserDao implements UserDao {
+    private static final int SAVE_USERS_CHUNK_SIZE = 1000;
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
+    private final RoleIdCache roleIdCache;
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
 
-    public DataBaseUserDao(UserRepository userRepository, RoleRepository roleRepository) {
+    public DataBaseUserDao(UserRepository userRepository, RoleRepository roleRepository,
+                           RoleIdCache roleIdCache, EntityManager entityManager, JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager) {
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
+        this.roleIdCache = roleIdCache;
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     /**
      * Method attaches {@link RoleEntity} to the persistent context.
-     * If a role is present in the db the appropriate {@link RoleEntity} is fetched and attached to the persistent context.
+     * If a role is present in the db a reference to the appropriate {@link RoleEntity} is attached to the persistent context.
      * If a role is not present it is just returned as is.
      * @param roles roles to be attached
      * @return collection of {@link RoleEntity} which is equivalent to the input collection
      * but the roles which are present in the db are attached to the persistent context.
      */
     private Set<RoleEntity> attachRolesToPersistenceContext(Set<RoleEntity> roles){
-        return roles.stream()
-                .map(roleEntity -> roleRepository.findByName(roleEntity.getName()).orElse(roleEntity))
+        final Set<String> names = roles.stream()
+                .map(RoleEntity::getName)
                 .collect(Collectors.toSet());
+
+        return new HashSet<>(attachRolesToPersistenceContext(names).values());
+    }
+
+    /**
+     * Resolves role names to {@link RoleEntity}s attached to the persistent context.
+     * Ids of the roles are taken from {@link RoleIdCache}, the roles missing in the cache are fetched by a single query.
+     * A role which is not present in the db is returned as a new entity, one per name,
+     * so that it is inserted once even if several users share it
+     * @param names names of roles
+     * @return roles by their names
+     */
+    private Map<String, RoleEntity> attachRolesToPersistenceContext(Collection<String> names){
+        final Map<String, Integer> ids = new HashMap<>(roleIdCache.getAll(names));
+        final Set<String> notCachedNames = names.stream()
+                .filter(name -> !ids.containsKey(name))
+                .collect(Collectors.toSet());
+        if (!notCachedNames.isEmpty()) {
+            roleRepository.findAllByNameIn(notCachedNames).forEach(role -> {
+                ids.put(role.getName(), role.getId());
+                roleIdCache.put(role);
+            });
+        }
+
+        final Map<String, RoleEntity> attachedRoles = new HashMap<>();
+        final List<RoleEntity> newRoles = new ArrayList<>();
+        names.forEach(name -> {
+            if (ids.containsKey(name)) {
+                attachedRoles.put(name, roleRepository.getReferenceById(ids.get(name)));
+            } else {
+                final RoleEntity newRole = RoleEntity.builder().name(name).build();
+                attachedRoles.put(name, newRole);
+                newRoles.add(newRole);
+            }
+        });
+        roleIdCache.putAfterCommit(newRoles);
+
+        return attachedRoles;
     }
 
     @Override
     @Transactional
     public User saveUser(User newUser) {
-        final UserEntity newUserEntity = UserToUserEntityMapper.toEntity(newUser);
+        final UserEntity newUserEntity = toNewEntity(newUser);
         newUserEntity.setRoles(attachRolesToPersistenceContext(newUserEntity.getRoles()));
 
         UserEntity savedEntity = null;
         try {
-            savedEntity = userRepository.save(newUserEntity);
+            savedEntity = userRepository.saveAndFlush(newUserEntity);
         } catch (DataIntegrityViolationException ex){
             log.error("Could not create new user", ex);
+            // a cached role might have been deleted
+            roleIdCache.invalidateAll();
             throw new ConstraintViolationException(ex);
         }
-        return UserToUserEntityMapper.toDTO(savedEntity);
+        return savedUser(newUser, savedEntity);
+    }
+
+    /**
+     * Saves users in chunks. For every chunk the existing emails are checked by one query,
+     * the users are inserted by one statement skipping the emails taken concurrently since the check,
+     * which are reported as duplicates too, and the roles of the inserted users are attached all at once
+     * and inserted by jdbc batches. The persistence context is cleared after every chunk to keep memory usage flat
+     * @param newUsers the new users to be created
+     * @return results of saving in the order of the given users
+     */
+    @Override
+    @Transactional
+    public List<UserSaveResult> saveUsers(List<User> newUsers) {
+        final List<UserSaveResult> results = new ArrayList<>(newUsers.size());
+        final Set<String> savedEmails = new HashSet<>();
+
+        for (int chunkStart = 0; chunkStart < newUsers.size(); chunkStart += SAVE_USERS_CHUNK_SIZE) {
+            final List<User> chunk = newUsers.subList(chunkStart, Math.min(chunkStart + SAVE_USERS_CHUNK_SIZE, newUsers.size()));
+            final Set<String> existingEmails = userRepository.findExistingEmails(chunk.stream()
+                    .map(User::getEmail)
+                    .collect(Collectors.toSet()));
+
+            final List<User> candidates = new ArrayList<>(chunk.size());
+            final List<Integer> candidatePositions = new ArrayList<>(chunk.size());
+            for (User newUser : chunk) {
+                if (existingEmails.contains(newUser.getEmail()) || !savedEmails.add(newUser.getEmail())) {
+                    results.add(UserSaveResult.duplicate(newUser));
+                    continue;
+                }
+
+                final User candidate = new User(newUser);
+                candidate.setId(UUID.randomUUID());
+                candidate.setVersion(0L);
+                candidates.add(candidate);
+                candidatePositions.add(results.size());
+                results.add(null);
+            }
+
+            final List<User> insertedUsers = new ArrayList<>(candidates.size());
+            try {
+                final Map<UUID, Instant> insertedIds = insertUsers(candidates);
+                for (int i = 0; i < candidates.size(); i++) {
+                    final User candidate = candidates.get(i);
+                    final Instant updatedAt = insertedIds.get(candidate.getId());
+                    if (updatedAt == null) {
+                        results.set(candidatePositions.get(i), UserSaveResult.duplicate(candidate));
+                        continue;
+                    }
+                    candidate.setUpdatedAt(updatedAt);
+                    insertedUsers.add(candidate);
+                    results.set(candidatePositions.get(i), UserSaveResult.created(candidate));
+                }
+                insertUserRoles(insertedUsers);
+            } catch (DataIntegrityViolationException ex) {
+                log.error("Could not create new users", ex);
+                roleIdCache.invalidateAll();
+                throw new ConstraintViolationException(ex);
+            }
+            entityManager.clear();
+        }
+
+        return results;
+    }
+
+    /**
+     * Inserts the users by one statement unless their emails are taken
+     * @param users users with ids
+     * @return modification times of the inserted users by their ids
+     */
+    private Map<UUID, Instant> insertUsers(List<User> users) {
+        if (users.isEmpty()) {
+            return Map.of();
+        }
+
+        final Map<UUID, Instant> insertedIds = new HashMap<>();
+        jdbcTemplate.query("""
+                        INSERT INTO USERS (ID, NAME, EMAIL, VERSION)
+                        SELECT ID, NAME, EMAIL, 0
+                        FROM UNNEST(CAST(? AS UUID[]), CAST(? AS VARCHAR[]), CAST(? AS VARCHAR[])) AS NEW_USERS (ID, NAME, EMAIL)
+                        ON CONFLICT (EMAIL) DO NOTHING
+                        RETURNING ID, UPDATED_AT""",
+                (RowCallbackHandler) resultSet -> insertedIds.put(resultSet.getObject("ID", UUID.class),
+                        resultSet.getObject("UPDATED_AT", OffsetDateTime.class).toInstant()),
+                users.stream().map(user -> user.getId().toString()).toArray(String[]::new),
+                users.stream().map(User::getName).toArray(String[]::new),
+                users.stream().map(User::getEmail).toArray(String[]::new));
+        return insertedIds;
+    }
+
+    /**
+     * Inserts the roles of the users into {@code USER_ROLES} by jdbc batches, roles which do not exist are created first
+     */
+    private void insertUserRoles(Collection<User> users) {
+        final Map<String, RoleEntity> roles = attachRolesToPersistenceContext(users.stream()
+                .flatMap(user -> user.getRoles().stream())
+                .collect(Collectors.toSet()));
+        roles.values().stream()
+                .filter(role -> role.getId() == null)
+                .forEach(entityManager::persist);
+        jdbcTemplate.batchUpdate("INSERT INTO USER_ROLES (USER_ID, ROLE_ID) VALUES (?, ?)", users.stream()
+                .flatMap(user -> user.getRoles().stream()
+                        .distinct()
+                        .map(role -> new Object[]{user.getId(), roles.get(role).getId()}))
+                .toList());
+    }
+
+    /**
+     * Writes users modified in another store as they are, including their ids and versions, in one transaction.
+     * It is used to write modifications of {@link com.sap.refactoring.persistence.inmemory.InMemoryUserDao} behind.
+     * Rows having the email of a given user but another id, or a deleted email, are deleted first:
+     * the user has been deleted and its email might have been taken again in the meantime.
+     * Then the users are updated or inserted, and their roles replaced, by jdbc batches.
+     * The versions are written by plain statements because Hibernate would increment them on its own,
+     * the modification time is the time of writing as the in-memory users do not keep it
+     * @param users created or updated users
+     * @param deletedEmails emails of deleted users
+     */
+    @Transactional
+    public void writeUsers(Collection<User> users, Collection<String> deletedEmails) {
+        jdbcTemplate.batchUpdate("DELETE FROM USERS WHERE EMAIL = ?", deletedEmails.stream()
+                .map(email -> new Object[]{email})
+                .toList());
+        jdbcTemplate.batchUpdate("DELETE FROM USERS WHERE EMAIL = ? AND ID <> ?", users.stream()
+                .map(user -> new Object[]{user.getEmail(), user.getId()})
+                .toList());
+
+        final List<User> changedUsers = List.copyOf(users);
+        final int[] updateCounts = jdbcTemplate.batchUpdate("UPDATE USERS SET NAME = ?, VERSION = ?, UPDATED_AT = CURRENT_TIMESTAMP WHERE ID = ?", changedUsers.stream()
+                .map(user -> new Object[]{user.getName(), user.getVersion(), user.getId()})
+                .toList());
+        final List<User> updatedUsers = new ArrayList<>();
+        final List<User> newUsers = new ArrayList<>();
+        for (int i = 0; i < changedUsers.size(); i++) {
+            (updateCounts[i] == 0 ? newUsers : updatedUsers).add(changedUsers.get(i));
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO USERS (ID, NAME, EMAIL, VERSION) VALUES (?, ?, ?, ?)", newUsers.stream()
+                .map(user -> new Object[]{user.getId(), user.getName(), user.getEmail(), user.getVersion()})
+                .toList());
+        jdbcTemplate.batchUpdate("DELETE FROM USER_ROLES WHERE USER_ID = ?", updatedUsers.stream()
+                .map(user -> new Object[]{user.getId()})
+                .toList());
+        insertUserRoles(changedUsers);
     }
 
+    /**
+     * Reads only the columns of the {@code USERS} table unless the roles are needed, see {@link UserSummary}
+     */
     @Override
     @Transactional(readOnly = true)
-    public Collection<User> getAllUsers() {
+    public Collection<User> getAllUsers(boolean withRoles) {
+        if (!withRoles) {
+            return userRepository.findAllProjectedBy(UserSummary.class).stream()
+                    .map(UserToUserEntityMapper::toDTO)
+                    .toList();
+        }
+
         return userRepository.findAll()
                 .stream().map(UserToUserEntityMapper::toDTO)
                 .toList();
     }
 
+    /**
+     * Reads only the columns of the {@code USERS} table unless the roles are needed, see {@link UserSummary}
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<User> getUsersPage(UUID afterId, int limit, boolean withRoles) {
+        if (!withRoles) {
+            final List<UserSummary> summaries = afterId == null
+                    ? userRepository.findAllByOrderByIdAsc(Limit.of(limit), UserSummary.class)
+                    : userRepository.findAllByIdGreaterThanOrderByIdAsc(afterId, Limit.of(limit), UserSummary.class);
+            return summaries.stream()
+                    .map(UserToUserEntityMapper::toDTO)
+                    .toList();
+        }
+
+        final List<UserEntity> entities = afterId == null
+                ? userRepository.findAllByOrderByIdAsc(Limit.of(limit))
+                : userRepository.findAllByIdGreaterThanOrderByIdAsc(afterId, Limit.of(limit));
+
+        return entities.stream()
+                .map(UserToUserEntityMapper::toDTO)
+                .toList();
+    }
+
+    /**
+     * Retrieves a page of users joined with the role by its name, the user roles are looked up by role id.
+     * Unless the roles are needed, the role is joined only to filter the users and the lazy roles are not loaded
+     */
     @Override
     @Transactional(readOnly = true)
-    public User getUserById(String uuid) throws NotFoundException {
+    public List<User> findUsersByRole(String role, UUID afterId, int limit, boolean withRoles) {
+        final List<UserEntity> entities = afterId == null
+                ? userRepository.findAllByRolesNameOrderByIdAsc(role, Limit.of(limit))
+                : userRepository.findAllByRolesNameAndIdGreaterThanOrderByIdAsc(role, afterId, Limit.of(limit));
+
+        return entities.stream()
+                .map(entity -> UserToUserEntityMapper.toDTO(entity, withRoles))
+                .toList();
+    }
+
+    /**
+     * Walks the users table joined with the roles with a server side cursor, so the roles are not loaded per user.
+     * Every entity is detached as soon as it is mapped so that the persistence context does not grow.
+     * Unless the roles are needed, only the columns of the {@code USERS} table are walked, see {@link UserSummary}.
+     * The projected users are not managed
+     * @param consumer consumer of users
+     * @param withRoles whether the roles of the users are needed
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachUser(Consumer<User> consumer, boolean withRoles) {
+        if (!withRoles) {
+            try (Stream<UserSummary> summaries = userRepository.streamAllByOrderByIdAsc(UserSummary.class)) {
+                summaries.forEach(summary -> consumer.accept(UserToUserEntityMapper.toDTO(summary)));
+            }
+            return;
+        }
+
+        try (Stream<UserEntity> entities = userRepository.streamAllByOrderByIdAsc()) {
+            entities.forEach(entity -> {
+                consumer.accept(UserToUserEntityMapper.toDTO(entity));
+                entityManager.detach(entity);
+            });
+        }
+    }
+
+    /**
+     * Reads the users with the given ids together with their roles, one statement per chunk of ids.
+     * Users which do not exist are left out
+     * @param ids ids of users
+     * @return found users in no particular order
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<User> getUsersByIds(Collection<UUID> ids) {
+        final List<UUID> idList = List.copyOf(ids);
+        final List<User> users = new ArrayList<>(idList.size());
+        for (int chunkStart = 0; chunkStart < idList.size(); chunkStart += SAVE_USERS_CHUNK_SIZE) {
+            userRepository.findAllByIdIn(idList.subList(chunkStart, Math.min(chunkStart + SAVE_USERS_CHUNK_SIZE, idList.size())))
+                    .forEach(entity -> users.add(UserToUserEntityMapper.toDTO(entity)));
+        }
+        return users;
+    }
+
+    /**
+     * Reads only the columns of the {@code USERS} table unless the roles are needed, see {@link UserSummary}
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public User getUserById(String uuid, boolean withRoles) throws NotFoundException {
+        if (!withRoles) {
+            return UserToUserEntityMapper
+                    .toDTO(userRepository.findProjectedById(UUID.fromString(uuid), UserSummary.class)
+                            .orElseThrow(NotFoundException::new));
+        }
+
         return UserToUserEntityMapper
                 .toDTO(userRepository.findById(UUID.fromString(uuid))
                         .orElseThrow(NotFoundException::new));
     }
 
+    /**
+     * Reads only the id, version and modification time of the user by the primary key
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<UserVersion> getUserVersion(UUID id) {
+        return userRepository.findVersionById(id);
+    }
+
     @Override
     @Transactional
     public void deleteUser(User userToDelete) {
-        userRepository.deleteById(userToDelete.getId());
+        deleteUserById(userToDelete.getId(), userToDelete.getVersion());
     }
 
+    /**
+     * Deletes the user by a single statement conditioned by the version if it is given.
+     * Only if nothing is deleted, one more query tells a missing user from a modified one
+     */
     @Override
     @Transactional
+    public boolean deleteUserById(UUID id, Long version) {
+        if (version == null) {
+            return userRepository.deleteDirectlyById(id) > 0;
+        }
+
+        if (userRepository.deleteDirectlyByIdAndVersion(id, version) > 0) {
+            return true;
+        }
+        if (userRepository.existsById(id)) {
+            throw new VersionConflictException("user %s has been modified since version %d".formatted(id, version));
+        }
+        return false;
+    }
+
+    /**
+     * Loads the user together with its roles by one statement and modifies the managed entity.
+     * Only the changed columns are updated (see {@link UserEntity}) and only the added and removed roles
+     * are inserted into and deleted from USER_ROLES.
+     * Hibernate increments the version and conditions the update statement by the loaded one,
+     * so a concurrent modification between loading and flushing fails with {@link VersionConflictException}.
+     * The modification time is set explicitly as a change of roles alone would only increment the version.
+     * A role id taken from {@link RoleIdCache} might belong to a role deleted concurrently, which fails the flush
+     * with a {@link DataIntegrityViolationException}. Then the cache is evicted and, unless the caller runs
+     * a transaction of its own, the update is retried once in a new transaction resolving the roles from the db
+     */
+    @Override
     public User updateUser(User userToUpdate) {
-        final UserEntity userEntity = UserToUserEntityMapper.toEntity(userToUpdate);
-        userEntity.setRoles(attachRolesToPersistenceContext(userEntity.getRoles()));
-        final UserEntity savedEntity = userRepository.save(userEntity);
+        final boolean retriable = !TransactionSynchronizationManager.isActualTransactionActive();
+        try {
+            return transactionTemplate.execute(status -> updateLoadedUser(userToUpdate));
+        } catch (DataIntegrityViolationException ex) {
+            // a cached role might have been deleted
+            roleIdCache.invalidateAll();
+            if (!retriable) {
+                log.error("Could not update user {}", userToUpdate.getId(), ex);
+                throw new ConstraintViolationException(ex);
+            }
+            log.warn("Could not update user {}, retrying with the roles resolved from the db", userToUpdate.getId(), ex);
+        }
+
+        try {
+            return transactionTemplate.execute(status -> updateLoadedUser(userToUpdate));
+        } catch (DataIntegrityViolationException ex) {
+            log.error("Could not update user {}", userToUpdate.getId(), ex);
+            roleIdCache.invalidateAll();
+            throw new ConstraintViolationException(ex);
+        }
+    }
+
+    private User updateLoadedUser(User userToUpdate) {
+        final UserEntity userEntity = userRepository.findById(userToUpdate.getId())
+                .orElseThrow(NotFoundException::new);
+        checkVersion(userEntity, userToUpdate);
+        userEntity.setName(userToUpdate.getName());
+        updateRoles(userEntity, userToUpdate.getRoles());
+        userEntity.setUpdatedAt(Instant.now());
+        flush(userToUpdate);
 
-        return UserToUserEntityMapper.toDTO(savedEntity);
+        return savedUser(userToUpdate, userEntity);
     }
 
+    /**
+     * Removes the roles which the user does not have anymore from the loaded roles and adds the new ones,
+     * so that Hibernate deletes and inserts only the rows of the changed roles
+     */
+    private void updateRoles(UserEntity userEntity, Collection<String> names) {
+        final Set<String> addedNames = new HashSet<>(names);
+        userEntity.getRoles().removeIf(role -> !addedNames.contains(role.getName()));
+        userEntity.getRoles().forEach(role -> addedNames.remove(role.getName()));
+        if (!addedNames.isEmpty()) {
+            userEntity.getRoles().addAll(attachRolesToPersistenceContext(addedNames).values());
+        }
+    }
+
+    private void flush(User user) {
+        try {
+            userRepository.flush();
+        } catch (OptimisticLockingFailureException ex) {
+            throw new VersionConflictException("user %s has been modified concurrently".formatted(user.getId()));
+        }
+    }
+
+    private static void checkVersion(UserEntity userEntity, User user) {
+        if (user.getVersion() != null && !user.getVersion().equals(userEntity.getVersion())) {
+            throw new VersionConflictException("user %s has version %d instead of %d"
+                    .formatted(userEntity.getId(), userEntity.getVersion(), user.getVersion()));
+        }
+    }
+
+    /**
+     * Reads only the columns of the {@code USERS} table unless the roles are needed, see {@link UserSummary}
+     */
     @Override
     @Transactional(readOnly = true)
-    public Collection<User> findUsersByName(String name) {
+    public Collection<User> findUsersByName(String name, boolean withRoles) {
+        if (!withRoles) {
+            return userRepository.findAllByName(name, UserSummary.class).stream()
+                    .map(UserToUserEntityMapper::toDTO)
+                    .toList();
+        }
+
         return userRepository.findAllByName(name).stream()
                 .map(UserToUserEntityMapper::toDTO)
                 .toList();
     }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Collection<UserVersion> findUserVersionsByName(String name) {
+        return userRepository.findVersionsByName(name);
+    }
+
+    /**
+     * Finds users by the range of lower case names starting with the prefix instead of {@code LIKE}, so that the index
+     * on the lower case names is used even by a generic plan of the prepared statement, whatever the prefix is.
+     * The lazy roles of the found users are not loaded unless they are needed
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<User> findUsersByNamePrefix(String prefix, int limit, boolean withRoles) {
+        final String from = UserDao.normalizeName(prefix);
+        return userRepository.findAllByLowerCaseNameRange(from, nextPrefix(from), limit).stream()
+                .map(entity -> UserToUserEntityMapper.toDTO(entity, withRoles))
+                .toList();
+    }
+
+    /**
+     * @return the least string greater than all strings starting with the prefix
+     */
+    private static String nextPrefix(String prefix) {
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            return String.valueOf(Character.MAX_VALUE).repeat(prefix.length() + 1);
+        }
+        return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+    }
+
+    private static UserEntity toNewEntity(User newUser) {
+        final UserEntity newUserEntity = UserToUserEntityMapper.toEntity(newUser);
+        newUserEntity.setId(UUID.randomUUID());
+        newUserEntity.setNewEntity(true);
+        return newUserEntity;
+    }
+
+    /**
+     * Builds the saved user from the given one instead of mapping the saved entity,
+     * because the roles of the entity may be references which would be loaded from the db by mapping
+     */
+    private static User savedUser(User user, UserEntity savedEntity) {
+        final User savedUser = new User(user);
+        savedUser.setId(savedEntity.getId());
+        savedUser.setVersion(savedEntity.getVersion());
+        savedUser.setUpdatedAt(savedEntity.getUpdatedAt());
+        return savedUser;
+    }
 }
@@ -0,0 +1,71 @@
+package com.sap.refactoring.persistence.db;
+
+import com.sap.refactoring.persistence.RoleEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+
+/**
+ * Bounded cache of role ids by role name.
+ * Roles are a small and nearly static vocabulary so writes can attach existing roles without looking them up one by one.
+ * The least recently used roles are evicted when the cache is full.
+ * Only committed roles get into the cache: roles inserted by a transaction are added after it commits
+ */
+@Component
+public class RoleIdCache {
+    private final Map<String, Integer> idsByName;
+
+    public RoleIdCache(@Value("${users.role-cache.max-size:1000}") int maxSize) {
+        this.idsByName = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    /**
+     * @param names role names to look up
+     * @return ids of the cached roles by their names, roles missing in the cache are not included
+     */
+    public Map<String, Integer> getAll(Collection<String> names) {
+        final Map<String, Integer> result = new HashMap<>();
+        names.forEach(name -> {
+            final Integer id = idsByName.get(name);
+            if (id != null) {
+                result.put(name, id);
+            }
+        });
+
+        return result;
+    }
+
+    public void put(RoleEntity role) {
+        idsByName.put(role.getName(), role.getId());
+    }
+
+    /**
+     * Caches roles inserted by the current transaction once it commits.
+     * Nothing is cached if the transaction rolls back or there is no transaction
+     * @param newRoles roles which are being inserted
+     */
+    public void putAfterCommit(Collection<RoleEntity> newRoles) {
+        if (newRoles.isEmpty() || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                newRoles.forEach(RoleIdCache.this::put);
+            }
+        });
+    }
+
+    public void invalidateAll() {
+        idsByName.clear();
+    }
+}
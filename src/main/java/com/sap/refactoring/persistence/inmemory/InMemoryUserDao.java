@@ -2,30 +2,53 @@ package com.sap.refactoring.persistence.inmemory;
 
 import com.sap.refactoring.exceptions.ConstraintViolationException;
 import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.exceptions.VersionConflictException;
+import com.sap.refactoring.exceptions.WriteQueueFullException;
 import com.sap.refactoring.models.User;
+import com.sap.refactoring.models.UserSaveResult;
 import com.sap.refactoring.models.UserUniqueKey;
+import com.sap.refactoring.models.UserVersion;
 import com.sap.refactoring.persistence.UserDao;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Repository;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
 
 
 /**
  * In memory implementation if {@link UserDao}.
- * It keeps users in an internal collection and watches for race conditions
+ * It keeps users in an internal collection and watches for race conditions.
+ * Users are indexed by their unique key, by id, by name, by role and kept in id order for pagination.
+ * Normalized names are kept sorted together with ids for search by prefix. All indexes are modified only inside
+ * {@link ConcurrentHashMap#compute} of the unique key map so that they stay in sync.
+ * Modifications are passed to a {@link UserChangeLog} inside the same compute, see {@link InMemoryUserDaoPersistence}.
+ * Versions of users are checked and incremented inside the same compute as well.
+ * Users are stored as immutable {@link StoredUser}s, so reads share them and create only the returned {@link User}s
+ * without copying roles.
  */
 @Repository
 //@Primary
 @Slf4j
 public class InMemoryUserDao implements UserDao
 {
-	private final Map<UserUniqueKey, User> users = new ConcurrentHashMap<>();
+	private final Map<UserUniqueKey, StoredUser> users = new ConcurrentHashMap<>();
+	private final Map<UUID, StoredUser> usersById = new ConcurrentHashMap<>();
+	private final Map<String, Set<UUID>> userIdsByName = new ConcurrentHashMap<>();
+	private final Map<String, NavigableSet<UUID>> userIdsByRole = new ConcurrentHashMap<>();
+	private final NavigableSet<UUID> orderedUserIds = new ConcurrentSkipListSet<>(UserDao.ID_ORDER);
+	private final NavigableSet<NormalizedName> orderedNames = new ConcurrentSkipListSet<>(NormalizedName.ORDER);
+	private volatile UserChangeLog changeLog = UserChangeLog.NONE;
+
+	public void setChangeLog(UserChangeLog changeLog) {
+		this.changeLog = changeLog;
+	}
 
 	/**
 	 * Creates a new user in the persistence layer.
-	 * It saves a copy of {@link User} so that changes made outside dao don't affect the object
+	 * It saves an immutable copy of {@link User} so that changes made outside dao don't affect the object
 	 * Throws {@link ConstraintViolationException} if another user with the same unique key already exists
 	 * @param newUser
 	 * @return created user
@@ -33,69 +56,375 @@ public class InMemoryUserDao implements UserDao
 	 */
 	public User saveUser(User newUser) {
 		newUser.setId(UUID.randomUUID());
+		newUser.setVersion(0L);
 
-		final User copyToPersist = new User(newUser);
-		final UserUniqueKey userUniqueKey = new UserUniqueKey(copyToPersist);
-		final User oldUser = users.putIfAbsent(userUniqueKey, copyToPersist); // atomic
-		if (oldUser != null){
-			//TODO change to an exception from persistence package once we have db. And other exceptions in this class
-			log.error("user with such unique key already exists: {}", userUniqueKey);
-			throw new ConstraintViolationException("user with such unique key already exists: %s".formatted(userUniqueKey));
-		}
+		final StoredUser copyToPersist = StoredUser.of(newUser, 0L);
+		final UserUniqueKey userUniqueKey = copyToPersist.uniqueKey();
+		final UserChangeLog changeLog = this.changeLog;
+		changeLog.modify(() -> users.compute(userUniqueKey, (key, oldUser) -> { // atomic
+			if (oldUser != null){
+				//TODO change to an exception from persistence package once we have db. And other exceptions in this class
+				log.error("user with such unique key already exists: {}", key);
+				throw new ConstraintViolationException("user with such unique key already exists: %s".formatted(key));
+			}
+			changeLog.logPut(copyToPersist.toUser());
+			usersById.put(copyToPersist.id(), copyToPersist);
+			orderedUserIds.add(copyToPersist.id());
+			indexName(copyToPersist);
+			indexRoles(copyToPersist);
+			return copyToPersist;
+		}));
 
 		return newUser;
 	}
 
-	public Collection<User> getAllUsers() {
+	/**
+	 * Creates users in a single pass. Every user is saved atomically like in {@link #saveUser(User)}.
+	 * Once the change log rejects a user by {@link WriteQueueFullException}, it and the users after it are reported
+	 * as rejected without trying to save them, so the caller knows which users to send again
+	 * @param newUsers
+	 * @return
+	 */
+	public List<UserSaveResult> saveUsers(List<User> newUsers) {
+		final List<UserSaveResult> results = new ArrayList<>(newUsers.size());
+		boolean rejected = false;
+		for (User newUser : newUsers) {
+			if (rejected) {
+				results.add(UserSaveResult.rejected(newUser));
+				continue;
+			}
+			try {
+				results.add(UserSaveResult.created(saveUser(newUser)));
+			} catch (ConstraintViolationException e) {
+				results.add(UserSaveResult.duplicate(newUser));
+			} catch (WriteQueueFullException e) {
+				log.warn("rejecting {} of {} users to be saved: {}", newUsers.size() - results.size(), newUsers.size(), e.getMessage());
+				rejected = true;
+				results.add(UserSaveResult.rejected(newUser));
+			}
+		}
+
+		return results;
+	}
+
+	public Collection<User> getAllUsers(boolean withRoles) {
 		return users.values().stream()
-				.map(User::new)
+				.map(StoredUser::toUser)
+				.toList();
+	}
+
+	/**
+	 * Retrieves a page of users. The ordered id set is a skip list,
+	 * so the cost of a page is O(log n + limit)
+	 * @param afterId
+	 * @param limit
+	 * @param withRoles
+	 * @return
+	 */
+	public List<User> getUsersPage(UUID afterId, int limit, boolean withRoles) {
+		final NavigableSet<UUID> ids = afterId == null ? orderedUserIds : orderedUserIds.tailSet(afterId, false);
+		return ids.stream()
+				.map(usersById::get)
+				.filter(Objects::nonNull)
+				.limit(limit)
+				.map(StoredUser::toUser)
+				.toList();
+	}
+
+	/**
+	 * Retrieves a page of users having the role. Ids of users are kept in id order per role,
+	 * so the cost of a page is O(log n + limit) like the one of {@link #getUsersPage(UUID, int, boolean)}.
+	 * The role is checked once again because a concurrent update might have changed the roles in the meantime
+	 * @param role
+	 * @param afterId
+	 * @param limit
+	 * @param withRoles
+	 * @return
+	 */
+	public List<User> findUsersByRole(String role, UUID afterId, int limit, boolean withRoles) {
+		final NavigableSet<UUID> roleUserIds = userIdsByRole.get(role);
+		if (roleUserIds == null) {
+			return List.of();
+		}
+
+		final NavigableSet<UUID> ids = afterId == null ? roleUserIds : roleUserIds.tailSet(afterId, false);
+		return ids.stream()
+				.map(usersById::get)
+				.filter(Objects::nonNull)
+				.filter(u -> u.roles().contains(role))
+				.limit(limit)
+				.map(StoredUser::toUser)
 				.toList();
 	}
 
+	/**
+	 * Passes a new {@link User} for every stored user to the consumer. The iteration is weakly consistent:
+	 * users modified concurrently may or may not be reflected
+	 * @param consumer
+	 * @param withRoles
+	 */
+	public void forEachUser(Consumer<User> consumer, boolean withRoles) {
+		usersById.values().forEach(user -> consumer.accept(user.toUser()));
+	}
+
 	/**
 	 * Retrieves user by its id.
-	 * Throws {@link NotFoundException} if no users found.
-	 * It iterates over the collection of users and looks for the one with given id.
-	 * Complexity of such search is O(n) because we sacrificed possibility to use hashes for more important unique constraint checking
+	 * Throws {@link NotFoundException} if no users found or the id is not a valid uuid.
+	 * The user is looked up in the id index, so complexity of such search is O(1)
 	 * @param id
+	 * @param withRoles
 	 * @return
 	 */
-	public User getUserById(String id){
-		return users.values().stream()
-				.filter(u -> u.getId().toString().equals(id))
-				.findFirst()
-				.map(User::new)
-				.orElseThrow(NotFoundException::new);
+	public User getUserById(String id, boolean withRoles){
+		final StoredUser user = usersById.get(parseId(id));
+		if (user == null){
+			throw new NotFoundException();
+		}
+
+		return user.toUser();
 	}
 
 	/**
-	 * Deletes user. If user does not exists as consequence of concurrent execution it will do nothing
+	 * Looks the user up in the id index without creating a {@link User}.
+	 * The modification time is not kept in memory
+	 */
+	@Override
+	public Optional<UserVersion> getUserVersion(UUID id) {
+		return Optional.ofNullable(usersById.get(id))
+				.map(user -> new UserVersion(user.id(), user.version(), null));
+	}
+
+	/**
+	 * Deletes user. If user does not exists as consequence of concurrent execution it will do nothing.
+	 * The id and the version of the user are checked if they are given
 	 * @param userToDelete
 	 */
 	public void deleteUser(User userToDelete) {
-		final User deletedUser = users.remove(new UserUniqueKey(userToDelete));
-		if (deletedUser == null){
+		if (!delete(new UserUniqueKey(userToDelete), userToDelete.getId(), userToDelete.getVersion())){
 			log.warn("the user with id {} does not exist", userToDelete.getId());
 		}
 	}
 
+	/**
+	 * Deletes user found by its id in the id index. The id and the version are checked again inside the compute
+	 * as the user might have been deleted and its email reused in the meantime
+	 * @param id
+	 * @param version
+	 * @return
+	 */
+	public boolean deleteUserById(UUID id, Long version) {
+		final StoredUser user = usersById.get(id);
+		return user != null && delete(user.uniqueKey(), id, version);
+	}
+
+	private boolean delete(UserUniqueKey userUniqueKey, UUID id, Long version) {
+		if (!users.containsKey(userUniqueKey)){
+			return false;
+		}
+
+		final boolean[] deleted = {false};
+		final UserChangeLog changeLog = this.changeLog;
+		changeLog.modify(() -> users.computeIfPresent(userUniqueKey, (key, deletedUser) -> {
+			if (id != null && !id.equals(deletedUser.id())) {
+				return deletedUser;
+			}
+			checkVersion(deletedUser, version);
+			changeLog.logDelete(deletedUser.toUser());
+			forget(deletedUser);
+			deleted[0] = true;
+			return null;
+		}));
+		return deleted[0];
+	}
+
 	/**
 	 * Updates user in the persistence.
-	 * It saves a copy of {@link User} so that changes made outside dao don't affect the object
+	 * It saves an immutable copy of {@link User} so that changes made outside dao don't affect the object.
+	 * Throws {@link NotFoundException} if the user has been deleted and {@link VersionConflictException} if it has been modified
+	 * since the given version
 	 * @param userToUpdate
 	 * @return
 	 */
 	public User updateUser(User userToUpdate) {
-		final User copyToPersist = new User(userToUpdate);
-		users.put(new UserUniqueKey(copyToPersist), copyToPersist);
+		final StoredUser copyToPersist = StoredUser.of(userToUpdate, 0L);
+		final Long expectedVersion = userToUpdate.getVersion();
+		final UserChangeLog changeLog = this.changeLog;
+		final StoredUser updatedUser = changeLog.modify(() -> users.compute(copyToPersist.uniqueKey(), (key, oldUser) -> {
+			if (oldUser == null || !oldUser.id().equals(copyToPersist.id())){
+				throw new NotFoundException();
+			}
+			checkVersion(oldUser, expectedVersion);
+			final StoredUser newUser = copyToPersist.withVersion(oldUser.version() + 1);
+			changeLog.logPut(newUser.toUser());
+			replace(oldUser, newUser);
+			return newUser;
+		}));
 
+		userToUpdate.setVersion(updatedUser.version());
 		return userToUpdate;
 	}
 
-	public Collection<User> findUsersByName(String name) {
-		return users.values().stream()
-				.filter(u -> u.getName().equals(name))
-				.map(User::new)
+	/**
+	 * Puts a persisted user back as it is, including its version, whether a user with the same unique key exists or not.
+	 * It is used to restore users from snapshots and write-ahead logs, and to load them from the database in write-behind mode
+	 * @param user
+	 */
+	public void restoreUser(User user) {
+		final StoredUser copyToPersist = StoredUser.of(user, user.getVersion());
+		final UserChangeLog changeLog = this.changeLog;
+		changeLog.modify(() -> users.compute(copyToPersist.uniqueKey(), (key, oldUser) -> {
+			changeLog.logPut(copyToPersist.toUser());
+			replace(oldUser, copyToPersist);
+			return copyToPersist;
+		}));
+	}
+
+	/**
+	 * Replaces the user of the given id by its persisted state, or removes it if it is not persisted any more, without logging the change.
+	 * A stored user of the same or a newer version is kept, so a refresh never reverts a modification made in memory.
+	 * It is used to take over modifications of users made by other instances of the application
+	 * @param id id of the changed user
+	 * @param persistedUser the persisted user or null if it has been deleted
+	 */
+	public void refreshUser(UUID id, User persistedUser) {
+		final StoredUser storedUser = usersById.get(id);
+		if (storedUser != null && persistedUser != null && storedUser.version() >= persistedUser.getVersion()) {
+			return;
+		}
+		if (storedUser != null && (persistedUser == null || !storedUser.email().equals(persistedUser.getEmail()))) {
+			users.computeIfPresent(storedUser.uniqueKey(), (key, oldUser) -> {
+				if (!oldUser.id().equals(id)) {
+					return oldUser;
+				}
+				forget(oldUser);
+				return null;
+			});
+		}
+		if (persistedUser != null) {
+			final StoredUser refreshedUser = StoredUser.of(persistedUser, persistedUser.getVersion());
+			users.compute(refreshedUser.uniqueKey(), (key, oldUser) -> {
+				if (oldUser != null && oldUser.id().equals(id) && oldUser.version() >= refreshedUser.version()) {
+					return oldUser;
+				}
+				replace(oldUser, refreshedUser);
+				return refreshedUser;
+			});
+		}
+	}
+
+	/**
+	 * Finds users by name using the name index, so the cost depends on the number of found users
+	 * rather than on the number of stored users.
+	 * The name is checked once again because a concurrent update might have renamed the user in the meantime
+	 * @param name
+	 * @param withRoles
+	 * @return
+	 */
+	public Collection<User> findUsersByName(String name, boolean withRoles) {
+		return userIdsByName.getOrDefault(name, Set.of()).stream()
+				.map(usersById::get)
+				.filter(Objects::nonNull)
+				.filter(u -> u.name().equals(name))
+				.map(StoredUser::toUser)
 				.toList();
 	}
+
+	/**
+	 * Finds users by the beginning of their names ignoring case using the sorted normalized names,
+	 * the names starting with the prefix follow each other, so the cost depends on the limit rather than on the number of stored users.
+	 * The name is checked once again because a concurrent update might have renamed the user in the meantime
+	 * @param prefix
+	 * @param limit
+	 * @param withRoles
+	 * @return
+	 */
+	public List<User> findUsersByNamePrefix(String prefix, int limit, boolean withRoles) {
+		final String normalizedPrefix = UserDao.normalizeName(prefix);
+		return orderedNames.tailSet(new NormalizedName(normalizedPrefix, NormalizedName.MIN_ID)).stream()
+				.takeWhile(name -> name.name().startsWith(normalizedPrefix))
+				.map(name -> usersById.get(name.id()))
+				.filter(Objects::nonNull)
+				.filter(u -> UserDao.normalizeName(u.name()).startsWith(normalizedPrefix))
+				.limit(limit)
+				.map(StoredUser::toUser)
+				.toList();
+	}
+
+	private void replace(StoredUser oldUser, StoredUser newUser) {
+		if (oldUser != null){
+			if (!oldUser.id().equals(newUser.id())){
+				usersById.remove(oldUser.id());
+				orderedUserIds.remove(oldUser.id());
+			}
+			unindexName(oldUser);
+			unindexRoles(oldUser);
+		}
+		usersById.put(newUser.id(), newUser);
+		orderedUserIds.add(newUser.id());
+		indexName(newUser);
+		indexRoles(newUser);
+	}
+
+	private void forget(StoredUser user) {
+		usersById.remove(user.id());
+		orderedUserIds.remove(user.id());
+		unindexName(user);
+		unindexRoles(user);
+	}
+
+	private static void checkVersion(StoredUser storedUser, Long version) {
+		if (version != null && version != storedUser.version()){
+			throw new VersionConflictException("user %s has version %d instead of %d"
+					.formatted(storedUser.id(), storedUser.version(), version));
+		}
+	}
+
+	private void indexName(StoredUser user) {
+		userIdsByName.compute(user.name(), (name, ids) -> {
+			final Set<UUID> result = ids != null ? ids : ConcurrentHashMap.newKeySet();
+			result.add(user.id());
+			return result;
+		});
+		orderedNames.add(new NormalizedName(UserDao.normalizeName(user.name()), user.id()));
+	}
+
+	private void unindexName(StoredUser user) {
+		userIdsByName.computeIfPresent(user.name(), (name, ids) -> {
+			ids.remove(user.id());
+			return ids.isEmpty() ? null : ids;
+		});
+		orderedNames.remove(new NormalizedName(UserDao.normalizeName(user.name()), user.id()));
+	}
+
+	private void indexRoles(StoredUser user) {
+		user.roles().forEach(role -> userIdsByRole.compute(role, (key, ids) -> {
+			final NavigableSet<UUID> result = ids != null ? ids : new ConcurrentSkipListSet<>(UserDao.ID_ORDER);
+			result.add(user.id());
+			return result;
+		}));
+	}
+
+	private void unindexRoles(StoredUser user) {
+		user.roles().forEach(role -> userIdsByRole.computeIfPresent(role, (key, ids) -> {
+			ids.remove(user.id());
+			return ids.isEmpty() ? null : ids;
+		}));
+	}
+
+	private static UUID parseId(String id) {
+		try {
+			return UUID.fromString(id);
+		} catch (IllegalArgumentException e) {
+			throw new NotFoundException();
+		}
+	}
+
+	/**
+	 * Entry of the sorted names, ordered by the normalized name and then by id
+	 */
+	private record NormalizedName(String name, UUID id) {
+		private static final UUID MIN_ID = new UUID(0, 0);
+		private static final Comparator<NormalizedName> ORDER = Comparator.comparing(NormalizedName::name)
+				.thenComparing(NormalizedName::id, UserDao.ID_ORDER);
+	}
 }
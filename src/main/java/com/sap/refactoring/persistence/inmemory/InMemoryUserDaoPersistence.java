@@ -0,0 +1,138 @@
+package com.sap.refactoring.persistence.inmemory;
+
+import com.sap.refactoring.models.User;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Makes {@link InMemoryUserDao} survive restarts, enabled by {@code users.persistence.directory}.
+ * Changes are logged to a {@link WriteAheadLog} and the whole store is periodically written to a snapshot (see {@link UserSnapshots})
+ * while the dao keeps serving requests. A snapshot of generation N contains all changes of the log segments below N,
+ * so older snapshots and segments are deleted once it is written.
+ * On start the latest readable snapshot is loaded and the segments from its generation on are replayed.
+ */
+@Component
+@ConditionalOnProperty("users.persistence.directory")
+@Slf4j
+public class InMemoryUserDaoPersistence {
+    private final InMemoryUserDao userDao;
+    private final Path directory;
+    private final Duration snapshotInterval;
+    private final boolean sync;
+    private final ScheduledExecutorService snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "user-snapshots");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private WriteAheadLog writeAheadLog;
+
+    public InMemoryUserDaoPersistence(InMemoryUserDao userDao,
+                                      @Value("${users.persistence.directory}") Path directory,
+                                      @Value("${users.persistence.snapshot-interval:5m}") Duration snapshotInterval,
+                                      @Value("${users.persistence.sync:false}") boolean sync) {
+        this.userDao = userDao;
+        this.directory = directory;
+        this.snapshotInterval = snapshotInterval;
+        this.sync = sync;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        final long lastGeneration = restore();
+        writeAheadLog = new WriteAheadLog(directory, lastGeneration + 1, sync);
+        userDao.setChangeLog(writeAheadLog);
+        snapshotExecutor.scheduleWithFixedDelay(this::snapshotSafely,
+                snapshotInterval.toMillis(), snapshotInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes a snapshot of the store and deletes the files it makes obsolete
+     */
+    public void snapshot() throws IOException {
+        final long generation = writeAheadLog.rotate();
+        final long count = UserSnapshots.write(directory, generation, consumer -> userDao.forEachUser(consumer, true));
+        log.info("snapshot {} of {} users written", generation, count);
+
+        for (long olderGeneration : UserSnapshots.generations(directory)) {
+            if (olderGeneration < generation) {
+                Files.deleteIfExists(UserSnapshots.snapshot(directory, olderGeneration));
+            }
+        }
+        for (long olderGeneration : WriteAheadLog.generations(directory)) {
+            if (olderGeneration < generation) {
+                Files.deleteIfExists(WriteAheadLog.segment(directory, olderGeneration));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        snapshotExecutor.shutdown();
+        snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        userDao.setChangeLog(UserChangeLog.NONE);
+        writeAheadLog.close();
+    }
+
+    /**
+     * @return the highest generation of the existing files
+     */
+    private long restore() throws IOException {
+        deleteTemporaryFiles();
+
+        long snapshotGeneration = 0;
+        final List<Long> snapshotGenerations = UserSnapshots.generations(directory);
+        for (int i = snapshotGenerations.size() - 1; i >= 0 && snapshotGeneration == 0; i--) {
+            try {
+                final long count = UserSnapshots.read(UserSnapshots.snapshot(directory, snapshotGenerations.get(i)), userDao::restoreUser);
+                snapshotGeneration = snapshotGenerations.get(i);
+                log.info("restored {} users from snapshot {}", count, snapshotGeneration);
+            } catch (IOException e) {
+                log.error("could not read snapshot {}", snapshotGenerations.get(i), e);
+            }
+        }
+
+        long lastGeneration = snapshotGeneration;
+        for (long generation : WriteAheadLog.generations(directory)) {
+            lastGeneration = Math.max(lastGeneration, generation);
+            if (generation < snapshotGeneration) {
+                continue;
+            }
+            final long count = WriteAheadLog.replay(WriteAheadLog.segment(directory, generation), userDao::restoreUser,
+                    email -> userDao.deleteUser(User.builder().email(email).build()));
+            log.info("replayed {} changes from write-ahead log segment {}", count, generation);
+        }
+
+        return lastGeneration;
+    }
+
+    private void deleteTemporaryFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(file -> file.getFileName().toString().endsWith(".tmp")).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private void snapshotSafely() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            log.error("could not write snapshot of users", e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.sap.refactoring.persistence.inmemory;
+
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.models.UserUniqueKey;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Immutable state of a user kept by {@link InMemoryUserDao}. One instance is referenced by all indexes of the dao
+ * and is read concurrently without copying. The role list is immutable as well,
+ * so it is shared with every {@link User} handed out by the dao instead of being copied per read
+ */
+record StoredUser(UUID id, String name, String email, List<String> roles, long version) {
+
+    StoredUser {
+        roles = roles != null ? List.copyOf(roles) : List.of();
+    }
+
+    static StoredUser of(User user, long version) {
+        return new StoredUser(user.getId(), user.getName(), user.getEmail(), user.getRoles(), version);
+    }
+
+    StoredUser withVersion(long version) {
+        return new StoredUser(id, name, email, roles, version);
+    }
+
+    UserUniqueKey uniqueKey() {
+        return new UserUniqueKey(email);
+    }
+
+    /**
+     * @return a new mutable {@link User} which shares the strings and the immutable role list of the stored user
+     */
+    User toUser() {
+        return new User(id, name, email, roles, version);
+    }
+}
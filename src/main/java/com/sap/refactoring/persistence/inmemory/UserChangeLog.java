@@ -0,0 +1,43 @@
+package com.sap.refactoring.persistence.inmemory;
+
+import com.sap.refactoring.models.User;
+
+import java.util.function.Supplier;
+
+/**
+ * Log of modifications of {@link InMemoryUserDao}. Changes are logged by the dao while it holds the lock of the user's unique key,
+ * so changes of the same user are logged in the order they are applied
+ */
+public interface UserChangeLog {
+    UserChangeLog NONE = new UserChangeLog() {
+        @Override
+        public <T> T modify(Supplier<T> modification) {
+            return modification.get();
+        }
+
+        @Override
+        public void logPut(User user) {
+        }
+
+        @Override
+        public void logDelete(User user) {
+        }
+    };
+
+    /**
+     * Runs a modification of the dao, logging and applying a change is never split by a switch to another log file
+     * @param modification modification which logs and applies changes
+     * @return result of the modification
+     */
+    <T> T modify(Supplier<T> modification);
+
+    /**
+     * Logs that the user was created or replaced the user with the same unique key
+     */
+    void logPut(User user);
+
+    /**
+     * Logs that the user with the unique key of the given user was deleted
+     */
+    void logDelete(User user);
+}
@@ -0,0 +1,74 @@
+package com.sap.refactoring.persistence.inmemory;
+
+import com.sap.refactoring.models.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Binary encoding of users shared by the snapshots and the write-ahead log:
+ * {@code [long id msb][long id lsb][long version][string name][string email][short roles count][string role]...}
+ * where a string is {@code [short length][utf-8 bytes]}
+ */
+final class UserCodec {
+
+    private UserCodec() {
+    }
+
+    static byte[] encode(User user) {
+        final byte[] name = user.getName().getBytes(StandardCharsets.UTF_8);
+        final byte[] email = user.getEmail().getBytes(StandardCharsets.UTF_8);
+        final List<byte[]> roles = user.getRoles().stream()
+                .map(role -> role.getBytes(StandardCharsets.UTF_8))
+                .toList();
+        final int rolesLength = roles.stream().mapToInt(role -> Short.BYTES + role.length).sum();
+
+        final ByteBuffer buffer = ByteBuffer.allocate(3 * Long.BYTES + 3 * Short.BYTES + name.length + email.length + rolesLength);
+        buffer.putLong(user.getId().getMostSignificantBits());
+        buffer.putLong(user.getId().getLeastSignificantBits());
+        buffer.putLong(user.getVersion());
+        putString(buffer, name);
+        putString(buffer, email);
+        buffer.putShort((short) roles.size());
+        roles.forEach(role -> putString(buffer, role));
+        return buffer.array();
+    }
+
+    static User decode(ByteBuffer buffer) {
+        final UUID id = new UUID(buffer.getLong(), buffer.getLong());
+        final long version = buffer.getLong();
+        final String name = getString(buffer);
+        final String email = getString(buffer);
+        final int rolesCount = Short.toUnsignedInt(buffer.getShort());
+        final List<String> roles = new ArrayList<>(rolesCount);
+        for (int i = 0; i < rolesCount; i++) {
+            roles.add(getString(buffer));
+        }
+
+        return new User(id, name, email, roles, version);
+    }
+
+    static byte[] encodeString(String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer buffer = ByteBuffer.allocate(Short.BYTES + bytes.length);
+        putString(buffer, bytes);
+        return buffer.array();
+    }
+
+    static String getString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("string of %d bytes is too long to be persisted".formatted(bytes.length));
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+}
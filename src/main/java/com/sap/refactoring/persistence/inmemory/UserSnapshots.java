@@ -0,0 +1,143 @@
+package com.sap.refactoring.persistence.inmemory;
+
+import com.sap.refactoring.models.User;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Snapshots of all users in files {@code snapshot-<generation>.bin}.
+ * A snapshot is {@code [int magic][long generation][record]...[int end marker][long count][int crc32 of records]}
+ * and a record is {@code [int length][user]} (see {@link UserCodec}).
+ * A snapshot is written to a temporary file and renamed once it is complete and forced to the storage device,
+ * so a snapshot file is either complete or absent. It is read through memory-mapped windows of the file.
+ */
+final class UserSnapshots {
+    static final String SNAPSHOT_PREFIX = "snapshot-";
+    static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final int MAGIC = 0x55534E50;
+    private static final int END_MARKER = -1;
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES;
+    private static final int FOOTER_BYTES = 2 * Integer.BYTES + Long.BYTES;
+    private static final int WINDOW_BYTES = 256 * 1024 * 1024;
+
+    private UserSnapshots() {
+    }
+
+    /**
+     * Writes a snapshot of the users passed by the given iteration
+     * @return number of users in the snapshot
+     */
+    static long write(Path directory, long generation, Consumer<Consumer<User>> forEachUser) throws IOException {
+        final Path temporaryFile = directory.resolve(SNAPSHOT_PREFIX + generation + SNAPSHOT_SUFFIX + ".tmp");
+        final CRC32 crc = new CRC32();
+        long count = 0;
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+            output.writeInt(MAGIC);
+            output.writeLong(generation);
+
+            final DataOutputStream records = new DataOutputStream(new CheckedOutputStream(output, crc));
+            final long[] written = {0};
+            forEachUser.accept(user -> {
+                final byte[] record = UserCodec.encode(user);
+                try {
+                    records.writeInt(record.length);
+                    records.write(record);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                written[0]++;
+            });
+            records.flush();
+            count = written[0];
+
+            output.writeInt(END_MARKER);
+            output.writeLong(count);
+            output.writeInt((int) crc.getValue());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporaryFile, snapshot(directory, generation), StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * Checks the snapshot and then passes its users to the consumer
+     * @return number of users in the snapshot
+     * @throws IOException if the snapshot can not be read or is corrupted, then no user is passed to the consumer
+     */
+    static long read(Path file, Consumer<User> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < HEADER_BYTES + FOOTER_BYTES) {
+                throw new IOException("snapshot %s is truncated".formatted(file));
+            }
+            final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            final ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, size - FOOTER_BYTES, FOOTER_BYTES);
+            if (header.getInt() != MAGIC || footer.getInt() != END_MARKER) {
+                throw new IOException("snapshot %s is corrupted".formatted(file));
+            }
+            final long count = footer.getLong();
+            final int expectedCrc = footer.getInt();
+
+            final long recordsEnd = size - FOOTER_BYTES;
+            final CRC32 crc = new CRC32();
+            for (long position = HEADER_BYTES; position < recordsEnd; position += WINDOW_BYTES) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_BYTES, recordsEnd - position)));
+            }
+            if ((int) crc.getValue() != expectedCrc) {
+                throw new IOException("snapshot %s does not match its checksum".formatted(file));
+            }
+
+            long position = HEADER_BYTES;
+            MappedByteBuffer window = null;
+            long windowStart = 0;
+            for (long i = 0; i < count; i++) {
+                if (window == null || position + Integer.BYTES > windowStart + window.limit()
+                        || position + Integer.BYTES + window.getInt((int) (position - windowStart)) > windowStart + window.limit()) {
+                    windowStart = position;
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW_BYTES, recordsEnd - windowStart));
+                }
+
+                final int offset = (int) (position - windowStart);
+                final int length = window.getInt(offset);
+                consumer.accept(UserCodec.decode(window.slice(offset + Integer.BYTES, length)));
+                position += Integer.BYTES + length;
+            }
+
+            return count;
+        }
+    }
+
+    static List<Long> generations(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    static Path snapshot(Path directory, long generation) {
+        return directory.resolve(SNAPSHOT_PREFIX + generation + SNAPSHOT_SUFFIX);
+    }
+}
@@ -0,0 +1,210 @@
+package com.sap.refactoring.persistence.inmemory;
+
+import com.sap.refactoring.models.User;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of changes of {@link InMemoryUserDao} split into numbered segment files {@code wal-<generation>.log}.
+ * A record is {@code [int payload length][int crc32 of payload][payload]}, the payload is a put of the whole user or a delete by email.
+ * Records are idempotent, so a change may be replayed on top of a snapshot which already contains it.
+ * A record written only partially, e.g. because the process was killed during the append, fails the length or crc check
+ * and is cut off with everything after it when the segment is replayed.
+ * {@link #rotate()} starts a new segment once all modifications in progress are completed.
+ */
+@Slf4j
+final class WriteAheadLog implements UserChangeLog, Closeable {
+    static final String SEGMENT_PREFIX = "wal-";
+    static final String SEGMENT_SUFFIX = ".log";
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    private final Path directory;
+    private final boolean sync;
+    private final ReadWriteLock rotationLock = new ReentrantReadWriteLock();
+    private final Lock appendLock = new ReentrantLock();
+    private FileChannel channel;
+    private long generation;
+
+    /**
+     * @param directory directory of the segments
+     * @param generation generation of the first segment, the segment must not exist yet
+     * @param sync whether every record is forced to the storage device before the modification is applied
+     */
+    WriteAheadLog(Path directory, long generation, boolean sync) throws IOException {
+        this.directory = directory;
+        this.sync = sync;
+        this.generation = generation;
+        this.channel = open(segment(directory, generation));
+    }
+
+    @Override
+    public <T> T modify(Supplier<T> modification) {
+        final Lock lock = rotationLock.readLock();
+        lock.lock();
+        try {
+            return modification.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void logPut(User user) {
+        append(PUT, UserCodec.encode(user));
+    }
+
+    @Override
+    public void logDelete(User user) {
+        append(DELETE, UserCodec.encodeString(user.getEmail()));
+    }
+
+    /**
+     * Waits for the modifications in progress and continues in the next segment
+     * @return generation of the new segment, all changes logged before are in segments of lower generations
+     */
+    long rotate() throws IOException {
+        final Lock lock = rotationLock.writeLock();
+        lock.lock();
+        try {
+            channel.force(false);
+            channel.close();
+            channel = open(segment(directory, generation + 1));
+            return ++generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        final Lock lock = rotationLock.writeLock();
+        lock.lock();
+        try {
+            channel.force(false);
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Passes the changes logged in the segment to the given consumers in the order they were logged.
+     * The segment is truncated after the last complete record
+     * @return number of replayed changes
+     */
+    static long replay(Path segment, Consumer<User> putConsumer, Consumer<String> deleteConsumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final long size = channel.size();
+            final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+            final CRC32 crc = new CRC32();
+            long position = 0;
+            long count = 0;
+            while (true) {
+                header.clear();
+                if (size - position < RECORD_HEADER_BYTES) {
+                    break;
+                }
+                readFully(channel, header, position);
+
+                final int length = header.getInt(0);
+                if (length <= 0 || length > size - position - RECORD_HEADER_BYTES) {
+                    break;
+                }
+                final ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(channel, payload, position + RECORD_HEADER_BYTES);
+                crc.reset();
+                crc.update(payload.array());
+                if ((int) crc.getValue() != header.getInt(Integer.BYTES)) {
+                    break;
+                }
+
+                payload.flip();
+                if (payload.get() == PUT) {
+                    putConsumer.accept(UserCodec.decode(payload));
+                } else {
+                    deleteConsumer.accept(UserCodec.getString(payload));
+                }
+                position += RECORD_HEADER_BYTES + length;
+                count++;
+            }
+
+            if (position < size) {
+                log.warn("truncating incomplete write-ahead log record at {} of {}", position, segment);
+                channel.truncate(position);
+                channel.force(true);
+            }
+            return count;
+        }
+    }
+
+    static List<Long> generations(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    static Path segment(Path directory, long generation) {
+        return directory.resolve(SEGMENT_PREFIX + generation + SEGMENT_SUFFIX);
+    }
+
+    private void append(byte type, byte[] data) {
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + 1 + data.length);
+        record.putInt(1 + data.length);
+        record.putInt(0);
+        record.put(type);
+        record.put(data);
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_BYTES, 1 + data.length);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        record.flip();
+
+        appendLock.lock();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not append to the write-ahead log", e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+    }
+
+    private static FileChannel open(Path segment) throws IOException {
+        return FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,128 @@
+package com.sap.refactoring.persistence.invalidation;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * {@link UserChangeTransport} listening to the notifications sent by the triggers on the {@code USERS} table,
+ * see {@code V2026.10.18.2__notify_user_changes.sql}. Every notification holds the comma separated ids
+ * of users changed by one statement. Postgres delivers them when the transaction commits.
+ * The transport holds a dedicated connection opened outside of the connection pool, as it is never given back.
+ * When the connection is lost it reconnects and publishes that all users might have changed
+ */
+@Slf4j
+public class PostgresUserChangeTransport implements UserChangeTransport {
+    static final String CHANNEL = "user_changes";
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+    private static final Duration RECONNECT_DELAY = Duration.ofSeconds(5);
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    public PostgresUserChangeTransport(String url, String username, String password) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * Starts listening on the calling thread, so that the changes committed after the start are not missed,
+     * and polls the notifications on a daemon thread
+     */
+    @Override
+    public void start(UserInvalidationBus bus) {
+        final Connection connection;
+        try {
+            connection = listen();
+        } catch (SQLException e) {
+            throw new IllegalStateException("could not listen to changes of users", e);
+        }
+        running = true;
+        listenerThread = new Thread(() -> poll(connection, bus), "user-invalidation-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    private void poll(Connection firstConnection, UserInvalidationBus bus) {
+        Connection connection = firstConnection;
+        while (running) {
+            try (Connection listeningConnection = connection) {
+                final PGConnection pgConnection = listeningConnection.unwrap(PGConnection.class);
+                while (running) {
+                    final PGNotification[] notifications = pgConnection.getNotifications((int) POLL_TIMEOUT.toMillis());
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            publish(bus, notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (running) {
+                    log.warn("lost the connection listening to changes of users, reconnecting in {}", RECONNECT_DELAY, e);
+                }
+            }
+            connection = reconnect(bus);
+            if (connection == null) {
+                return;
+            }
+        }
+    }
+
+    private Connection reconnect(UserInvalidationBus bus) {
+        while (running) {
+            try {
+                Thread.sleep(RECONNECT_DELAY.toMillis());
+                final Connection connection = listen();
+                // changes committed while nobody listened are lost
+                bus.publishAll();
+                return connection;
+            } catch (SQLException e) {
+                log.warn("could not listen to changes of users, retrying in {}", RECONNECT_DELAY, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private Connection listen() throws SQLException {
+        final Connection connection = DriverManager.getConnection(url, username, password);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("LISTEN " + CHANNEL);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    static void publish(UserInvalidationBus bus, String payload) {
+        for (String id : payload.split(",")) {
+            try {
+                bus.publish(UUID.fromString(id));
+            } catch (IllegalArgumentException e) {
+                log.warn("ignored change of user with invalid id {}", id);
+            }
+        }
+    }
+}
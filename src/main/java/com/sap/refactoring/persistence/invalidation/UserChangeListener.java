@@ -0,0 +1,20 @@
+package com.sap.refactoring.persistence.invalidation;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Copy of users held by the application, e.g. a cache, which is told about changes of the users in the database
+ * made by any instance of the application
+ */
+public interface UserChangeListener {
+    /**
+     * Called with the ids of users which were created, modified or deleted since the previous call
+     */
+    void usersChanged(Set<UUID> ids);
+
+    /**
+     * Called when changes might have been missed, e.g. after the connection listening to them was lost
+     */
+    void allUsersChanged();
+}
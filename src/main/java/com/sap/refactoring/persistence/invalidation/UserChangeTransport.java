@@ -0,0 +1,13 @@
+package com.sap.refactoring.persistence.invalidation;
+
+/**
+ * Transport delivering the ids of changed users to {@link UserInvalidationBus}
+ */
+public interface UserChangeTransport {
+    /**
+     * Starts publishing the changes to the bus, the changes committed after the method returns are not missed
+     */
+    void start(UserInvalidationBus bus);
+
+    void stop();
+}
@@ -0,0 +1,117 @@
+package com.sap.refactoring.persistence.invalidation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bus telling the {@link UserChangeListener}s of this instance about users changed in the database by any instance.
+ * Ids of changed users come from a {@link UserChangeTransport} one by one, they are collected in a set
+ * and delivered every {@code coalesceInterval}, so a burst of changes, or repeated changes of one user, cost the listeners one batch
+ */
+@Slf4j
+public class UserInvalidationBus {
+    static final String EVENTS_COUNTER_NAME = "users.invalidation.events";
+    static final String BATCH_SUMMARY_NAME = "users.invalidation.batch";
+
+    private final UserChangeTransport transport;
+    private final Duration coalesceInterval;
+    private final List<UserChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final Set<UUID> changedIds = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean allChanged = new AtomicBoolean();
+    private final Counter events;
+    private final DistributionSummary batches;
+    private final ScheduledExecutorService deliveryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "user-invalidation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public UserInvalidationBus(UserChangeTransport transport, Duration coalesceInterval, MeterRegistry meterRegistry) {
+        this.transport = transport;
+        this.coalesceInterval = coalesceInterval;
+        this.events = Counter.builder(EVENTS_COUNTER_NAME)
+                .description("Changes of users received from the database")
+                .register(meterRegistry);
+        this.batches = DistributionSummary.builder(BATCH_SUMMARY_NAME)
+                .description("Users changed in one batch delivered to the listeners")
+                .register(meterRegistry);
+    }
+
+    public void start() {
+        transport.start(this);
+        deliveryExecutor.scheduleWithFixedDelay(this::deliverSafely,
+                coalesceInterval.toMillis(), coalesceInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        transport.stop();
+        deliveryExecutor.shutdownNow();
+    }
+
+    public void subscribe(UserChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Called by the transport when the user has been changed
+     */
+    public void publish(UUID id) {
+        events.increment();
+        changedIds.add(id);
+    }
+
+    /**
+     * Called by the transport when changes might have been missed
+     */
+    public void publishAll() {
+        allChanged.set(true);
+    }
+
+    /**
+     * Delivers the changes collected since the previous delivery to the listeners now
+     */
+    public synchronized void deliver() {
+        if (allChanged.getAndSet(false)) {
+            changedIds.clear();
+            listeners.forEach(UserChangeListener::allUsersChanged);
+            return;
+        }
+
+        // ids published again while the batch is taken stay for the next one
+        final Set<UUID> batch = new HashSet<>();
+        for (Iterator<UUID> iterator = changedIds.iterator(); iterator.hasNext(); ) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        batches.record(batch.size());
+        final Set<UUID> changedUsers = Set.copyOf(batch);
+        listeners.forEach(listener -> listener.usersChanged(changedUsers));
+    }
+
+    private void deliverSafely() {
+        try {
+            deliver();
+        } catch (RuntimeException e) {
+            log.error("could not invalidate changed users", e);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.sap.refactoring.persistence.invalidation;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration of {@link UserInvalidationBus} listening to changes of users in the shared database,
+ * enabled by {@code users.invalidation.enabled} when several instances of the application keep users in memory
+ */
+@Configuration
+@ConditionalOnProperty("users.invalidation.enabled")
+public class UserInvalidationConfiguration {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public UserInvalidationBus userInvalidationBus(DataSourceProperties dataSourceProperties,
+                                                   @Value("${users.invalidation.coalesce-interval:50ms}") Duration coalesceInterval,
+                                                   MeterRegistry meterRegistry) {
+        final UserChangeTransport transport = new PostgresUserChangeTransport(dataSourceProperties.determineUrl(),
+                dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword());
+        return new UserInvalidationBus(transport, coalesceInterval, meterRegistry);
+    }
+}
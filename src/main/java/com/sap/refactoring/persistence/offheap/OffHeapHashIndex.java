@@ -0,0 +1,152 @@
+package com.sap.refactoring.persistence.offheap;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Open addressing hash index from a key of two longs to a long value, kept in off-heap memory.
+ * Every slot holds the two longs of the key and the value. Keys may repeat, so hashes of non-unique
+ * or colliding keys (e.g. names) are resolved by the caller checking the values.
+ * Linear probing is used, removed entries are marked by tombstones which are dropped when the table is rehashed.
+ * Values must not be negative. The index is not thread safe.
+ */
+final class OffHeapHashIndex {
+    static final long NO_VALUE = -1;
+    private static final int SLOT_LONGS = 3;
+    private static final int MAX_CAPACITY = Integer.highestOneBit(Integer.MAX_VALUE / (SLOT_LONGS * Long.BYTES));
+    private static final long EMPTY = 0;
+    private static final long TOMBSTONE = -1;
+
+    private LongBuffer slots;
+    private int capacity;
+    private int size;
+    private int tombstones;
+
+    OffHeapHashIndex(int initialCapacity) {
+        allocate(Integer.highestOneBit(Math.max(initialCapacity, 16) - 1) << 1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(long key1, long key2, long value) {
+        if ((size + tombstones + 1) * 2L > capacity) {
+            rehash();
+        }
+
+        int slot = slotOf(key1, key2);
+        long stored;
+        while ((stored = storedValue(slot)) != EMPTY && stored != TOMBSTONE) {
+            slot = nextSlot(slot);
+        }
+        if (stored == TOMBSTONE) {
+            tombstones--;
+        }
+
+        final int position = slot * SLOT_LONGS;
+        slots.put(position, key1);
+        slots.put(position + 1, key2);
+        slots.put(position + 2, value + 1);
+        size++;
+    }
+
+    boolean remove(long key1, long key2, long value) {
+        for (int slot = slotOf(key1, key2); storedValue(slot) != EMPTY; slot = nextSlot(slot)) {
+            if (storedValue(slot) == value + 1 && matchesKey(slot, key1, key2)) {
+                slots.put(slot * SLOT_LONGS + 2, TOMBSTONE);
+                size--;
+                tombstones++;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the first value stored under the key which is accepted by the matcher or {@link #NO_VALUE}
+     */
+    long find(long key1, long key2, LongPredicate matcher) {
+        for (int slot = slotOf(key1, key2); storedValue(slot) != EMPTY; slot = nextSlot(slot)) {
+            final long stored = storedValue(slot);
+            if (stored != TOMBSTONE && matchesKey(slot, key1, key2) && matcher.test(stored - 1)) {
+                return stored - 1;
+            }
+        }
+
+        return NO_VALUE;
+    }
+
+    void forEach(long key1, long key2, LongConsumer consumer) {
+        for (int slot = slotOf(key1, key2); storedValue(slot) != EMPTY; slot = nextSlot(slot)) {
+            final long stored = storedValue(slot);
+            if (stored != TOMBSTONE && matchesKey(slot, key1, key2)) {
+                consumer.accept(stored - 1);
+            }
+        }
+    }
+
+    void forEach(EntryConsumer consumer) {
+        for (int slot = 0; slot < capacity; slot++) {
+            final long stored = storedValue(slot);
+            if (stored != EMPTY && stored != TOMBSTONE) {
+                consumer.accept(slots.get(slot * SLOT_LONGS), slots.get(slot * SLOT_LONGS + 1), stored - 1);
+            }
+        }
+    }
+
+    /**
+     * Rehashes the entries into a table twice as large if it is at least a quarter full
+     * and into a table of the same size otherwise, which only drops the tombstones
+     */
+    private void rehash() {
+        final LongBuffer oldSlots = slots;
+        final int oldCapacity = capacity;
+        final int newCapacity = (size + 1) * 4L > capacity ? capacity * 2 : capacity;
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("off-heap index can not hold more than %d entries".formatted(MAX_CAPACITY / 2));
+        }
+
+        allocate(newCapacity);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            final long stored = oldSlots.get(slot * SLOT_LONGS + 2);
+            if (stored != EMPTY && stored != TOMBSTONE) {
+                add(oldSlots.get(slot * SLOT_LONGS), oldSlots.get(slot * SLOT_LONGS + 1), stored - 1);
+            }
+        }
+    }
+
+    private void allocate(int newCapacity) {
+        slots = ByteBuffer.allocateDirect(newCapacity * SLOT_LONGS * Long.BYTES).asLongBuffer();
+        capacity = newCapacity;
+        size = 0;
+        tombstones = 0;
+    }
+
+    private long storedValue(int slot) {
+        return slots.get(slot * SLOT_LONGS + 2);
+    }
+
+    private boolean matchesKey(int slot, long key1, long key2) {
+        return slots.get(slot * SLOT_LONGS) == key1 && slots.get(slot * SLOT_LONGS + 1) == key2;
+    }
+
+    private int slotOf(long key1, long key2) {
+        long hash = key1 * 0x9E3779B97F4A7C15L ^ key2;
+        hash = (hash ^ hash >>> 33) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ hash >>> 33) * 0xC4CEB9FE1A85EC53L;
+        return (int) (hash ^ hash >>> 33) & capacity - 1;
+    }
+
+    private int nextSlot(int slot) {
+        return slot + 1 & capacity - 1;
+    }
+
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(long key1, long key2, long value);
+    }
+}
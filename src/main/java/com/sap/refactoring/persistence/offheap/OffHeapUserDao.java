@@ -0,0 +1,416 @@
+package com.sap.refactoring.persistence.offheap;
+
+import com.sap.refactoring.exceptions.ConstraintViolationException;
+import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.exceptions.VersionConflictException;
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.models.UserSaveResult;
+import com.sap.refactoring.models.UserUniqueKey;
+import com.sap.refactoring.persistence.UserDao;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Implementation of {@link UserDao} keeping users in off-heap memory, selected by the {@code offheap} profile.
+ * Users are encoded in {@link UserRecords} with roles interned by {@link RoleDictionary},
+ * and indexed by id, by email, by name and by role in {@link OffHeapHashIndex}es, so the heap footprint does not grow with the number of users.
+ * Emails and names are indexed by their hashes and checked against the records, roles by their ids.
+ * Modifications are serialized by a write lock, reads share a read lock. Versions of users are checked under the write lock.
+ * None of the indexes is ordered, so pages of users are selected by a scan of the id index, or of the role's entries in the role index,
+ * and the cost of a page is O(n log limit) where n is the number of scanned users, whichever page it is.
+ * Paging through all users therefore costs O(n^2 / limit), use {@link #forEachUser(Consumer, boolean)} to read all of them.
+ * Search by the prefix of names scans the names of all users the same way, as the hashed name index is not sorted.
+ */
+@Repository
+@Primary
+@Profile("offheap")
+@Slf4j
+public class OffHeapUserDao implements UserDao {
+    private static final int INITIAL_INDEX_CAPACITY = 1024;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final RoleDictionary roleDictionary = new RoleDictionary();
+    private final int slabSize;
+    private UserRecords records;
+    private Indexes indexes = new Indexes(INITIAL_INDEX_CAPACITY);
+
+    public OffHeapUserDao(@Value("${users.offheap.slab-size:67108864}") int slabSize) {
+        this.slabSize = slabSize;
+        this.records = new UserRecords(slabSize);
+    }
+
+    @Override
+    public User saveUser(User newUser) {
+        newUser.setId(UUID.randomUUID());
+        newUser.setVersion(0L);
+
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (findByEmail(newUser.getEmail()) != OffHeapHashIndex.NO_VALUE) {
+                final UserUniqueKey key = new UserUniqueKey(newUser);
+                log.error("user with such unique key already exists: {}", key);
+                throw new ConstraintViolationException("user with such unique key already exists: %s".formatted(key));
+            }
+            add(newUser);
+        } finally {
+            writeLock.unlock();
+        }
+
+        return newUser;
+    }
+
+    @Override
+    public List<UserSaveResult> saveUsers(List<User> newUsers) {
+        final List<UserSaveResult> results = new ArrayList<>(newUsers.size());
+        for (User newUser : newUsers) {
+            try {
+                results.add(UserSaveResult.created(saveUser(newUser)));
+            } catch (ConstraintViolationException e) {
+                results.add(UserSaveResult.duplicate(newUser));
+            }
+        }
+
+        return results;
+    }
+
+    @Override
+    public Collection<User> getAllUsers(boolean withRoles) {
+        final List<User> users = new ArrayList<>();
+        forEachUser(users::add, withRoles);
+        return users;
+    }
+
+    @Override
+    public List<User> getUsersPage(UUID afterId, int limit, boolean withRoles) {
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            final PageSelection page = new PageSelection(afterId, limit);
+            indexes.ids.forEach(page::offer);
+            return page.read();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<User> findUsersByRole(String role, UUID afterId, int limit, boolean withRoles) {
+        final int roleId = roleDictionary.find(role);
+        if (roleId < 0) {
+            return List.of();
+        }
+
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            final PageSelection page = new PageSelection(afterId, limit);
+            indexes.roles.forEach(roleId, 0, address -> {
+                final UUID id = records.readId(address);
+                page.offer(id.getMostSignificantBits(), id.getLeastSignificantBits(), address);
+            });
+            return page.read();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Passes all users to the consumer without holding the lock while the consumer runs:
+     * addresses of the users are collected under the lock and then read from a snapshot of the records,
+     * which are never overwritten. The iteration is weakly consistent like the one of the in-memory dao
+     * @param consumer consumer of users
+     * @param withRoles whether the roles of the users are needed, they are always read with the user
+     */
+    @Override
+    public void forEachUser(Consumer<User> consumer, boolean withRoles) {
+        final long[] addresses;
+        final UserRecords snapshot;
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            addresses = new long[indexes.ids.size()];
+            final int[] count = {0};
+            indexes.ids.forEach((mostSigBits, leastSigBits, address) -> addresses[count[0]++] = address);
+            snapshot = records.snapshot();
+        } finally {
+            readLock.unlock();
+        }
+
+        for (long address : addresses) {
+            consumer.accept(snapshot.read(address, roleDictionary));
+        }
+    }
+
+    @Override
+    public User getUserById(String id, boolean withRoles) {
+        final UUID uuid = parseId(id);
+
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            final long address = indexes.ids.find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), value -> true);
+            if (address == OffHeapHashIndex.NO_VALUE) {
+                throw new NotFoundException();
+            }
+
+            return records.read(address, roleDictionary);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void deleteUser(User userToDelete) {
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            final long address = findByEmail(userToDelete.getEmail());
+            if (address == OffHeapHashIndex.NO_VALUE
+                    || userToDelete.getId() != null && !userToDelete.getId().equals(records.readId(address))) {
+                log.warn("the user with id {} does not exist", userToDelete.getId());
+                return;
+            }
+            checkVersion(address, userToDelete.getVersion());
+            remove(address);
+            compactIfNeeded();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteUserById(UUID id, Long version) {
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            final long address = indexes.ids.find(id.getMostSignificantBits(), id.getLeastSignificantBits(), value -> true);
+            if (address == OffHeapHashIndex.NO_VALUE) {
+                return false;
+            }
+            checkVersion(address, version);
+            remove(address);
+            compactIfNeeded();
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the user having the same unique key, the new state is appended and the old record is freed
+     * @param userToUpdate the user to be updated
+     * @return the updated user
+     */
+    @Override
+    public User updateUser(User userToUpdate) {
+        final User copyToPersist = new User(userToUpdate);
+
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            final long oldAddress = findByEmail(copyToPersist.getEmail());
+            if (oldAddress == OffHeapHashIndex.NO_VALUE || !records.readId(oldAddress).equals(copyToPersist.getId())) {
+                throw new NotFoundException();
+            }
+            checkVersion(oldAddress, userToUpdate.getVersion());
+            copyToPersist.setVersion(records.readVersion(oldAddress) + 1);
+            remove(oldAddress);
+            add(copyToPersist);
+            compactIfNeeded();
+        } finally {
+            writeLock.unlock();
+        }
+
+        userToUpdate.setVersion(copyToPersist.getVersion());
+        return userToUpdate;
+    }
+
+    @Override
+    public Collection<User> findUsersByName(String name, boolean withRoles) {
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            final List<User> users = new ArrayList<>();
+            indexes.names.forEach(hash(name), 0, address -> {
+                if (records.readName(address).equals(name)) {
+                    users.add(records.read(address, roleDictionary));
+                }
+            });
+            return users;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<User> findUsersByNamePrefix(String prefix, int limit, boolean withRoles) {
+        final String normalizedPrefix = UserDao.normalizeName(prefix);
+        final Comparator<NameEntry> order = Comparator.comparing(NameEntry::name)
+                .thenComparing(NameEntry::id, UserDao.ID_ORDER);
+
+        final Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            final PriorityQueue<NameEntry> entries = new PriorityQueue<>(limit + 1, order.reversed());
+            indexes.ids.forEach((mostSigBits, leastSigBits, address) -> {
+                final String name = UserDao.normalizeName(records.readName(address));
+                if (!name.startsWith(normalizedPrefix)) {
+                    return;
+                }
+                entries.add(new NameEntry(name, new UUID(mostSigBits, leastSigBits), address));
+                if (entries.size() > limit) {
+                    entries.poll();
+                }
+            });
+            return entries.stream()
+                    .sorted(order)
+                    .map(entry -> records.read(entry.address(), roleDictionary))
+                    .toList();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private long findByEmail(String email) {
+        return indexes.emails.find(hash(email), 0, address -> records.readEmail(address).equals(email));
+    }
+
+    private void checkVersion(long address, Long version) {
+        final long storedVersion = records.readVersion(address);
+        if (version != null && version != storedVersion) {
+            throw new VersionConflictException("user %s has version %d instead of %d"
+                    .formatted(records.readId(address), storedVersion, version));
+        }
+    }
+
+    private void add(User user) {
+        indexes.add(records, records.append(user, roleDictionary));
+    }
+
+    private void remove(long address) {
+        indexes.remove(records, address);
+        records.free(address);
+    }
+
+    /**
+     * Copies the live records to a new store and rebuilds the indexes once most of the store is freed records
+     */
+    private void compactIfNeeded() {
+        if (!records.needsCompaction()) {
+            return;
+        }
+
+        final UserRecords compactedRecords = new UserRecords(slabSize);
+        final Indexes compactedIndexes = new Indexes(indexes.ids.size() * 2);
+        indexes.ids.forEach((mostSigBits, leastSigBits, address) ->
+                compactedIndexes.add(compactedRecords, records.copyTo(compactedRecords, address)));
+
+        records = compactedRecords;
+        indexes = compactedIndexes;
+    }
+
+    private static long hash(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    private static int compareIds(long mostSigBits, long leastSigBits, UUID id) {
+        final int result = Long.compareUnsigned(mostSigBits, id.getMostSignificantBits());
+        return result != 0 ? result : Long.compareUnsigned(leastSigBits, id.getLeastSignificantBits());
+    }
+
+    private static UUID parseId(String id) {
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            throw new NotFoundException();
+        }
+    }
+
+    private record PageEntry(UUID id, long address) {
+    }
+
+    private record NameEntry(String name, UUID id, long address) {
+    }
+
+    /**
+     * Keeps the {@code limit} smallest ids greater than {@code afterId} among the offered ones
+     */
+    private class PageSelection {
+        private final UUID afterId;
+        private final int limit;
+        private final PriorityQueue<PageEntry> entries;
+
+        PageSelection(UUID afterId, int limit) {
+            this.afterId = afterId;
+            this.limit = limit;
+            this.entries = new PriorityQueue<>(limit + 1, Comparator.comparing(PageEntry::id, UserDao.ID_ORDER).reversed());
+        }
+
+        void offer(long mostSigBits, long leastSigBits, long address) {
+            if (afterId != null && compareIds(mostSigBits, leastSigBits, afterId) <= 0) {
+                return;
+            }
+            if (entries.size() == limit && compareIds(mostSigBits, leastSigBits, entries.peek().id()) >= 0) {
+                return;
+            }
+
+            entries.add(new PageEntry(new UUID(mostSigBits, leastSigBits), address));
+            if (entries.size() > limit) {
+                entries.poll();
+            }
+        }
+
+        List<User> read() {
+            return entries.stream()
+                    .sorted(Comparator.comparing(PageEntry::id, UserDao.ID_ORDER))
+                    .map(entry -> records.read(entry.address(), roleDictionary))
+                    .toList();
+        }
+    }
+
+    /**
+     * Indexes of the records, all of them are changed together
+     */
+    private static class Indexes {
+        private final OffHeapHashIndex ids;
+        private final OffHeapHashIndex emails;
+        private final OffHeapHashIndex names;
+        private final OffHeapHashIndex roles;
+
+        Indexes(int initialCapacity) {
+            ids = new OffHeapHashIndex(initialCapacity);
+            emails = new OffHeapHashIndex(initialCapacity);
+            names = new OffHeapHashIndex(initialCapacity);
+            roles = new OffHeapHashIndex(initialCapacity);
+        }
+
+        void add(UserRecords records, long address) {
+            final UUID id = records.readId(address);
+            ids.add(id.getMostSignificantBits(), id.getLeastSignificantBits(), address);
+            emails.add(hash(records.readEmail(address)), 0, address);
+            names.add(hash(records.readName(address)), 0, address);
+            Arrays.stream(records.readRoleIds(address)).distinct().forEach(roleId -> roles.add(roleId, 0, address));
+        }
+
+        void remove(UserRecords records, long address) {
+            final UUID id = records.readId(address);
+            ids.remove(id.getMostSignificantBits(), id.getLeastSignificantBits(), address);
+            emails.remove(hash(records.readEmail(address)), 0, address);
+            names.remove(hash(records.readName(address)), 0, address);
+            Arrays.stream(records.readRoleIds(address)).distinct().forEach(roleId -> roles.remove(roleId, 0, address));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.sap.refactoring.persistence.offheap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Interns role names to small int ids, so that a stored user refers to its roles by ids only.
+ * Roles are never removed, ids are assigned under the writer's lock and can be resolved by readers without it.
+ */
+final class RoleDictionary {
+    private final Map<String, Integer> idsByName = new ConcurrentHashMap<>();
+    private final List<String> names = new CopyOnWriteArrayList<>();
+
+    int idOf(String name) {
+        final Integer id = idsByName.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        names.add(name);
+        idsByName.put(name, names.size() - 1);
+        return names.size() - 1;
+    }
+
+    /**
+     * @return id of the role or -1 if the role is not known
+     */
+    int find(String name) {
+        return idsByName.getOrDefault(name, -1);
+    }
+
+    String nameOf(int id) {
+        return names.get(id);
+    }
+}
@@ -0,0 +1,177 @@
+package com.sap.refactoring.persistence.offheap;
+
+import com.sap.refactoring.models.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Append-only store of encoded users in direct {@link ByteBuffer} slabs.
+ * A record is {@code [int length][long id msb][long id lsb][long version][int name length][name utf-8][int email length][email utf-8][int roles count][int role id]...}
+ * and its address is the index of the slab in the high and the offset in the low 32 bits.
+ * Records are never modified, a changed user is appended again and the old record is freed,
+ * the freed space is reclaimed by copying the live records to a new store.
+ * Appending is not thread safe. A {@link #snapshot()} can read the records written so far without any lock.
+ */
+final class UserRecords {
+    private static final int VERSION_OFFSET = Integer.BYTES + 2 * Long.BYTES;
+    private static final int HEADER_BYTES = VERSION_OFFSET + Long.BYTES;
+    private final int slabSize;
+    private ByteBuffer[] slabs;
+    private int writeOffset;
+    private long liveBytes;
+    private long freedBytes;
+
+    UserRecords(int slabSize) {
+        this(slabSize, new ByteBuffer[0]);
+    }
+
+    private UserRecords(int slabSize, ByteBuffer[] slabs) {
+        this.slabSize = slabSize;
+        this.slabs = slabs;
+        this.writeOffset = slabSize;
+    }
+
+    long append(User user, RoleDictionary roleDictionary) {
+        final byte[] name = user.getName().getBytes(StandardCharsets.UTF_8);
+        final byte[] email = user.getEmail().getBytes(StandardCharsets.UTF_8);
+        final List<String> roles = user.getRoles();
+        final int length = HEADER_BYTES + 3 * Integer.BYTES + name.length + email.length + roles.size() * Integer.BYTES;
+
+        final long address = allocate(length);
+        final ByteBuffer slab = slabs[slabIndex(address)];
+        int position = offset(address);
+        slab.putInt(position, length);
+        slab.putLong(position + Integer.BYTES, user.getId().getMostSignificantBits());
+        slab.putLong(position + Integer.BYTES + Long.BYTES, user.getId().getLeastSignificantBits());
+        slab.putLong(position + VERSION_OFFSET, user.getVersion());
+        position = putBytes(slab, position + HEADER_BYTES, name);
+        position = putBytes(slab, position, email);
+        slab.putInt(position, roles.size());
+        for (String role : roles) {
+            position += Integer.BYTES;
+            slab.putInt(position, roleDictionary.idOf(role));
+        }
+
+        return address;
+    }
+
+    /**
+     * Copies the record as it is to the target store
+     * @return address of the copy in the target store
+     */
+    long copyTo(UserRecords target, long address) {
+        final ByteBuffer slab = slabs[slabIndex(address)];
+        final byte[] record = new byte[slab.getInt(offset(address))];
+        slab.get(offset(address), record);
+
+        final long targetAddress = target.allocate(record.length);
+        target.slabs[slabIndex(targetAddress)].put(offset(targetAddress), record);
+        return targetAddress;
+    }
+
+    void free(long address) {
+        final int length = slabs[slabIndex(address)].getInt(offset(address));
+        liveBytes -= length;
+        freedBytes += length;
+    }
+
+    /**
+     * @return true if more space is taken by freed records than by live ones and it is at least a slab
+     */
+    boolean needsCompaction() {
+        return freedBytes > liveBytes && freedBytes >= slabSize;
+    }
+
+    UserRecords snapshot() {
+        return new UserRecords(slabSize, slabs);
+    }
+
+    User read(long address, RoleDictionary roleDictionary) {
+        final ByteBuffer slab = slabs[slabIndex(address)];
+        final int nameOffset = offset(address) + HEADER_BYTES;
+        final int emailOffset = nameOffset + Integer.BYTES + slab.getInt(nameOffset);
+        final int rolesOffset = emailOffset + Integer.BYTES + slab.getInt(emailOffset);
+
+        final int rolesCount = slab.getInt(rolesOffset);
+        final List<String> roles = new ArrayList<>(rolesCount);
+        for (int i = 1; i <= rolesCount; i++) {
+            roles.add(roleDictionary.nameOf(slab.getInt(rolesOffset + i * Integer.BYTES)));
+        }
+
+        return new User(readId(address), getString(slab, nameOffset), getString(slab, emailOffset), roles, readVersion(address));
+    }
+
+    UUID readId(long address) {
+        final ByteBuffer slab = slabs[slabIndex(address)];
+        return new UUID(slab.getLong(offset(address) + Integer.BYTES), slab.getLong(offset(address) + Integer.BYTES + Long.BYTES));
+    }
+
+    long readVersion(long address) {
+        return slabs[slabIndex(address)].getLong(offset(address) + VERSION_OFFSET);
+    }
+
+    int[] readRoleIds(long address) {
+        final ByteBuffer slab = slabs[slabIndex(address)];
+        final int nameOffset = offset(address) + HEADER_BYTES;
+        final int emailOffset = nameOffset + Integer.BYTES + slab.getInt(nameOffset);
+        final int rolesOffset = emailOffset + Integer.BYTES + slab.getInt(emailOffset);
+
+        final int[] roleIds = new int[slab.getInt(rolesOffset)];
+        for (int i = 0; i < roleIds.length; i++) {
+            roleIds[i] = slab.getInt(rolesOffset + (i + 1) * Integer.BYTES);
+        }
+        return roleIds;
+    }
+
+    String readName(long address) {
+        return getString(slabs[slabIndex(address)], offset(address) + HEADER_BYTES);
+    }
+
+    String readEmail(long address) {
+        final ByteBuffer slab = slabs[slabIndex(address)];
+        final int nameOffset = offset(address) + HEADER_BYTES;
+        return getString(slab, nameOffset + Integer.BYTES + slab.getInt(nameOffset));
+    }
+
+    private long allocate(int length) {
+        if (length > slabSize) {
+            throw new IllegalArgumentException("user of %d bytes does not fit into a slab of %d bytes".formatted(length, slabSize));
+        }
+
+        if (writeOffset + length > slabSize) {
+            slabs = Arrays.copyOf(slabs, slabs.length + 1);
+            slabs[slabs.length - 1] = ByteBuffer.allocateDirect(slabSize);
+            writeOffset = 0;
+        }
+
+        final long address = (long) (slabs.length - 1) << 32 | writeOffset;
+        writeOffset += length;
+        liveBytes += length;
+        return address;
+    }
+
+    private static int putBytes(ByteBuffer slab, int position, byte[] bytes) {
+        slab.putInt(position, bytes.length);
+        slab.put(position + Integer.BYTES, bytes);
+        return position + Integer.BYTES + bytes.length;
+    }
+
+    private static String getString(ByteBuffer slab, int position) {
+        final byte[] bytes = new byte[slab.getInt(position)];
+        slab.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int slabIndex(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+}
@@ -0,0 +1,167 @@
+package com.sap.refactoring.persistence.r2dbc;
+
+import com.sap.refactoring.exceptions.ConstraintViolationException;
+import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.persistence.ReactiveUserDao;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Readable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * {@link ReactiveUserDao} over the USERS, ROLES and USER_ROLES tables created by the Flyway migration.
+ * Uniqueness of emails is enforced by the database like in {@link com.sap.refactoring.persistence.db.DataBaseUserDao}.
+ * Roles of a user are aggregated by a subquery, so every user is a single row and the rows are streamed
+ * from the database as they are requested by the subscriber.
+ */
+@Slf4j
+public class R2dbcUserDao implements ReactiveUserDao, AutoCloseable {
+    private static final int FETCH_SIZE = 500;
+    private static final String SELECT_USERS = """
+            SELECT U.ID, U.NAME, U.EMAIL, U.VERSION,
+                   ARRAY(SELECT R.NAME FROM USER_ROLES UR JOIN ROLES R ON R.ID = UR.ROLE_ID WHERE UR.USER_ID = U.ID) AS ROLES
+            FROM USERS U
+            """;
+    private static final String INSERT_ROLES = "INSERT INTO ROLES (NAME) SELECT UNNEST(CAST(:roles AS VARCHAR[])) ON CONFLICT (NAME) DO NOTHING";
+    private static final String INSERT_USER_ROLES = """
+            INSERT INTO USER_ROLES (USER_ID, ROLE_ID)
+            SELECT :id, ID FROM ROLES WHERE NAME = ANY(CAST(:roles AS VARCHAR[]))
+            """;
+
+    private final ConnectionFactory connectionFactory;
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+
+    public R2dbcUserDao(ConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+        this.databaseClient = DatabaseClient.create(connectionFactory);
+        this.transactionalOperator = TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+    }
+
+    @Override
+    public Mono<User> saveUser(User newUser) {
+        final User savedUser = new User(newUser);
+        savedUser.setId(UUID.randomUUID());
+        savedUser.setVersion(0L);
+
+        return databaseClient.sql("INSERT INTO USERS (ID, NAME, EMAIL) VALUES (:id, :name, :email)")
+                .bind("id", savedUser.getId())
+                .bind("name", savedUser.getName())
+                .bind("email", savedUser.getEmail())
+                .then()
+                .then(saveRoles(savedUser))
+                .as(transactionalOperator::transactional)
+                .onErrorMap(DataIntegrityViolationException.class, ex -> {
+                    log.error("Could not create new user", ex);
+                    return new ConstraintViolationException(ex);
+                })
+                .thenReturn(savedUser);
+    }
+
+    @Override
+    public Flux<User> getAllUsers() {
+        return databaseClient.sql(SELECT_USERS + " ORDER BY U.ID")
+                .filter(statement -> statement.fetchSize(FETCH_SIZE))
+                .map(R2dbcUserDao::toUser)
+                .all();
+    }
+
+    @Override
+    public Mono<User> getUserById(String uuid) {
+        final UUID id;
+        try {
+            id = UUID.fromString(uuid);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(new NotFoundException());
+        }
+
+        return databaseClient.sql(SELECT_USERS + " WHERE U.ID = :id")
+                .bind("id", id)
+                .map(R2dbcUserDao::toUser)
+                .one()
+                .switchIfEmpty(Mono.error(NotFoundException::new));
+    }
+
+    @Override
+    public Mono<Void> deleteUser(User userToDelete) {
+        return databaseClient.sql("DELETE FROM USERS WHERE ID = :id")
+                .bind("id", userToDelete.getId())
+                .then();
+    }
+
+    /**
+     * Updates the name of the user and replaces its roles in one transaction. The version is incremented
+     * like JPA does, so that the blocking api detects modifications made through the reactive one.
+     * Signals {@link NotFoundException} if the user has been deleted in the meantime instead of recreating it
+     */
+    @Override
+    public Mono<User> updateUser(User userToUpdate) {
+        final User updatedUser = new User(userToUpdate);
+
+        return databaseClient.sql("UPDATE USERS SET NAME = :name, VERSION = VERSION + 1, UPDATED_AT = CURRENT_TIMESTAMP WHERE ID = :id RETURNING VERSION")
+                .bind("id", updatedUser.getId())
+                .bind("name", updatedUser.getName())
+                .map(row -> row.get("VERSION", Long.class))
+                .one()
+                .switchIfEmpty(Mono.error(NotFoundException::new))
+                .flatMap(version -> {
+                    updatedUser.setVersion(version);
+                    return databaseClient.sql("DELETE FROM USER_ROLES WHERE USER_ID = :id")
+                            .bind("id", updatedUser.getId())
+                            .then()
+                            .then(saveRoles(updatedUser));
+                })
+                .as(transactionalOperator::transactional)
+                .thenReturn(updatedUser);
+    }
+
+    @Override
+    public Flux<User> findUsersByName(String name) {
+        return databaseClient.sql(SELECT_USERS + " WHERE U.NAME = :name")
+                .bind("name", name)
+                .map(R2dbcUserDao::toUser)
+                .all();
+    }
+
+    @Override
+    public void close() {
+        if (connectionFactory instanceof Disposable disposable) {
+            disposable.dispose();
+        }
+    }
+
+    /**
+     * Inserts the roles which do not exist yet and attaches all of them to the user
+     */
+    private Mono<Void> saveRoles(User user) {
+        final String[] roles = user.getRoles().toArray(String[]::new);
+
+        return databaseClient.sql(INSERT_ROLES)
+                .bind("roles", roles)
+                .then()
+                .then(databaseClient.sql(INSERT_USER_ROLES)
+                        .bind("id", user.getId())
+                        .bind("roles", roles)
+                        .then());
+    }
+
+    private static User toUser(Readable row) {
+        return User.builder()
+                .id(row.get("ID", UUID.class))
+                .name(row.get("NAME", String.class))
+                .email(row.get("EMAIL", String.class))
+                .roles(Arrays.asList(row.get("ROLES", String[].class)))
+                .version(row.get("VERSION", Long.class))
+                .build();
+    }
+}
@@ -0,0 +1,83 @@
+package com.sap.refactoring.persistence.reactive;
+
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.persistence.ReactiveUserDao;
+import com.sap.refactoring.persistence.UserDao;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * {@link ReactiveUserDao} on top of a blocking {@link UserDao}, e.g. {@link com.sap.refactoring.persistence.inmemory.InMemoryUserDao}.
+ * Calls of the underlying dao are made on the given scheduler, so that they never block the subscriber's thread.
+ * All users are read page by page and the next page is read only when the previous one has been requested by the subscriber.
+ */
+public class ReactiveUserDaoAdapter implements ReactiveUserDao {
+    public static final int DEFAULT_PAGE_SIZE = 500;
+    private final UserDao userDao;
+    private final Scheduler scheduler;
+    private final int pageSize;
+
+    public ReactiveUserDaoAdapter(UserDao userDao) {
+        this(userDao, Schedulers.boundedElastic(), DEFAULT_PAGE_SIZE);
+    }
+
+    public ReactiveUserDaoAdapter(UserDao userDao, Scheduler scheduler, int pageSize) {
+        this.userDao = userDao;
+        this.scheduler = scheduler;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public Mono<User> saveUser(User newUser) {
+        return Mono.fromCallable(() -> userDao.saveUser(newUser))
+                .subscribeOn(scheduler);
+    }
+
+    @Override
+    public Flux<User> getAllUsers() {
+        return Flux.<List<User>, Optional<UUID>>generate(Optional::empty, (cursor, sink) -> {
+                    final List<User> page = userDao.getUsersPage(cursor.orElse(null), pageSize, true);
+                    if (!page.isEmpty()) {
+                        sink.next(page);
+                    }
+                    if (page.size() < pageSize) {
+                        sink.complete();
+                        return cursor;
+                    }
+                    return Optional.of(page.get(page.size() - 1).getId());
+                })
+                .subscribeOn(scheduler)
+                .flatMapIterable(page -> page, 1);
+    }
+
+    @Override
+    public Mono<User> getUserById(String uuid) {
+        return Mono.fromCallable(() -> userDao.getUserById(uuid, true))
+                .subscribeOn(scheduler);
+    }
+
+    @Override
+    public Mono<Void> deleteUser(User userToDelete) {
+        return Mono.<Void>fromRunnable(() -> userDao.deleteUser(userToDelete))
+                .subscribeOn(scheduler);
+    }
+
+    @Override
+    public Mono<User> updateUser(User userToUpdate) {
+        return Mono.fromCallable(() -> userDao.updateUser(userToUpdate))
+                .subscribeOn(scheduler);
+    }
+
+    @Override
+    public Flux<User> findUsersByName(String name) {
+        return Mono.fromCallable(() -> userDao.findUsersByName(name, true))
+                .subscribeOn(scheduler)
+                .flatMapIterable(users -> users);
+    }
+}
@@ -0,0 +1,238 @@
+package com.sap.refactoring.persistence.tiered;
+
+import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.models.UserSaveResult;
+import com.sap.refactoring.models.UserVersion;
+import com.sap.refactoring.persistence.UserDao;
+import com.sap.refactoring.persistence.db.DataBaseUserDao;
+import com.sap.refactoring.persistence.inmemory.InMemoryUserDao;
+import com.sap.refactoring.persistence.inmemory.UserChangeLog;
+import com.sap.refactoring.persistence.invalidation.UserChangeListener;
+import com.sap.refactoring.persistence.invalidation.UserInvalidationBus;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Implementation of {@link UserDao} serving reads and writes from {@link InMemoryUserDao} and writing modifications behind
+ * to {@link DataBaseUserDao}, selected by the {@code write-behind} profile.
+ * The in-memory dao keeps enforcing the unique email atomically, its modifications are passed to a {@link WriteBehindLog}
+ * which writes them to the database in coalesced batches every {@code users.write-behind.flush-interval}.
+ * All users are loaded from the database on start, and the pending modifications are written on shutdown.
+ * Modifications which are not written yet are lost if the process dies.
+ * If {@link UserInvalidationBus} is enabled users changed in the database by other instances are read again,
+ * unless they have pending modifications in this instance. Concurrent modifications of one user by several instances
+ * are not detected, the last one written wins in the database.
+ * It refuses to start if {@code users.persistence.directory} is set as well
+ */
+@Repository
+@Primary
+@Profile("write-behind")
+@Slf4j
+public class TieredUserDao implements UserDao, UserChangeListener {
+    private final InMemoryUserDao inMemoryUserDao;
+    private final DataBaseUserDao dataBaseUserDao;
+    private final WriteBehindLog writeBehindLog;
+    private final Optional<UserInvalidationBus> userInvalidationBus;
+    private final Duration flushInterval;
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "user-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public TieredUserDao(InMemoryUserDao inMemoryUserDao, DataBaseUserDao dataBaseUserDao, MeterRegistry meterRegistry,
+                         @Value("${users.write-behind.capacity:10000}") int capacity,
+                         @Value("${users.write-behind.batch-size:500}") int batchSize,
+                         @Value("${users.write-behind.offer-timeout:1s}") Duration offerTimeout,
+                         @Value("${users.write-behind.flush-interval:200ms}") Duration flushInterval,
+                         @Value("${users.persistence.directory:}") String persistenceDirectory,
+                         Optional<UserInvalidationBus> userInvalidationBus) {
+        if (!persistenceDirectory.isBlank()) {
+            // both would set the change log of the in-memory dao, and the database is the durable store of this profile
+            throw new IllegalStateException("the write-behind profile must not be combined with users.persistence.directory");
+        }
+        this.inMemoryUserDao = inMemoryUserDao;
+        this.dataBaseUserDao = dataBaseUserDao;
+        this.writeBehindLog = new WriteBehindLog(dataBaseUserDao, capacity, batchSize, offerTimeout, meterRegistry);
+        this.userInvalidationBus = userInvalidationBus;
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Loads all users from the database into memory, then starts logging and writing behind the modifications.
+     * It subscribes to changes made by other instances before loading, so that none made during the load is missed
+     */
+    @PostConstruct
+    public void start() {
+        userInvalidationBus.ifPresent(bus -> bus.subscribe(this));
+        final AtomicLong count = new AtomicLong();
+        dataBaseUserDao.forEachUser(user -> {
+            inMemoryUserDao.restoreUser(user);
+            count.incrementAndGet();
+        }, true);
+        log.info("loaded {} users from the database", count.get());
+
+        inMemoryUserDao.setChangeLog(writeBehindLog);
+        flushExecutor.scheduleWithFixedDelay(this::flushSafely,
+                flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        flushExecutor.shutdown();
+        flushExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        inMemoryUserDao.setChangeLog(UserChangeLog.NONE);
+        if (!writeBehindLog.flush()) {
+            log.error("{} modified users could not be written to the database", writeBehindLog.getPendingCount());
+        }
+    }
+
+    /**
+     * Writes the pending modifications to the database now
+     * @return whether all of them have been written
+     */
+    public boolean flush() {
+        return writeBehindLog.flush();
+    }
+
+    @Override
+    public User saveUser(User newUser) {
+        return inMemoryUserDao.saveUser(newUser);
+    }
+
+    @Override
+    public List<UserSaveResult> saveUsers(List<User> newUsers) {
+        return inMemoryUserDao.saveUsers(newUsers);
+    }
+
+    @Override
+    public Collection<User> getAllUsers(boolean withRoles) {
+        return inMemoryUserDao.getAllUsers(withRoles);
+    }
+
+    @Override
+    public List<User> getUsersPage(UUID afterId, int limit, boolean withRoles) {
+        return inMemoryUserDao.getUsersPage(afterId, limit, withRoles);
+    }
+
+    @Override
+    public List<User> findUsersByRole(String role, UUID afterId, int limit, boolean withRoles) {
+        return inMemoryUserDao.findUsersByRole(role, afterId, limit, withRoles);
+    }
+
+    @Override
+    public void forEachUser(Consumer<User> consumer, boolean withRoles) {
+        inMemoryUserDao.forEachUser(consumer, withRoles);
+    }
+
+    @Override
+    public User getUserById(String uuid, boolean withRoles) {
+        return inMemoryUserDao.getUserById(uuid, withRoles);
+    }
+
+    @Override
+    public Optional<UserVersion> getUserVersion(UUID id) {
+        return inMemoryUserDao.getUserVersion(id);
+    }
+
+    @Override
+    public void deleteUser(User userToDelete) {
+        inMemoryUserDao.deleteUser(userToDelete);
+    }
+
+    @Override
+    public boolean deleteUserById(UUID id, Long version) {
+        return inMemoryUserDao.deleteUserById(id, version);
+    }
+
+    @Override
+    public User updateUser(User userToUpdate) {
+        return inMemoryUserDao.updateUser(userToUpdate);
+    }
+
+    @Override
+    public Collection<User> findUsersByName(String name, boolean withRoles) {
+        return inMemoryUserDao.findUsersByName(name, withRoles);
+    }
+
+    @Override
+    public List<User> findUsersByNamePrefix(String prefix, int limit, boolean withRoles) {
+        return inMemoryUserDao.findUsersByNamePrefix(prefix, limit, withRoles);
+    }
+
+    /**
+     * Reads the users changed in the database again by one query, except those modified in this instance and not yet written.
+     * Changes which are the echo of a write of this instance find the same version in memory and are ignored
+     */
+    @Override
+    public void usersChanged(Set<UUID> ids) {
+        final Map<UUID, User> persistedUsers = new HashMap<>();
+        dataBaseUserDao.getUsersByIds(ids).forEach(user -> persistedUsers.put(user.getId(), user));
+        ids.forEach(id -> refresh(id, persistedUsers.get(id)));
+    }
+
+    /**
+     * Reads all users from the database again and removes those which are not there any more
+     */
+    @Override
+    public void allUsersChanged() {
+        final Set<UUID> persistedIds = new HashSet<>();
+        dataBaseUserDao.forEachUser(user -> {
+            persistedIds.add(user.getId());
+            refresh(user.getId(), user);
+        }, true);
+        inMemoryUserDao.forEachUser(user -> {
+            if (!persistedIds.contains(user.getId())) {
+                refresh(user.getId(), null);
+            }
+        }, false);
+    }
+
+    private void refresh(UUID id, User persistedUser) {
+        final User storedUser = findUser(() -> inMemoryUserDao.getUserById(id.toString(), true));
+        if (storedUser != null && writeBehindLog.isPending(storedUser.getEmail())
+                || persistedUser != null && writeBehindLog.isPending(persistedUser.getEmail())) {
+            return;
+        }
+        inMemoryUserDao.refreshUser(id, persistedUser);
+    }
+
+    private static User findUser(Supplier<User> finder) {
+        try {
+            return finder.get();
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            writeBehindLog.flush();
+        } catch (RuntimeException e) {
+            log.error("could not write modified users to the database", e);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.sap.refactoring.persistence.tiered;
+
+import com.sap.refactoring.exceptions.WriteQueueFullException;
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.persistence.db.DataBaseUserDao;
+import com.sap.refactoring.persistence.inmemory.InMemoryUserDao;
+import com.sap.refactoring.persistence.inmemory.UserChangeLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * {@link UserChangeLog} writing the modifications of {@link InMemoryUserDao} to the database asynchronously.
+ * Pending modifications are kept by email, the unique key of users, so repeated modifications of a user are coalesced into the latest one.
+ * The number of pending users is bounded by {@code capacity}. Every modification waits up to {@code offerTimeout} for a free slot
+ * and fails with {@link WriteQueueFullException} otherwise, so writers are slowed down to the pace of the database.
+ * {@link #flush()} writes the pending modifications by {@link DataBaseUserDao#writeUsers} in batches, each batch in one transaction.
+ * A batch which fails stays pending and is written by the next flush
+ */
+@Slf4j
+public class WriteBehindLog implements UserChangeLog {
+    static final String PENDING_GAUGE_NAME = "users.write-behind.pending";
+    static final String LAG_TIMER_NAME = "users.write-behind.lag";
+    static final String FLUSH_TIMER_NAME = "users.write-behind.flush";
+    static final String FAILURES_COUNTER_NAME = "users.write-behind.failures";
+
+    private final Map<String, PendingChange> pendingChanges = new ConcurrentHashMap<>();
+    private final Semaphore freeSlots;
+    private final ThreadLocal<Boolean> slotTaken = ThreadLocal.withInitial(() -> false);
+    private final Lock flushLock = new ReentrantLock();
+    private final DataBaseUserDao dataBaseUserDao;
+    private final int batchSize;
+    private final Duration offerTimeout;
+    private final Timer lagTimer;
+    private final Timer flushTimer;
+    private final Counter failures;
+
+    /**
+     * Modification waiting to be written, the user is null if it has been deleted.
+     * It keeps the time of the first of the coalesced modifications. Pending changes are compared by identity,
+     * so that a change replaced while it is written stays pending
+     */
+    private static final class PendingChange {
+        private final User user;
+        private final long enqueuedAt;
+
+        private PendingChange(User user, long enqueuedAt) {
+            this.user = user;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    public WriteBehindLog(DataBaseUserDao dataBaseUserDao, int capacity, int batchSize, Duration offerTimeout, MeterRegistry meterRegistry) {
+        this.dataBaseUserDao = dataBaseUserDao;
+        this.freeSlots = new Semaphore(capacity);
+        this.batchSize = batchSize;
+        this.offerTimeout = offerTimeout;
+        Gauge.builder(PENDING_GAUGE_NAME, pendingChanges, Map::size)
+                .description("Users modified in memory and not yet written to the database")
+                .register(meterRegistry);
+        this.lagTimer = Timer.builder(LAG_TIMER_NAME)
+                .description("Time from the modification of a user in memory until it is written to the database")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder(FLUSH_TIMER_NAME)
+                .description("Time of writing one batch of modified users to the database")
+                .register(meterRegistry);
+        this.failures = Counter.builder(FAILURES_COUNTER_NAME)
+                .description("Batches of modified users which could not be written to the database")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Takes a slot for the modified user before the modification and gives it back afterwards
+     * unless the modification added a new pending user
+     */
+    @Override
+    public <T> T modify(Supplier<T> modification) {
+        acquireSlot();
+        try {
+            return modification.get();
+        } finally {
+            if (!slotTaken.get()) {
+                freeSlots.release();
+            }
+            slotTaken.remove();
+        }
+    }
+
+    @Override
+    public void logPut(User user) {
+        enqueue(user.getEmail(), user);
+    }
+
+    @Override
+    public void logDelete(User user) {
+        enqueue(user.getEmail(), null);
+    }
+
+    /**
+     * Writes the pending modifications in batches until none is left or a batch fails
+     * @return whether all modifications pending at the time of the call have been written
+     */
+    public boolean flush() {
+        flushLock.lock();
+        try {
+            while (!pendingChanges.isEmpty()) {
+                final List<Map.Entry<String, PendingChange>> batch = pendingChanges.entrySet().stream()
+                        .limit(batchSize)
+                        .map(entry -> Map.entry(entry.getKey(), entry.getValue()))
+                        .toList();
+                if (!write(batch)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of users modified in memory and not yet written to the database
+     */
+    public int getPendingCount() {
+        return pendingChanges.size();
+    }
+
+    /**
+     * @return whether the user with the email has been modified in memory and not yet written to the database
+     */
+    public boolean isPending(String email) {
+        return pendingChanges.containsKey(email);
+    }
+
+    private boolean write(List<Map.Entry<String, PendingChange>> batch) {
+        final List<User> users = new ArrayList<>();
+        final List<String> deletedEmails = new ArrayList<>();
+        batch.forEach(entry -> {
+            if (entry.getValue().user != null) {
+                users.add(entry.getValue().user);
+            } else {
+                deletedEmails.add(entry.getKey());
+            }
+        });
+
+        try {
+            flushTimer.record(() -> dataBaseUserDao.writeUsers(users, deletedEmails));
+        } catch (RuntimeException e) {
+            log.error("could not write {} modified users to the database, they stay pending", batch.size(), e);
+            failures.increment();
+            return false;
+        }
+
+        final long writtenAt = System.nanoTime();
+        batch.forEach(entry -> {
+            lagTimer.record(writtenAt - entry.getValue().enqueuedAt, TimeUnit.NANOSECONDS);
+            if (pendingChanges.remove(entry.getKey(), entry.getValue())) {
+                freeSlots.release();
+            }
+        });
+        return true;
+    }
+
+    private void enqueue(String email, User user) {
+        pendingChanges.compute(email, (key, pendingChange) -> {
+            if (pendingChange == null) {
+                slotTaken.set(true);
+                return new PendingChange(user, System.nanoTime());
+            }
+            return new PendingChange(user, pendingChange.enqueuedAt);
+        });
+    }
+
+    private void acquireSlot() {
+        try {
+            if (!freeSlots.tryAcquire(offerTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new WriteQueueFullException("%d modified users are waiting to be written to the database"
+                        .formatted(pendingChanges.size()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WriteQueueFullException("interrupted while waiting for modified users to be written to the database");
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.sap.refactoring.services;
+
+import com.sap.refactoring.exceptions.IllegalRequestException;
+import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.exceptions.VersionConflictException;
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.models.UserUniqueKey;
+import com.sap.refactoring.persistence.ReactiveUserDao;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Non-blocking service layer implementation for user, it follows the rules of {@link UserService}.
+ * Modifications of the same user are not serialized by locks, which would block,
+ * concurrent modifications are resolved by the underlying {@link ReactiveUserDao}
+ */
+@Service
+@Slf4j
+public class ReactiveUserService {
+    private final ReactiveUserDao userDao;
+
+    public ReactiveUserService(ReactiveUserDao userDao) {
+        this.userDao = userDao;
+    }
+
+    public Mono<User> saveUser(User newUser) {
+        return userDao.saveUser(newUser);
+    }
+
+    public Flux<User> getAllUsers() {
+        return userDao.getAllUsers();
+    }
+
+    public Mono<User> getUserById(String uuid) {
+        return userDao.getUserById(uuid);
+    }
+
+    /**
+     * Deletes user. If user does not exist the method does nothing.
+     * The user is read again if it has been modified between reading and deleting it,
+     * at most {@link UserService#MAX_CONFLICT_RETRIES} times before {@link VersionConflictException} is signaled
+     * @param id user's identifier
+     */
+    public Mono<Void> deleteUser(String id) {
+        return Mono.defer(() -> getUserById(id))
+                .flatMap(userDao::deleteUser)
+                .retryWhen(Retry.max(UserService.MAX_CONFLICT_RETRIES)
+                        .filter(VersionConflictException.class::isInstance)
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .onErrorResume(NotFoundException.class, e -> {
+                    log.warn("deleteUser: user with id {} does not exist", id);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Updates user. Signals {@link NotFoundException} if the user is not found
+     * and {@link IllegalRequestException} if the update operation tries to modify unique fields of user.
+     * @param id user's identifier
+     * @param updatedUser {@link User} with new parameters
+     * @return updated user
+     */
+    public Mono<User> updateUser(String id, User updatedUser) {
+        return getUserById(id).flatMap(oldUser -> {
+            if (!new UserUniqueKey(oldUser).equals(new UserUniqueKey(updatedUser))) {
+                return Mono.error(new IllegalRequestException("impossible to change unique keys! Please remove object first then recreate it with updated fields"));
+            }
+
+            final User user = new User(updatedUser);
+            user.setId(oldUser.getId());
+            return userDao.updateUser(user);
+        });
+    }
+
+    public Flux<User> findUsersByName(String name) {
+        return userDao.findUsersByName(name);
+    }
+}
@@ -2,78 +2,251 @@ package com.sap.refactoring.services;
 
 import com.sap.refactoring.exceptions.IllegalRequestException;
 import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.exceptions.VersionConflictException;
 import com.sap.refactoring.models.User;
+import com.sap.refactoring.models.UserSaveResult;
 import com.sap.refactoring.models.UserUniqueKey;
+import com.sap.refactoring.models.UserVersion;
+import com.sap.refactoring.models.UsersPage;
 import com.sap.refactoring.persistence.UserDao;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 /**
- * Service layer implementation for user
+ * Service layer implementation for user.
+ * Modifications are not serialized by locks, concurrent modifications of a user are detected by its version (see {@link UserDao}).
+ * Reads take {@code withRoles} telling whether the roles of the users are needed, users read without them have empty roles
  */
 @Service
 @Slf4j
 public class UserService {
+    public static final int MAX_PAGE_SIZE = 1000;
+    /**
+     * Times an update without the expected version is retried after a concurrent modification
+     */
+    public static final int MAX_CONFLICT_RETRIES = 3;
     private final UserDao userDao;
-    private final Object modifyUserLock = new Object(); // for synchronization
+    private final Counter deleteConflicts;
+    private final Counter updateConflicts;
 
-    public UserService(UserDao userDao) {
+    public UserService(UserDao userDao, MeterRegistry meterRegistry) {
         this.userDao = userDao;
+        this.deleteConflicts = conflictsCounter(meterRegistry, "deleteUser");
+        this.updateConflicts = conflictsCounter(meterRegistry, "updateUser");
     }
 
     public User saveUser(User newUser) {
         return userDao.saveUser(newUser);
     }
 
-    public Collection<User> getAllUsers() {
-        return userDao.getAllUsers();
+    public List<UserSaveResult> saveUsers(List<User> newUsers) {
+        return userDao.saveUsers(newUsers);
+    }
+
+    public Collection<User> getAllUsers(boolean withRoles) {
+        return userDao.getAllUsers(withRoles);
     }
 
-    public User getUserById(String uuid){
-        return userDao.getUserById(uuid);
+    /**
+     * Retrieves a page of users. One more user than requested is fetched to find out whether there is a next page.
+     * Throws {@link IllegalRequestException} if the limit is out of range or the cursor is not a valid id
+     * @param cursor id of the last user of the previous page or null to get the first page
+     * @param limit maximal number of users in the page, from 1 to {@link #MAX_PAGE_SIZE}
+     * @param withRoles whether the roles of the users are needed
+     * @return page of users with a cursor for the next page
+     */
+    public UsersPage getUsersPage(String cursor, int limit, boolean withRoles) {
+        return page(cursor, limit, (afterId, pageLimit) -> userDao.getUsersPage(afterId, pageLimit, withRoles));
     }
 
     /**
-     * Deletes user. First the method looks for a user with the given id and if user exists removes it.
-     * If user does not exist the method does nothing
+     * Retrieves a page of users having the given role, like {@link #getUsersPage(String, int, boolean)} does for all users
+     * @param role name of the role
+     * @param cursor id of the last user of the previous page or null to get the first page
+     * @param limit maximal number of users in the page, from 1 to {@link #MAX_PAGE_SIZE}
+     * @param withRoles whether the roles of the users are needed
+     * @return page of users with a cursor for the next page
+     */
+    public UsersPage findUsersByRole(String role, String cursor, int limit, boolean withRoles) {
+        return page(cursor, limit, (afterId, pageLimit) -> userDao.findUsersByRole(role, afterId, pageLimit, withRoles));
+    }
+
+    private static UsersPage page(String cursor, int limit, BiFunction<UUID, Integer, List<User>> pageLoader) {
+        checkLimit(limit);
+
+        final List<User> users = pageLoader.apply(parseCursor(cursor), limit + 1);
+        if (users.size() <= limit) {
+            return new UsersPage(users, null);
+        }
+
+        final List<User> page = List.copyOf(users.subList(0, limit));
+        return new UsersPage(page, page.get(limit - 1).getId());
+    }
+
+    public void forEachUser(Consumer<User> consumer, boolean withRoles) {
+        userDao.forEachUser(consumer, withRoles);
+    }
+
+    public User getUserById(String uuid, boolean withRoles) {
+        return userDao.getUserById(uuid, withRoles);
+    }
+
+    /**
+     * Retrieves the version of the user without reading the rest of it.
+     * Throws {@link NotFoundException} if the user does not exist
+     * @param uuid user's identifier
+     * @return version of the user
+     */
+    public UserVersion getUserVersion(String uuid) {
+        final UUID id;
+        try {
+            id = UUID.fromString(uuid);
+        } catch (IllegalArgumentException e) {
+            throw new NotFoundException();
+        }
+
+        return userDao.getUserVersion(id).orElseThrow(NotFoundException::new);
+    }
+
+    /**
+     * Deletes user by its id without reading it first.
+     * Throws {@link NotFoundException} if the user does not exist
      * @param id user's identifier
      */
     public void deleteUser(String id) {
-        synchronized (modifyUserLock) {
-            try {
-                userDao.deleteUser(getUserById(id));
-            } catch (NotFoundException e) {
-                log.warn("deleteUser: user with id {} does not exist", id);
-            }
+        deleteUser(id, null);
+    }
+
+    /**
+     * Deletes user if it still has the expected version.
+     * Without the expected version it behaves like {@link #deleteUser(String)}
+     * @param id user's identifier
+     * @param expectedVersion version the deletion is based on or null
+     * @throws NotFoundException if the user does not exist
+     * @throws VersionConflictException if the user has another version
+     */
+    public void deleteUser(String id, Long expectedVersion) {
+        final UUID uuid;
+        try {
+            uuid = UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            throw new NotFoundException();
+        }
+
+        final boolean deleted;
+        try {
+            deleted = userDao.deleteUserById(uuid, expectedVersion);
+        } catch (VersionConflictException e) {
+            deleteConflicts.increment();
+            throw e;
+        }
+        if (!deleted) {
+            throw new NotFoundException();
         }
     }
 
     /**
      * Updates user. Throws {@link NotFoundException} if the user is not found.
-     * throws {@link IllegalRequestException} if the update operation tries to modify unique fields of user
+     * throws {@link IllegalRequestException} if the update operation tries to modify unique fields of user.
+     * The user is read again and the update retried if it has been modified in the meantime, so the last update wins.
+     * After {@link #MAX_CONFLICT_RETRIES} retries it gives up with {@link VersionConflictException}
      * @param id user's identifier
      * @param updatedUser {@link User} with new parameters
      * @return updated user
      * @throws NotFoundException if there is no resource to update
      * {@link IllegalRequestException} when unique keys are being changed
+     * @throws VersionConflictException if the user keeps being modified concurrently
      */
     public User updateUser(String id, User updatedUser) {
-        synchronized (modifyUserLock) {
-            final User oldUser = getUserById(id);
+        return updateUser(id, updatedUser, null);
+    }
+
+    /**
+     * Updates user if it still has the expected version.
+     * Without the expected version it behaves like {@link #updateUser(String, User)}
+     * @param id user's identifier
+     * @param updatedUser {@link User} with new parameters
+     * @param expectedVersion version the update is based on or null
+     * @return updated user with its new version
+     * @throws VersionConflictException if the user has another version
+     */
+    public User updateUser(String id, User updatedUser, Long expectedVersion) {
+        for (int retries = 0; ; retries++) {
+            final User oldUser = getUserById(id, true);
             if (!new UserUniqueKey(oldUser).equals(new UserUniqueKey(updatedUser))) {
                 throw new IllegalRequestException("impossible to change unique keys! Please remove object first then recreate it with updated fields");
             }
 
             updatedUser.setId(oldUser.getId());
-            updatedUser = userDao.updateUser(updatedUser);
+            updatedUser.setVersion(expectedVersion != null ? expectedVersion : oldUser.getVersion());
+            try {
+                return userDao.updateUser(updatedUser);
+            } catch (VersionConflictException e) {
+                updateConflicts.increment();
+                if (expectedVersion != null || retries == MAX_CONFLICT_RETRIES) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    public Collection<User> findUsersByName(String name, boolean withRoles) {
+        return userDao.findUsersByName(name, withRoles);
+    }
+
+    /**
+     * Finds the versions of the users with the name without reading the rest of them
+     */
+    public Collection<UserVersion> findUserVersionsByName(String name) {
+        return userDao.findUserVersionsByName(name);
+    }
+
+    /**
+     * Finds users whose name starts with the prefix ignoring case, ordered by the name.
+     * Throws {@link IllegalRequestException} if the prefix is empty or the limit is out of range
+     * @param prefix the beginning of the names
+     * @param limit maximal number of users, from 1 to {@link #MAX_PAGE_SIZE}
+     * @param withRoles whether the roles of the users are needed
+     * @return users with matching names
+     */
+    public List<User> findUsersByNamePrefix(String prefix, int limit, boolean withRoles) {
+        if (prefix.isEmpty()) {
+            throw new IllegalRequestException("name prefix must not be empty");
         }
+        checkLimit(limit);
+        return userDao.findUsersByNamePrefix(prefix, limit, withRoles);
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalRequestException("limit must be between 1 and %d".formatted(MAX_PAGE_SIZE));
+        }
+    }
 
-        return updatedUser;
+    private static UUID parseCursor(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+
+        try {
+            return UUID.fromString(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalRequestException("invalid cursor: %s".formatted(cursor));
+        }
     }
 
-    public Collection<User> findUsersByName(String name) {
-        return userDao.findUsersByName(name);
+    private static Counter conflictsCounter(MeterRegistry meterRegistry, String operation) {
+        return Counter.builder("users.version.conflicts")
+                .description("Modifications of users which failed because the user had been modified concurrently")
+                .tag("operation", operation)
+                .register(meterRegistry);
     }
 }
@@ -0,0 +1,65 @@
+package com.sap.refactoring.web.controller;
+
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.services.ReactiveUserService;
+import jakarta.validation.Valid;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+
+/**
+ * Non-blocking counterpart of {@link UserController}.
+ * Requests are completed asynchronously, so no request thread waits for the storage.
+ * Users requested as newline delimited json are streamed with backpressure:
+ * the next user is read only after the previous one has been written to the response.
+ */
+@Controller
+@RequestMapping(ReactiveUserController.REACTIVE_USERS_URL)
+public class ReactiveUserController {
+    static final String REACTIVE_USERS_URL = "/reactive/users";
+    private final ReactiveUserService userService;
+
+    public ReactiveUserController(ReactiveUserService userService) {
+        this.userService = userService;
+    }
+
+    @PostMapping()
+    public Mono<ResponseEntity<User>> addUser(@Valid @RequestBody User user) {
+        return userService.saveUser(user)
+                .map(createdUser -> ResponseEntity
+                        .created(URI.create(REACTIVE_USERS_URL + "/" + createdUser.getId().toString()))
+                        .body(createdUser));
+    }
+
+    @PutMapping("{id}")
+    public Mono<ResponseEntity<User>> updateUser(@PathVariable("id") String uuid, @Valid @RequestBody User user) {
+        return userService.updateUser(uuid, user)
+                .map(ResponseEntity::ok);
+    }
+
+    @GetMapping("{id}")
+    public Mono<ResponseEntity<User>> getUserById(@PathVariable("id") String uuid) {
+        return userService.getUserById(uuid)
+                .map(ResponseEntity::ok);
+    }
+
+    @DeleteMapping("{id}")
+    public Mono<ResponseEntity<Void>> deleteUser(@PathVariable("id") String uuid) {
+        return userService.deleteUser(uuid)
+                .then(Mono.just(ResponseEntity.noContent().build()));
+    }
+
+    /**
+     * Returns users found by name or all users, as a json array or as newline delimited json
+     */
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @ResponseBody
+    public Flux<User> getUsers(@RequestParam(value = "name", required = false) String name) {
+        return name != null ? userService.findUsersByName(name) : userService.getAllUsers();
+    }
+}
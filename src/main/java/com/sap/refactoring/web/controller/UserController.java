@@ -1,13 +1,42 @@
 package com.sap.refactoring.web.controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sap.refactoring.exceptions.VersionConflictException;
+import com.sap.refactoring.models.UserField;
+import com.sap.refactoring.models.UserFieldsFilter;
+import com.sap.refactoring.models.UserSaveResult;
+import com.sap.refactoring.models.UserVersion;
+import com.sap.refactoring.models.UsersPage;
 import com.sap.refactoring.services.UserService;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Size;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import com.sap.refactoring.models.User;
 
@@ -16,46 +45,304 @@ import com.sap.refactoring.models.User;
 public class UserController
 {
 	static final String USERS_URL = "/users";
+	static final String FIELDS_PARAMETER = "fields";
+	static final int DEFAULT_PAGE_SIZE = 100;
+	static final int MAX_BATCH_SIZE = 100_000;
+	private static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
 	private final UserService userService;
+	private final ObjectMapper objectMapper;
 
-	public UserController(UserService userService) {
+	public UserController(UserService userService, ObjectMapper objectMapper) {
 		this.userService = userService;
+		this.objectMapper = objectMapper;
 	}
 
 	@PostMapping()
-	public ResponseEntity<User> addUser(@Valid @RequestBody User user) {
+	public ResponseEntity<User> addUser(@Valid @RequestBody User user,
+										@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
 		final User createdUser = userService.saveUser(user);
 		return ResponseEntity
 				.created(URI.create(USERS_URL + "/" + createdUser.getId().toString()))
+				.eTag(eTag(createdUser.getVersion(), representation(accept, null)))
 				.body(createdUser);
 	}
 
+	/**
+	 * Creates users in bulk. Every user is validated, then all of them are saved at once.
+	 * The response reports for each user whether it was created, its email is already taken
+	 * or it was rejected because the write-behind queue is full
+	 */
+	@PostMapping("batch")
+	public ResponseEntity<List<UserSaveResult>> addUsers(@RequestBody @Size(min = 1, max = MAX_BATCH_SIZE) List<@Valid User> users) {
+		return ResponseEntity.ok(userService.saveUsers(users));
+	}
+
+	/**
+	 * Updates the user. If {@code If-Match} holds the {@code ETag} of the user, the update fails with 412
+	 * when the user has been modified since then
+	 */
 	@PutMapping("{id}")
-	public ResponseEntity<User> updateUser(@PathVariable("id") String uuid, @Valid @RequestBody User user) {
-		return ResponseEntity.ok(userService.updateUser(uuid, user));
+	public ResponseEntity<User> updateUser(@PathVariable("id") String uuid, @Valid @RequestBody User user,
+										   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+										   @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+		final User updatedUser = userService.updateUser(uuid, user, expectedVersion(ifMatch));
+		return ResponseEntity.ok()
+				.eTag(eTag(updatedUser.getVersion(), representation(accept, null)))
+				.body(updatedUser);
 	}
 
+	/**
+	 * Returns the user with its version as {@code ETag} and its modification time as {@code Last-Modified} if the store keeps it.
+	 * The {@code ETag} tells the representations apart, see {@link #representation(String, String)}, and {@code Vary: Accept} is sent.
+	 * A request whose {@code If-None-Match} or {@code If-Modified-Since} matches the user is answered with 304
+	 * after looking up only the version of the user, its roles are not read and its body is not written.
+	 * The {@code fields} parameter selects the fields to be returned, see {@link UserFieldsResponseBodyAdvice},
+	 * the user is read without roles unless they are selected
+	 */
 	@GetMapping("{id}")
-	public ResponseEntity<User> getUserById(@PathVariable("id") String uuid) {
-		return ResponseEntity.ok(userService.getUserById(uuid));
+	public ResponseEntity<User> getUserById(@PathVariable("id") String uuid,
+											@RequestParam(value = FIELDS_PARAMETER, required = false) String fields,
+											WebRequest request) {
+		final boolean withRoles = UserField.parse(fields).contains(UserField.ROLES);
+		final String representation = representation(request.getHeader(HttpHeaders.ACCEPT), fields);
+		varyByAccept(request);
+		if (isConditional(request)) {
+			final UserVersion version = userService.getUserVersion(uuid);
+			if (request.checkNotModified(eTag(version.getVersion(), representation), lastModified(version))) {
+				return null;
+			}
+		}
+
+		final User user = userService.getUserById(uuid, withRoles);
+		final ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+				.eTag(eTag(user.getVersion(), representation));
+		if (user.getUpdatedAt() != null) {
+			response.lastModified(user.getUpdatedAt());
+		}
+		return response.body(user);
 	}
 
+	/**
+	 * Deletes the user, responds 404 if it does not exist. If {@code If-Match} holds the {@code ETag} of the user,
+	 * the deletion fails with 412 when the user has been modified since then
+	 */
 	@DeleteMapping("{id}")
-	public ResponseEntity<Void> deleteUser(@PathVariable("id") String uuid) {
-		userService.deleteUser(uuid);
+	public ResponseEntity<Void> deleteUser(@PathVariable("id") String uuid,
+										   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+		userService.deleteUser(uuid, expectedVersion(ifMatch));
 		return ResponseEntity.noContent().build();
 	}
 
+	/**
+	 * Returns users found by name, by the prefix of name ignoring case, users having a role or all users.
+	 * Users found by name come with a weak {@code ETag} of their ids and versions, a request whose {@code If-None-Match}
+	 * matches it is answered with 304 after looking up only the versions of the users. The tag depends on the representation
+	 * as well and {@code Vary: Accept} is sent.
+	 * Users found by prefix are ordered by name and limited to {@code limit}, there is no next page of them.
+	 * Users having a role are always returned page by page, all users only if {@code limit} or {@code cursor} is given.
+	 * A page is returned as {@link UsersPage} holding the users as {@code items} and the {@code nextCursor},
+	 * and a {@code Link} header with {@code rel="next"} points to the next page unless the page is the last one.
+	 * The {@code fields} parameter selects the fields to be returned, e.g. {@code fields=id,email}.
+	 * Users are read without roles unless they are selected
+	 */
 	@GetMapping()
-	public ResponseEntity<Collection<User>> getUsers(@RequestParam(value = "name", required = false) String name) {
-		final Collection<User> result;
+	public ResponseEntity<?> getUsers(@RequestParam(value = "name", required = false) String name,
+									  @RequestParam(value = "namePrefix", required = false) String namePrefix,
+									  @RequestParam(value = "role", required = false) String role,
+									  @RequestParam(value = "limit", required = false) Integer limit,
+									  @RequestParam(value = "cursor", required = false) String cursor,
+									  @RequestParam(value = FIELDS_PARAMETER, required = false) String fields,
+									  WebRequest request) {
+		final boolean withRoles = UserField.parse(fields).contains(UserField.ROLES);
+		if (name != null){
+			final String representation = representation(request.getHeader(HttpHeaders.ACCEPT), fields);
+			varyByAccept(request);
+			if (isConditional(request)
+					&& request.checkNotModified(eTag(userService.findUserVersionsByName(name), representation))) {
+				return null;
+			}
+
+			final Collection<User> users = userService.findUsersByName(name, withRoles);
+			return ResponseEntity.ok()
+					.eTag(eTag(users.stream().map(UserVersion::of).toList(), representation))
+					.body(users);
+		}
+
+		if (namePrefix != null){
+			return ResponseEntity.ok(userService.findUsersByNamePrefix(namePrefix, limit != null ? limit : DEFAULT_PAGE_SIZE, withRoles));
+		}
+
+		if (role == null && limit == null && cursor == null){
+			return ResponseEntity.ok(userService.getAllUsers(withRoles));
+		}
 
-		if (name == null){
-			result = userService.getAllUsers();
-		} else {
-			result= userService.findUsersByName(name);
+		final int pageSize = limit != null ? limit : DEFAULT_PAGE_SIZE;
+		final UsersPage page = role != null
+				? userService.findUsersByRole(role, cursor, pageSize, withRoles)
+				: userService.getUsersPage(cursor, pageSize, withRoles);
+		final ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+		if (page.getNextCursor() != null){
+			final String nextPage = UriComponentsBuilder.fromPath(USERS_URL)
+					.queryParamIfPresent("role", Optional.ofNullable(role))
+					.queryParam("limit", pageSize)
+					.queryParam("cursor", page.getNextCursor())
+					.queryParamIfPresent(FIELDS_PARAMETER, Optional.ofNullable(fields))
+					.toUriString();
+			response.header(HttpHeaders.LINK, "<%s>; rel=\"next\"".formatted(nextPage));
 		}
 
-		return ResponseEntity.ok(result);
+		return response.body(page);
+	}
+
+	/**
+	 * Exports all users as newline delimited json.
+	 * Users are written to the response as soon as they are read, so memory usage does not depend on the number of users.
+	 * The {@code fields} parameter selects the fields to be written, users are read without roles unless they are selected
+	 */
+	@GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(value = FIELDS_PARAMETER, required = false) String fields) {
+		final Set<UserField> selectedFields = UserField.parse(fields);
+		final boolean withRoles = selectedFields.contains(UserField.ROLES);
+		final ObjectWriter userWriter = objectMapper.writerFor(User.class)
+				.with(UserFieldsFilter.filterProvider(selectedFields))
+				.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+		final StreamingResponseBody body = outputStream -> {
+			try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+				generator.setRootValueSeparator(null);
+				userService.forEachUser(user -> {
+					try {
+						userWriter.writeValue(generator, user);
+						generator.writeRaw('\n');
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}, withRoles);
+			}
+		};
+
+		return ResponseEntity.ok()
+				.contentType(MediaType.APPLICATION_NDJSON)
+				.body(body);
+	}
+
+	/**
+	 * Strong entity tag of a representation of a user: its version followed by the representation,
+	 * e.g. {@code "3"} or {@code "3-smile-id.email"}. {@link #expectedVersion(String)} reads the version back
+	 */
+	private static String eTag(Long version, String representation) {
+		return "\"%d%s\"".formatted(version, representation);
+	}
+
+	/**
+	 * Entity tag of a list of users hashing their ids, versions and the representation.
+	 * It is weak because the order of the users is not fixed
+	 */
+	private static String eTag(Collection<UserVersion> versions, String representation) {
+		final String ids = versions.stream()
+				.sorted(Comparator.comparing(UserVersion::getId))
+				.map(version -> version.getId() + ":" + version.getVersion())
+				.collect(Collectors.joining(",", "", representation));
+		return "W/\"%s\"".formatted(DigestUtils.md5DigestAsHex(ids.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Tells apart the representations of the same users, which must not share a strong entity tag:
+	 * the format unless it is json and the selected fields unless all of them are selected, e.g. {@code -cbor-id.email}
+	 * @return suffix of the entity tag, empty for json with all fields
+	 */
+	private static String representation(String accept, String fields) {
+		final StringBuilder representation = new StringBuilder();
+		final String format = format(accept);
+		if (!format.equals("json")) {
+			representation.append('-').append(format);
+		}
+		final Set<UserField> selectedFields = UserField.parse(fields);
+		if (!selectedFields.equals(UserField.ALL)) {
+			representation.append('-').append(selectedFields.stream()
+					.sorted()
+					.map(UserField::getName)
+					.collect(Collectors.joining(".")));
+		}
+		return representation.toString();
+	}
+
+	/**
+	 * Format of the response negotiated from {@code Accept} like the message converters do,
+	 * which write json unless smile or cbor is preferred
+	 */
+	private static String format(String accept) {
+		if (accept == null) {
+			return "json";
+		}
+
+		final List<MediaType> mediaTypes;
+		try {
+			mediaTypes = new ArrayList<>(MediaType.parseMediaTypes(accept));
+		} catch (InvalidMediaTypeException e) {
+			return "json";
+		}
+		mediaTypes.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+		for (MediaType mediaType : mediaTypes) {
+			if (mediaType.getQualityValue() == 0) {
+				continue;
+			}
+			if (mediaType.includes(MediaType.APPLICATION_JSON)) {
+				return "json";
+			}
+			if (mediaType.includes(APPLICATION_SMILE)) {
+				return "smile";
+			}
+			if (mediaType.includes(MediaType.APPLICATION_CBOR)) {
+				return "cbor";
+			}
+		}
+		return "json";
+	}
+
+	/**
+	 * Sends {@code Vary: Accept} with the response, also when it is answered with 304
+	 */
+	private static void varyByAccept(WebRequest request) {
+		if (request instanceof NativeWebRequest nativeRequest) {
+			final HttpServletResponse response = nativeRequest.getNativeResponse(HttpServletResponse.class);
+			if (response != null && !response.getHeaders(HttpHeaders.VARY).contains(HttpHeaders.ACCEPT)) {
+				response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+			}
+		}
+	}
+
+	/**
+	 * @return the modification time of the user in milliseconds or -1 if it is not known
+	 */
+	private static long lastModified(UserVersion version) {
+		return version.getUpdatedAt() != null ? version.getUpdatedAt().toEpochMilli() : -1;
+	}
+
+	private static boolean isConditional(WebRequest request) {
+		return request.getHeader(HttpHeaders.IF_NONE_MATCH) != null || request.getHeader(HttpHeaders.IF_MODIFIED_SINCE) != null;
+	}
+
+	/**
+	 * Parses the version out of an {@code If-Match} header holding a single strong entity tag of any representation.
+	 * {@code *} matches any version. Anything else, e.g. a weak entity tag, never matches the version of a user
+	 * @return the expected version or null if any version is accepted
+	 */
+	private static Long expectedVersion(String ifMatch) {
+		if (ifMatch == null || ifMatch.trim().equals("*")) {
+			return null;
+		}
+
+		final String eTag = ifMatch.trim();
+		try {
+			if (eTag.length() > 2 && eTag.startsWith("\"") && eTag.endsWith("\"")) {
+				final String value = eTag.substring(1, eTag.length() - 1);
+				final int representation = value.indexOf('-');
+				return Long.parseLong(representation < 0 ? value : value.substring(0, representation));
+			}
+		} catch (NumberFormatException e) {
+			// not a version of a user
+		}
+		throw new VersionConflictException("If-Match %s does not match the version of the user".formatted(ifMatch));
 	}
 }
@@ -0,0 +1,35 @@
+package com.sap.refactoring.web.controller;
+
+import com.sap.refactoring.models.UserField;
+import com.sap.refactoring.models.UserFieldsFilter;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.AbstractMappingJacksonResponseBodyAdvice;
+
+/**
+ * Writes only the fields of users selected by the {@code fields} parameter of a GET request to {@link UserController}.
+ * The selection is passed to the Jackson message converter as a {@link UserFieldsFilter},
+ * so it applies to json, smile and cbor alike
+ */
+@ControllerAdvice(assignableTypes = UserController.class)
+public class UserFieldsResponseBodyAdvice extends AbstractMappingJacksonResponseBodyAdvice {
+
+    @Override
+    protected void beforeBodyWriteInternal(MappingJacksonValue bodyContainer, MediaType contentType,
+                                           MethodParameter returnType, ServerHttpRequest request, ServerHttpResponse response) {
+        if (request.getMethod() != HttpMethod.GET || !(request instanceof ServletServerHttpRequest servletRequest)) {
+            return;
+        }
+
+        final String fields = servletRequest.getServletRequest().getParameter(UserController.FIELDS_PARAMETER);
+        if (fields != null) {
+            bodyContainer.setFilters(UserFieldsFilter.filterProvider(UserField.parse(fields)));
+        }
+    }
+}
@@ -0,0 +1 @@
+ALTER TABLE USERS ADD COLUMN VERSION BIGINT NOT NULL DEFAULT 0;
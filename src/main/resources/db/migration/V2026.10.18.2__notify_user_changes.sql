@@ -0,0 +1,34 @@
+-- Statement level triggers send the ids of all the users changed by one statement, e.g. all users created in bulk,
+-- comma separated and at most 200 ids per notification to stay below the 8000 bytes limit of a payload.
+-- Notifications are sent whether any instance listens (users.invalidation.enabled) or not. They are queued until the commit
+-- and the commits of notifying transactions are serialized, so every write to USERS pays for them
+
+CREATE FUNCTION NOTIFY_USER_CHANGES() RETURNS TRIGGER AS $$
+DECLARE
+    PAYLOAD TEXT;
+BEGIN
+    FOR PAYLOAD IN
+        SELECT STRING_AGG(ID::TEXT, ',')
+        FROM (SELECT ID, (ROW_NUMBER() OVER () - 1) / 200 AS CHUNK FROM CHANGED_USERS) CHUNKS
+        GROUP BY CHUNK
+    LOOP
+        PERFORM pg_notify('user_changes', PAYLOAD);
+    END LOOP;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER USERS_NOTIFY_INSERT
+    AFTER INSERT ON USERS
+    REFERENCING NEW TABLE AS CHANGED_USERS
+    FOR EACH STATEMENT EXECUTE FUNCTION NOTIFY_USER_CHANGES();
+
+CREATE TRIGGER USERS_NOTIFY_UPDATE
+    AFTER UPDATE ON USERS
+    REFERENCING NEW TABLE AS CHANGED_USERS
+    FOR EACH STATEMENT EXECUTE FUNCTION NOTIFY_USER_CHANGES();
+
+CREATE TRIGGER USERS_NOTIFY_DELETE
+    AFTER DELETE ON USERS
+    REFERENCING OLD TABLE AS CHANGED_USERS
+    FOR EACH STATEMENT EXECUTE FUNCTION NOTIFY_USER_CHANGES();
@@ -0,0 +1,3 @@
+-- Search of users by the prefix of their names ignoring case reads a range of this index in its order.
+-- The "C" collation compares bytes, so the range of names starting with a prefix is contiguous whatever the database locale is
+CREATE INDEX CONCURRENTLY IDX_USERS_LOWER_NAME ON USERS ((LOWER(NAME) COLLATE "C"), ID);
@@ -0,0 +1,2 @@
+-- The default is not volatile, so existing users get the time of the migration without rewriting the table
+ALTER TABLE USERS ADD COLUMN UPDATED_AT TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP;
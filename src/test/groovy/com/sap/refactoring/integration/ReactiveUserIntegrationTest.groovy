@@ -0,0 +1,135 @@
+package com.sap.refactoring.integration
+
+import com.sap.refactoring.JavaRefactoringTestApplication
+import com.sap.refactoring.models.User
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.boot.test.web.client.TestRestTemplate
+import org.springframework.boot.test.web.server.LocalServerPort
+import org.springframework.core.ParameterizedTypeReference
+import org.springframework.http.HttpEntity
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpMethod
+import org.springframework.http.HttpStatusCode
+import org.springframework.http.MediaType
+import org.springframework.http.ResponseEntity
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.context.ContextConfiguration
+import spock.lang.Specification
+
+import static org.assertj.core.api.Assertions.assertThat
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "users.reactive.r2dbc.url=r2dbc:pool:postgresql://localhost:5432/JAVA_REFACTOR")
+@ContextConfiguration(classes = JavaRefactoringTestApplication)
+@ActiveProfiles("local")
+class ReactiveUserIntegrationTest extends Specification {
+    @LocalServerPort
+    int port
+
+    @Autowired
+    TestRestTemplate restTemplate
+
+    def "should create, update and delete a user over r2dbc"() {
+        given:
+        def newUser = new User(name: 'fake', email: 'reactive@email.com', roles: ['role', 'reactive'])
+
+        when:
+        ResponseEntity<User> postResponse = restTemplate.exchange(
+                "http://localhost:${port}/reactive/users",
+                HttpMethod.POST,
+                new HttpEntity<>(newUser),
+                User.class
+        )
+        def uuid = postResponse.body.id.toString()
+
+        then:
+        assertThat(postResponse.getStatusCode().isSameCodeAs(HttpStatusCode.valueOf(201))).isTrue()
+
+        when: 'the user is read by the blocking api'
+        ResponseEntity<User> getResponse = restTemplate.exchange(
+                "http://localhost:${port}/users/${uuid}",
+                HttpMethod.GET,
+                null,
+                User.class
+        )
+
+        then:
+        assertThat(getResponse.body.roles).containsExactlyInAnyOrder('role', 'reactive')
+
+        when: 'the same email is used again'
+        ResponseEntity<Map> duplicateResponse = restTemplate.exchange(
+                "http://localhost:${port}/reactive/users",
+                HttpMethod.POST,
+                new HttpEntity<>(newUser),
+                Map.class
+        )
+
+        then:
+        assertThat(duplicateResponse.getStatusCode().isSameCodeAs(HttpStatusCode.valueOf(400))).isTrue()
+
+        when: 'the user is updated'
+        ResponseEntity<User> putResponse = restTemplate.exchange(
+                "http://localhost:${port}/reactive/users/${uuid}",
+                HttpMethod.PUT,
+                new HttpEntity<>(new User(name: 'updated', email: 'reactive@email.com', roles: ['role'])),
+                User.class
+        )
+        ResponseEntity<User> updatedResponse = restTemplate.exchange(
+                "http://localhost:${port}/reactive/users/${uuid}",
+                HttpMethod.GET,
+                null,
+                User.class
+        )
+
+        then:
+        assertThat(putResponse.getStatusCode().is2xxSuccessful()).isTrue()
+        assertThat(updatedResponse.body)
+                .extracting("name", "roles")
+                .containsExactly('updated', ['role'])
+
+        when: 'the user is deleted'
+        restTemplate.exchange("http://localhost:${port}/reactive/users/${uuid}", HttpMethod.DELETE, null, Void)
+        ResponseEntity<Void> deletedResponse = restTemplate.exchange(
+                "http://localhost:${port}/reactive/users/${uuid}",
+                HttpMethod.GET,
+                null,
+                Void
+        )
+
+        then:
+        assertThat(deletedResponse.getStatusCode().isSameCodeAs(HttpStatusCode.valueOf(404))).isTrue()
+    }
+
+    def "should stream all users as newline delimited json"() {
+        given:
+        def createdUuids = (1..3).collect {restTemplate.exchange(
+                "http://localhost:${port}/reactive/users",
+                HttpMethod.POST,
+                new HttpEntity<>(new User(name: 'fake', email: "reactive${it}@email.com", roles: ['role'])),
+                User.class
+        ).body.id.toString()}
+
+        when:
+        def headers = new HttpHeaders()
+        headers.setAccept([MediaType.APPLICATION_NDJSON])
+        ResponseEntity<String> response = restTemplate.exchange(
+                "http://localhost:${port}/reactive/users",
+                HttpMethod.GET,
+                new HttpEntity<>(headers),
+                String
+        )
+
+        then:
+        assertThat(response.body.readLines().findAll { !it.isBlank() }.size()).isGreaterThanOrEqualTo(3)
+        createdUuids.each { assertThat(response.body).contains(it) }
+
+        cleanup:
+        createdUuids.each {restTemplate.exchange(
+                "http://localhost:${port}/reactive/users/${it}",
+                HttpMethod.DELETE,
+                null,
+                Void
+        )}
+    }
+}
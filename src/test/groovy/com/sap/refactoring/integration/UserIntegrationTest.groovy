@@ -1,5 +1,9 @@
 package com.sap.refactoring.integration
 
+import com.fasterxml.jackson.core.type.TypeReference
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper
 import com.sap.refactoring.JavaRefactoringTestApplication
 import com.sap.refactoring.models.User
 import org.springframework.beans.factory.annotation.Autowired
@@ -8,9 +12,11 @@ import org.springframework.boot.test.web.client.TestRestTemplate
 import org.springframework.boot.test.web.server.LocalServerPort
 import org.springframework.core.ParameterizedTypeReference
 import org.springframework.http.HttpEntity
+import org.springframework.http.HttpHeaders
 import org.springframework.http.HttpMethod
 import org.springframework.http.HttpRequest
 import org.springframework.http.HttpStatusCode
+import org.springframework.http.MediaType
 import org.springframework.http.ResponseEntity
 import org.springframework.http.client.ClientHttpRequestExecution
 import org.springframework.http.client.ClientHttpRequestInterceptor
@@ -21,7 +27,7 @@ import spock.lang.Specification
 
 import static org.assertj.core.api.Assertions.assertThat
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "users.hibernate-statistics=true")
 @ContextConfiguration(classes = JavaRefactoringTestApplication)
 @ActiveProfiles("local")
 class UserIntegrationTest extends Specification {
@@ -115,6 +121,253 @@ class UserIntegrationTest extends Specification {
         )}
     }
 
+    def "should get users in a binary format when it is accepted"(String mediaType, ObjectMapper mapper) {
+        given:
+        def user = [name: 'binary', email: "binary-${UUID.randomUUID()}@email.com", roles: ['role']]
+        def uuid = restTemplate.postForEntity("http://localhost:${port}/users", user, User).body.id
+
+        when:
+        def headers = new HttpHeaders()
+        headers.setAccept([MediaType.parseMediaType(mediaType)])
+        ResponseEntity<byte[]> response = restTemplate.exchange(
+                "http://localhost:${port}/users?name=binary",
+                HttpMethod.GET,
+                new HttpEntity<>(headers),
+                byte[].class
+        )
+
+        then:
+        response.statusCode == HttpStatusCode.valueOf(200)
+        response.headers.getContentType().isCompatibleWith(MediaType.parseMediaType(mediaType))
+        response.headers.getVary() == [HttpHeaders.ACCEPT]
+        mapper.readValue(response.body, new TypeReference<List<User>>() {}).collect { it.id }.contains(uuid)
+
+        cleanup:
+        restTemplate.delete("http://localhost:${port}/users/${uuid}")
+
+        where:
+        mediaType                      | mapper
+        'application/x-jackson-smile'  | new SmileMapper()
+        'application/cbor'             | new CBORMapper()
+    }
+
+    def "should get users page by page"() {
+        given:
+        def users = [
+                [name: 'fake', email: 'fake1@email.com', roles: ['role']],
+                [name: 'fake', email: 'fake2@email.com', roles: ['role']],
+                [name: 'anotherFake', email: 'fake3@email.com', roles: ['role']]
+        ]
+
+        def createdUuids = users.collect {restTemplate.exchange(
+                "http://localhost:${port}/users",
+                HttpMethod.POST,
+                new HttpEntity<>(it),
+                User.class
+        ).body.id.toString()}
+
+        when: 'following the next links'
+        def pagedUuids = []
+        def nextUrl = "/users?limit=2"
+        while (nextUrl != null) {
+            ResponseEntity<Map> pageResponse = restTemplate.getForEntity("http://localhost:${port}${nextUrl}", Map)
+            assertThat(pageResponse.body.items.size()).isLessThanOrEqualTo(2)
+            pagedUuids += pageResponse.body.items.collect {it.id}
+            def link = pageResponse.getHeaders().getFirst(HttpHeaders.LINK)
+            nextUrl = link == null ? null : link.substring(link.indexOf('<') + 1, link.indexOf('>'))
+            assertThat(pageResponse.body.nextCursor == null).isEqualTo(nextUrl == null)
+        }
+
+        then: 'every user is returned exactly once'
+        assertThat(pagedUuids).containsAll(createdUuids)
+        assertThat(pagedUuids).doesNotHaveDuplicates()
+
+        cleanup:
+        createdUuids.forEach {restTemplate.exchange(
+                "http://localhost:${port}/users/${it}",
+                HttpMethod.DELETE,
+                null,
+                Void
+        )}
+    }
+
+    def "should expose metrics of every layer on the prometheus endpoint"() {
+        given: 'a missing user is requested'
+        restTemplate.getForEntity("http://localhost:${port}/users/${UUID.randomUUID()}", String)
+
+        when:
+        def response = restTemplate.getForEntity("http://localhost:${port}/actuator/prometheus", String)
+
+        then:
+        response.statusCode == HttpStatusCode.valueOf(200)
+        ['controller', 'service', 'dao'].each {
+            assertThat(response.body).contains("users_operation_seconds_count{class=").contains("layer=\"${it}\"")
+        }
+        assertThat(response.body).contains('users_errors_total{').contains('exception="NotFoundException"')
+        assertThat(response.body).contains('hibernate_statements_total')
+    }
+
+    def "should find users by role page by page"() {
+        given:
+        def users = [
+                [name: 'fake', email: 'fake1@email.com', roles: ['role', 'auditor']],
+                [name: 'fake', email: 'fake2@email.com', roles: ['auditor']],
+                [name: 'anotherFake', email: 'fake3@email.com', roles: ['role']]
+        ]
+
+        def createdUuids = users.collect {restTemplate.exchange(
+                "http://localhost:${port}/users",
+                HttpMethod.POST,
+                new HttpEntity<>(it),
+                User.class
+        ).body.id.toString()}
+
+        when: 'following the next links'
+        def pagedUuids = []
+        def nextUrl = "/users?role=auditor&limit=1"
+        while (nextUrl != null) {
+            ResponseEntity<Map> pageResponse = restTemplate.getForEntity("http://localhost:${port}${nextUrl}", Map)
+            pagedUuids += pageResponse.body.items.collect {it.id}
+            def cursor = pageResponse.body.nextCursor
+            nextUrl = cursor == null ? null : "/users?role=auditor&limit=1&cursor=${cursor}"
+        }
+
+        then: 'only the users with the role are returned'
+        assertThat(pagedUuids).containsExactlyInAnyOrder(createdUuids[0], createdUuids[1])
+
+        cleanup:
+        createdUuids.forEach {restTemplate.exchange(
+                "http://localhost:${port}/users/${it}",
+                HttpMethod.DELETE,
+                null,
+                Void
+        )}
+    }
+
+    def "should find users by the prefix of their names ignoring case"() {
+        given:
+        def prefix = "Prefix${UUID.randomUUID().toString().substring(0, 8)}"
+        def users = [
+                [name: "${prefix}-Bob", email: "${prefix}1@email.com", roles: ['role']],
+                [name: "${prefix.toUpperCase()}-alice", email: "${prefix}2@email.com", roles: ['role']],
+                [name: "other${prefix}", email: "${prefix}3@email.com", roles: ['role']]
+        ]
+
+        def createdUuids = users.collect {restTemplate.exchange(
+                "http://localhost:${port}/users",
+                HttpMethod.POST,
+                new HttpEntity<>(it),
+                User.class
+        ).body.id.toString()}
+
+        when:
+        ResponseEntity<Collection<User>> response = restTemplate.exchange(
+                "http://localhost:${port}/users?namePrefix=${prefix.toLowerCase()}&limit=10",
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<Collection<User>>(){}
+        )
+
+        then: 'the matching users are returned in the order of their names'
+        response.statusCode.value() == 200
+        response.body.collect {it.getId().toString()} == [createdUuids[1], createdUuids[0]]
+
+        cleanup:
+        createdUuids.forEach {restTemplate.exchange(
+                "http://localhost:${port}/users/${it}",
+                HttpMethod.DELETE,
+                null,
+                Void
+        )}
+    }
+
+    def "should return only the selected fields of users"() {
+        given:
+        def createdUuid = restTemplate.exchange(
+                "http://localhost:${port}/users",
+                HttpMethod.POST,
+                new HttpEntity<>([name: 'fields', email: 'fields@email.com', roles: ['role']]),
+                User.class
+        ).body.id.toString()
+
+        when:
+        ResponseEntity<List<Map<String, Object>>> usersResponse = restTemplate.exchange(
+                "http://localhost:${port}/users?fields=id,email",
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<Map<String, Object>>>(){}
+        )
+        ResponseEntity<Map<String, Object>> userResponse = restTemplate.exchange(
+                "http://localhost:${port}/users/${createdUuid}?fields=name",
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<Map<String, Object>>(){}
+        )
+        ResponseEntity<String> unknownFieldResponse = restTemplate.exchange(
+                "http://localhost:${port}/users?fields=password",
+                HttpMethod.GET,
+                null,
+                String
+        )
+
+        then:
+        usersResponse.statusCode.value() == 200
+        usersResponse.body.find {it.id == createdUuid} == [id: createdUuid, email: 'fields@email.com']
+        userResponse.statusCode.value() == 200
+        userResponse.body == [name: 'fields']
+        unknownFieldResponse.statusCode.value() == 400
+
+        cleanup:
+        restTemplate.exchange(
+                "http://localhost:${port}/users/${createdUuid}",
+                HttpMethod.DELETE,
+                null,
+                Void
+        )
+    }
+
+    def "should answer conditional requests for a user and users found by name with 304 until they change"() {
+        given:
+        def name = "conditional-${UUID.randomUUID()}".toString()
+        def createdUser = restTemplate.exchange(
+                "http://localhost:${port}/users",
+                HttpMethod.POST,
+                new HttpEntity<>([name: name, email: "${name}@email.com".toString(), roles: ['role']]),
+                User.class
+        ).body
+        def userResponse = restTemplate.getForEntity("http://localhost:${port}/users/${createdUser.id}", User)
+        def usersResponse = restTemplate.getForEntity("http://localhost:${port}/users?name=${name}", String)
+
+        expect:
+        userResponse.headers.getETag() == '"0"'
+        userResponse.headers.getLastModified() > 0
+        usersResponse.headers.getETag().startsWith('W/')
+        conditionalGet("/users/${createdUser.id}", HttpHeaders.IF_NONE_MATCH, '"0"') == 304
+        conditionalGet("/users/${createdUser.id}", HttpHeaders.IF_MODIFIED_SINCE, userResponse.headers.getFirst(HttpHeaders.LAST_MODIFIED)) == 304
+        conditionalGet("/users?name=${name}", HttpHeaders.IF_NONE_MATCH, usersResponse.headers.getETag()) == 304
+
+        when:
+        createdUser.roles = ['role', 'admin']
+        restTemplate.exchange(
+                "http://localhost:${port}/users/${createdUser.id}",
+                HttpMethod.PUT,
+                new HttpEntity<>(createdUser),
+                User.class
+        )
+
+        then:
+        conditionalGet("/users/${createdUser.id}", HttpHeaders.IF_NONE_MATCH, '"0"') == 200
+        conditionalGet("/users?name=${name}", HttpHeaders.IF_NONE_MATCH, usersResponse.headers.getETag()) == 200
+
+        cleanup:
+        restTemplate.exchange(
+                "http://localhost:${port}/users/${createdUser.id}",
+                HttpMethod.DELETE,
+                null,
+                Void
+        )
+    }
+
     def "should create a new user"() {
         given:
         def newUser = new User(name: 'fake', email: 'fake@email.com', roles: ['role'])
@@ -158,6 +411,64 @@ class UserIntegrationTest extends Specification {
         )
     }
 
+    def "should create users in bulk"() {
+        given:
+        def newUsers = [
+                [name: 'fake', email: 'fake1@email.com', roles: ['role']],
+                [name: 'fake', email: 'fake2@email.com', roles: ['role', 'admin']],
+                [name: 'fake', email: 'fake1@email.com', roles: ['admin']]
+        ]
+
+        when:
+        ResponseEntity<List<Map>> postResponse = restTemplate.exchange(
+                "http://localhost:${port}/users/batch",
+                HttpMethod.POST,
+                new HttpEntity<>(newUsers),
+                new ParameterizedTypeReference<List<Map>>(){}
+        )
+
+        then:
+        assertThat(postResponse.getStatusCode().is2xxSuccessful()).isTrue()
+        postResponse.body.collect { it.status } == ['CREATED', 'CREATED', 'DUPLICATE']
+        postResponse.body.collect { it.email } == newUsers.collect { it.email }
+
+        when: "request for the created users"
+        def createdUuids = postResponse.body.findAll { it.user != null }.collect { it.user.id }
+        def foundUsers = createdUuids.collect { restTemplate.exchange(
+                "http://localhost:${port}/users/${it}",
+                HttpMethod.GET,
+                null,
+                User.class
+        ).body }
+
+        then:
+        foundUsers.collect { it.email } == ['fake1@email.com', 'fake2@email.com']
+
+        cleanup:
+        createdUuids?.each { restTemplate.exchange(
+                "http://localhost:${port}/users/${it}",
+                HttpMethod.DELETE,
+                null,
+                Void
+        )}
+    }
+
+    def "should not create users in bulk when one of them is invalid"() {
+        when:
+        ResponseEntity<Map> postResponse = restTemplate.exchange(
+                "http://localhost:${port}/users/batch",
+                HttpMethod.POST,
+                new HttpEntity<>([
+                        [name: 'fake', email: 'fake1@email.com', roles: ['role']],
+                        [name: 'fake', email: 'fakeemail.com', roles: ['role']]
+                ]),
+                Map.class
+        )
+
+        then:
+        assertThat(postResponse.getStatusCode().isSameCodeAs(HttpStatusCode.valueOf(400))).isTrue()
+    }
+
     def "should not create a new user when email is duplicated"() {
         given:
         def newUser1 = new User(name: 'fake', email: 'fake@email.com', roles: ['role'])
@@ -205,12 +516,13 @@ class UserIntegrationTest extends Specification {
         assertThat(response.getStatusCode().isSameCodeAs(HttpStatusCode.valueOf(status))).isTrue()
 
         where:
-        user                                                    | status
-        [name: 'fake', email: 'fakeemail.com', roles: ['role']] | 400
-        [email: 'fake@email.com', roles: ['role']]              | 400
-        [name: 'fake', email: 'fake@email.com', roles: []]      | 400
-        [name: 'fake', roles: ['role']]                         | 400
-        [roles: ['role']]                                       | 400
+        user                                                           | status
+        [name: 'fake', email: 'fakeemail.com', roles: ['role']]        | 400
+        [email: 'fake@email.com', roles: ['role']]                     | 400
+        [name: 'fake', email: 'fake@email.com', roles: []]             | 400
+        [name: 'fake', email: 'fake@email.com', roles: ['role', null]] | 400
+        [name: 'fake', roles: ['role']]                                | 400
+        [roles: ['role']]                                              | 400
     }
 
     def "should update a user"() {
@@ -262,6 +574,60 @@ class UserIntegrationTest extends Specification {
         )
     }
 
+    def "should update and delete a user only if it has the version given by If-Match"() {
+        given:
+        def user = [name: 'fake', email: 'fake@email.com', roles: ['role']]
+        ResponseEntity<User> postResponse = restTemplate.exchange(
+                "http://localhost:${port}/users",
+                HttpMethod.POST,
+                new HttpEntity<>(user),
+                User.class
+        )
+        def uuid = postResponse.getBody().id.toString()
+        def eTag = restTemplate.getForEntity("http://localhost:${port}/users/${uuid}", User).getHeaders().getETag()
+
+        when: "the user is updated based on the current ETag"
+        def headers = new HttpHeaders()
+        headers.setIfMatch(eTag)
+        ResponseEntity<User> putResponse = restTemplate.exchange(
+                "http://localhost:${port}/users/${uuid}",
+                HttpMethod.PUT,
+                new HttpEntity<>(user + [name: 'newName'], headers),
+                User.class
+        )
+
+        then: "it gets a new ETag"
+        putResponse.statusCode == HttpStatusCode.valueOf(200)
+        putResponse.getHeaders().getETag() != eTag
+
+        when: "the user is updated and deleted based on the old ETag"
+        ResponseEntity<String> stalePutResponse = restTemplate.exchange(
+                "http://localhost:${port}/users/${uuid}",
+                HttpMethod.PUT,
+                new HttpEntity<>(user + [name: 'staleName'], headers),
+                String
+        )
+        ResponseEntity<Void> staleDeleteResponse = restTemplate.exchange(
+                "http://localhost:${port}/users/${uuid}",
+                HttpMethod.DELETE,
+                new HttpEntity<>(headers),
+                Void
+        )
+
+        then: "the preconditions fail and the user keeps the new name"
+        stalePutResponse.statusCode == HttpStatusCode.valueOf(412)
+        staleDeleteResponse.statusCode == HttpStatusCode.valueOf(412)
+        restTemplate.getForEntity("http://localhost:${port}/users/${uuid}", User).getBody().name == 'newName'
+
+        cleanup:
+        restTemplate.exchange(
+                "http://localhost:${port}/users/${uuid}",
+                HttpMethod.DELETE,
+                null,
+                Void
+        )
+    }
+
     def "should not update a user when it tries to change email"() {
         given:
         def user = new User(name: 'fake', email: 'fake@email.com', roles: ['role'])
@@ -310,4 +676,15 @@ class UserIntegrationTest extends Specification {
                 Void
         )
     }
-}
\ No newline at end of file
+
+    private int conditionalGet(String path, String header, String value) {
+        def headers = new HttpHeaders()
+        headers.set(header, value)
+        restTemplate.exchange(
+                "http://localhost:${port}${path}",
+                HttpMethod.GET,
+                new HttpEntity<>(headers),
+                String
+        ).statusCode.value()
+    }
+}
@@ -0,0 +1,59 @@
+package com.sap.refactoring.integration
+
+import com.sap.refactoring.JavaRefactoringTestApplication
+import com.sap.refactoring.exceptions.NotFoundException
+import com.sap.refactoring.models.User
+import com.sap.refactoring.persistence.UserDao
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.context.ContextConfiguration
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+/**
+ * Checks that cached users are evicted when another instance, here a plain statement, changes them in the database
+ */
+@SpringBootTest(properties = ["users.cache.enabled=true", "users.invalidation.enabled=true"])
+@ContextConfiguration(classes = JavaRefactoringTestApplication)
+@ActiveProfiles("local")
+class UserInvalidationIntegrationTest extends Specification {
+    @Autowired
+    UserDao userDao
+
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    PollingConditions conditions = new PollingConditions(timeout: 5)
+
+    def "should evict a cached user changed by another instance"() {
+        given: 'a cached user'
+        def user = userDao.saveUser(User.builder()
+                .name("invalidation")
+                .email("invalidation-${UUID.randomUUID()}@email.com")
+                .roles(["USER"])
+                .build())
+        userDao.getUserById(user.id.toString(), true)
+
+        when:
+        jdbcTemplate.update("UPDATE USERS SET NAME = ?, VERSION = VERSION + 1 WHERE ID = ?", "invalidation changed", user.id)
+
+        then:
+        conditions.eventually {
+            assert userDao.getUserById(user.id.toString(), true).name == "invalidation changed"
+        }
+
+        when:
+        jdbcTemplate.update("DELETE FROM USERS WHERE ID = ?", user.id)
+
+        then:
+        conditions.eventually {
+            try {
+                userDao.getUserById(user.id.toString(), true)
+                assert false
+            } catch (NotFoundException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.sap.refactoring.integration
+
+import com.sap.refactoring.JavaRefactoringTestApplication
+import com.sap.refactoring.models.User
+import com.sap.refactoring.persistence.db.DataBaseUserDao
+import jakarta.persistence.EntityManagerFactory
+import org.hibernate.SessionFactory
+import org.hibernate.stat.Statistics
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.context.ContextConfiguration
+import spock.lang.Specification
+
+/**
+ * Checks that reading users does not issue a statement per user to load roles,
+ * that reading users without roles or versions of users does not touch roles at all and that deleting a user takes a single statement
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@ContextConfiguration(classes = JavaRefactoringTestApplication)
+@ActiveProfiles("local")
+class UserStatementCountIntegrationTest extends Specification {
+    @Autowired
+    DataBaseUserDao userDao
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory
+
+    Statistics statistics
+    String name
+    List<User> createdUsers = []
+
+    def setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory).statistics
+        name = "statementCount-${UUID.randomUUID()}"
+    }
+
+    def cleanup() {
+        createdUsers.each { userDao.deleteUser(it) }
+    }
+
+    def "should read users with roles in a constant number of statements"(Closure<Collection<User>> read) {
+        given: 'one user'
+        createUsers(1)
+
+        when:
+        statistics.clear()
+        def foundForOneUser = read(this)
+        def statementsForOneUser = statistics.prepareStatementCount
+
+        then:
+        foundForOneUser.size() >= 1
+
+        when: 'more users'
+        createUsers(10)
+        statistics.clear()
+        def foundForManyUsers = read(this)
+
+        then:
+        foundForManyUsers.size() >= 10
+        statistics.prepareStatementCount == statementsForOneUser
+
+        where:
+        read << [
+                { spec -> spec.userDao.findUsersByName(spec.name, true) },
+                { spec -> spec.userDao.getUsersPage(null, 50, true) },
+                { spec -> spec.userDao.getAllUsers(true) },
+                { spec ->
+                    def users = []
+                    spec.userDao.forEachUser { users << it }
+                    users
+                }
+        ]
+    }
+
+    def "should read users without roles by a single statement"(Closure<Collection<User>> read) {
+        given:
+        createUsers(3)
+
+        when:
+        statistics.clear()
+        def found = read(this)
+
+        then:
+        found.size() >= 3
+        found.every { it.roles.isEmpty() }
+        statistics.prepareStatementCount == 1
+
+        where:
+        read << [
+                { spec -> spec.userDao.getUsersPage(null, 50, false) },
+                { spec -> spec.userDao.getAllUsers(false) },
+                { spec -> spec.userDao.findUsersByName(spec.name, false) },
+                { spec -> spec.userDao.findUsersByNamePrefix(spec.name, 50, false) },
+                { spec -> spec.userDao.findUsersByRole('role', null, 50, false) },
+                { spec ->
+                    def users = []
+                    spec.userDao.forEachUser({ users << it }, false)
+                    users
+                }
+        ]
+    }
+
+    def "should read versions of users by a single statement"() {
+        given:
+        createUsers(3)
+        def user = createdUsers.first()
+
+        when:
+        statistics.clear()
+        def version = userDao.getUserVersion(user.id)
+
+        then:
+        version.get().version == 0L
+        version.get().updatedAt != null
+        statistics.prepareStatementCount == 1
+
+        when:
+        statistics.clear()
+        def versions = userDao.findUserVersionsByName(name)
+
+        then:
+        versions*.id as Set == createdUsers*.id as Set
+        statistics.prepareStatementCount == 1
+    }
+
+    def "should delete a user by a single statement"(Long version) {
+        given:
+        createUsers(1)
+        def user = createdUsers.first()
+
+        when:
+        statistics.clear()
+        def deleted = userDao.deleteUserById(user.id, version)
+
+        then:
+        deleted
+        statistics.prepareStatementCount == 1
+        !userDao.deleteUserById(user.id, null)
+
+        where:
+        version << [null, 0L]
+    }
+
+    private void createUsers(int count) {
+        count.times {
+            createdUsers << userDao.saveUser(new User(
+                    name: name,
+                    email: "${UUID.randomUUID()}@email.com",
+                    roles: ['role', 'admin']))
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.sap.refactoring.integration
+
+import com.sap.refactoring.JavaRefactoringTestApplication
+import com.sap.refactoring.exceptions.NotFoundException
+import com.sap.refactoring.models.User
+import com.sap.refactoring.persistence.db.DataBaseUserDao
+import com.sap.refactoring.persistence.tiered.TieredUserDao
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.context.ContextConfiguration
+import spock.lang.Specification
+
+/**
+ * Checks that modifications made in memory are written to the database with their ids and versions
+ */
+@SpringBootTest(properties = "users.write-behind.flush-interval=1h")
+@ContextConfiguration(classes = JavaRefactoringTestApplication)
+@ActiveProfiles(["local", "write-behind"])
+class WriteBehindIntegrationTest extends Specification {
+    @Autowired
+    TieredUserDao userDao
+
+    @Autowired
+    DataBaseUserDao dataBaseUserDao
+
+    def "should write modifications of a user behind to the database"() {
+        given:
+        def user = userDao.saveUser(User.builder()
+                .name("writeBehind")
+                .email("writeBehind-${UUID.randomUUID()}@email.com")
+                .roles(["USER"])
+                .build())
+
+        when:
+        user.name = "writeBehind updated"
+        user.roles = ["USER", "ADMIN"]
+        def updated = userDao.updateUser(user)
+        userDao.flush()
+
+        then:
+        def written = dataBaseUserDao.getUserById(user.id.toString(), true)
+        written.name == "writeBehind updated"
+        written.roles.toSet() == ["USER", "ADMIN"].toSet()
+        written.version == updated.version
+
+        when:
+        userDao.deleteUser(updated)
+        userDao.flush()
+        dataBaseUserDao.getUserById(user.id.toString(), true)
+
+        then:
+        thrown(NotFoundException)
+    }
+}
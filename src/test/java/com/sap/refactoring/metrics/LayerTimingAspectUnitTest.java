@@ -0,0 +1,63 @@
+package com.sap.refactoring.metrics;
+
+import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.persistence.UserDao;
+import com.sap.refactoring.persistence.inmemory.InMemoryUserDao;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LayerTimingAspectUnitTest {
+    private MeterRegistry meterRegistry;
+    private UserDao userDao;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        final AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new InMemoryUserDao());
+        proxyFactory.addAspect(new LayerTimingAspect(meterRegistry));
+        userDao = proxyFactory.getProxy();
+    }
+
+    @Test
+    public void shouldTimeDaoMethods() {
+        userDao.saveUser(User.builder()
+                .name("John Doe")
+                .email("john.doe@example.com")
+                .roles(List.of("ADMIN"))
+                .build());
+
+        assertEquals(1, meterRegistry.get(LayerTimingAspect.TIMER_NAME)
+                .tag("layer", "dao")
+                .tag("class", "InMemoryUserDao")
+                .tag("method", "saveUser")
+                .tag("exception", "none")
+                .timer().count());
+        assertNull(meterRegistry.find(LayerTimingAspect.ERRORS_COUNTER_NAME).counter());
+    }
+
+    @Test
+    public void shouldCountMissingUsers() {
+        final String id = UUID.randomUUID().toString();
+
+        assertThrows(NotFoundException.class, () -> userDao.getUserById(id, true));
+
+        assertEquals(1, meterRegistry.get(LayerTimingAspect.TIMER_NAME)
+                .tag("method", "getUserById")
+                .tag("exception", "NotFoundException")
+                .timer().count());
+        assertEquals(1, meterRegistry.get(LayerTimingAspect.ERRORS_COUNTER_NAME)
+                .tag("layer", "dao")
+                .tag("method", "getUserById")
+                .tag("exception", "NotFoundException")
+                .counter().count());
+    }
+}
@@ -0,0 +1,29 @@
+package com.sap.refactoring.models;
+
+import com.sap.refactoring.exceptions.IllegalRequestException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserFieldUnitTest {
+
+    @Test
+    public void shouldSelectAllFieldsByDefault() {
+        assertEquals(Set.of(UserField.values()), UserField.parse(null));
+    }
+
+    @Test
+    public void shouldParseFields() {
+        assertEquals(Set.of(UserField.ID, UserField.EMAIL), UserField.parse(" email,id ,email"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", ",", "id,password", "ID"})
+    public void shouldRejectUnknownOrMissingFields(String fields) {
+        assertThrows(IllegalRequestException.class, () -> UserField.parse(fields));
+    }
+}
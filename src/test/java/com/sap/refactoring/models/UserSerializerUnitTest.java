@@ -0,0 +1,96 @@
+package com.sap.refactoring.models;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserSerializerUnitTest {
+    private static final TypeReference<List<User>> USERS = new TypeReference<>() {};
+
+    private final List<User> users = List.of(
+            User.builder()
+                    .id(UUID.randomUUID())
+                    .name("John Doe")
+                    .email("john.doe@example.com")
+                    .roles(List.of("ADMIN", "USER"))
+                    .version(3L)
+                    .build(),
+            User.builder()
+                    .email("new@example.com")
+                    .roles(List.of("USER"))
+                    .build());
+
+    @JsonSerialize(using = JsonSerializer.None.class)
+    private abstract static class BeanSerialized {
+    }
+
+    @Test
+    public void shouldWriteSameJsonAsBeanSerializer() throws Exception {
+        final ObjectMapper beanMapper = new ObjectMapper().addMixIn(User.class, BeanSerialized.class);
+
+        assertEquals(beanMapper.writerFor(USERS).writeValueAsString(users), new ObjectMapper().writerFor(USERS).writeValueAsString(users));
+    }
+
+    @Test
+    public void shouldNotWriteVersion() throws Exception {
+        assertFalse(new ObjectMapper().writeValueAsString(users.get(0)).contains("version"));
+    }
+
+    @Test
+    public void shouldWriteOnlySelectedFields() throws Exception {
+        final User user = users.get(0);
+
+        final String json = new ObjectMapper().writer(UserFieldsFilter.filterProvider(Set.of(UserField.EMAIL, UserField.ID)))
+                .writeValueAsString(user);
+
+        assertEquals("{\"id\":\"%s\",\"email\":\"%s\"}".formatted(user.getId(), user.getEmail()), json);
+    }
+
+    @Test
+    public void shouldWritePageWithSelectedFieldsOfUsers() throws Exception {
+        final User user = users.get(0);
+        final UUID nextCursor = UUID.randomUUID();
+
+        final JsonNode page = new ObjectMapper().readTree(new ObjectMapper()
+                .writer(UserFieldsFilter.filterProvider(Set.of(UserField.ID)))
+                .writeValueAsString(new UsersPage(List.of(user), nextCursor)));
+
+        assertEquals(nextCursor.toString(), page.get("nextCursor").asText());
+        assertEquals("[{\"id\":\"%s\"}]".formatted(user.getId()), page.get("items").toString());
+    }
+
+    @ParameterizedTest
+    @MethodSource("mappers")
+    public void shouldReadWrittenUsers(ObjectMapper mapper) throws Exception {
+        final Collection<User> readUsers = mapper.readValue(mapper.writerFor(USERS).writeValueAsBytes(users), USERS);
+
+        assertEquals(users, readUsers);
+    }
+
+    @Test
+    public void shouldWriteFewerBytesInBinaryFormats() throws Exception {
+        final int jsonLength = new ObjectMapper().writerFor(USERS).writeValueAsBytes(users).length;
+
+        assertTrue(new SmileMapper().writerFor(USERS).writeValueAsBytes(users).length < jsonLength);
+        assertTrue(new CBORMapper().writerFor(USERS).writeValueAsBytes(users).length < jsonLength);
+    }
+
+    private static Stream<ObjectMapper> mappers() {
+        return Stream.of(new ObjectMapper(), new SmileMapper(), new CBORMapper());
+    }
+}
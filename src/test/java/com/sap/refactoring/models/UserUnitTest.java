@@ -0,0 +1,48 @@
+package com.sap.refactoring.models;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserUnitTest {
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Test
+    public void shouldHaveNoRolesInsteadOfNull() {
+        assertEquals(List.of(), User.builder().roles(null).build().getRoles());
+        assertEquals(List.of(), new User().getRoles());
+
+        final User user = new User();
+        user.setRoles(null);
+        assertEquals(List.of(), user.getRoles());
+    }
+
+    @Test
+    public void shouldRejectNullRole() {
+        final User user = User.builder()
+                .name("Fake Name")
+                .email("fake@email.com")
+                .roles(Arrays.asList("admin", null))
+                .build();
+
+        final Set<ConstraintViolation<User>> violations = validator.validate(user);
+
+        assertEquals(1, violations.size());
+        assertTrue(violations.iterator().next().getPropertyPath().toString().startsWith("roles"));
+        assertThrows(UnsupportedOperationException.class, () -> user.getRoles().add("master"));
+    }
+
+    @Test
+    public void shouldShareImmutableRolesOfCopiedUser() {
+        final User user = User.builder().roles(List.of("admin")).build();
+
+        assertSame(user.getRoles(), new User(user).getRoles());
+    }
+}
@@ -0,0 +1,269 @@
+package com.sap.refactoring.persistence.cache;
+
+import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.exceptions.VersionConflictException;
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.models.UserVersion;
+import com.sap.refactoring.persistence.UserDao;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class CachingUserDaoUnitTest {
+    private static final UUID USER_ID = UUID.randomUUID();
+    private static final String NAME = "John Doe";
+
+    @Mock
+    private UserDao userDao;
+
+    private CachingUserDao cachingUserDao;
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        cachingUserDao = new CachingUserDao(userDao, 100, Duration.ofMinutes(1));
+        user = User.builder()
+                .id(USER_ID)
+                .name(NAME)
+                .email("john.doe@example.com")
+                .roles(List.of("ADMIN"))
+                .build();
+    }
+
+    @Test
+    public void shouldReadUserFromUnderlyingDaoOnlyOnce() {
+        when(userDao.getUserById(USER_ID.toString(), true)).thenReturn(user);
+
+        assertEquals(user, cachingUserDao.getUserById(USER_ID.toString(), true));
+        assertEquals(user, cachingUserDao.getUserById(USER_ID.toString(), true));
+
+        verify(userDao, times(1)).getUserById(USER_ID.toString(), true);
+    }
+
+    @Test
+    public void shouldTakeVersionOfCachedUserWithoutUnderlyingDao() {
+        final UserVersion version = new UserVersion(USER_ID, 3L, null);
+        when(userDao.getUserVersion(USER_ID)).thenReturn(Optional.of(version));
+        assertEquals(Optional.of(version), cachingUserDao.getUserVersion(USER_ID));
+
+        user.setVersion(3L);
+        when(userDao.getUserById(USER_ID.toString(), true)).thenReturn(user);
+        cachingUserDao.getUserById(USER_ID.toString(), true);
+        assertEquals(Optional.of(version), cachingUserDao.getUserVersion(USER_ID));
+
+        verify(userDao, times(1)).getUserVersion(USER_ID);
+    }
+
+    @Test
+    public void shouldReadUserWithoutRolesFromCacheWithoutCachingIt() {
+        final User userWithoutRoles = User.builder().id(USER_ID).name(NAME).email("john.doe@example.com").build();
+        when(userDao.getUserById(USER_ID.toString(), false)).thenReturn(userWithoutRoles);
+        assertEquals(userWithoutRoles, cachingUserDao.getUserById(USER_ID.toString(), false));
+
+        when(userDao.getUserById(USER_ID.toString(), true)).thenReturn(user);
+        assertEquals(user, cachingUserDao.getUserById(USER_ID.toString(), true));
+        assertEquals(user, cachingUserDao.getUserById(USER_ID.toString(), false));
+
+        verify(userDao, times(1)).getUserById(USER_ID.toString(), false);
+        verify(userDao, times(1)).getUserById(USER_ID.toString(), true);
+    }
+
+    @Test
+    public void shouldNotCacheMissingUser() {
+        when(userDao.getUserById(USER_ID.toString(), true)).thenThrow(new NotFoundException());
+
+        assertThrows(NotFoundException.class, () -> cachingUserDao.getUserById(USER_ID.toString(), true));
+        assertThrows(NotFoundException.class, () -> cachingUserDao.getUserById(USER_ID.toString(), true));
+
+        verify(userDao, times(2)).getUserById(USER_ID.toString(), true);
+    }
+
+    @Test
+    public void shouldNotAffectCachedUserWhenReturnedUserChanges() {
+        when(userDao.getUserById(USER_ID.toString(), true)).thenReturn(user);
+
+        cachingUserDao.getUserById(USER_ID.toString(), true).setName("new name");
+
+        assertEquals(NAME, cachingUserDao.getUserById(USER_ID.toString(), true).getName());
+    }
+
+    @Test
+    public void shouldReadUserAgainAfterUpdate() {
+        when(userDao.getUserById(USER_ID.toString(), true)).thenReturn(user);
+        when(userDao.updateUser(user)).thenReturn(user);
+
+        cachingUserDao.getUserById(USER_ID.toString(), true);
+        cachingUserDao.updateUser(user);
+        cachingUserDao.getUserById(USER_ID.toString(), true);
+
+        verify(userDao, times(2)).getUserById(USER_ID.toString(), true);
+    }
+
+    @Test
+    public void shouldReadUserAgainAfterVersionConflict() {
+        when(userDao.getUserById(USER_ID.toString(), true)).thenReturn(user);
+        when(userDao.updateUser(user)).thenThrow(new VersionConflictException("modified"));
+
+        cachingUserDao.getUserById(USER_ID.toString(), true);
+        assertThrows(VersionConflictException.class, () -> cachingUserDao.updateUser(user));
+        cachingUserDao.getUserById(USER_ID.toString(), true);
+
+        verify(userDao, times(2)).getUserById(USER_ID.toString(), true);
+    }
+
+    @Test
+    public void shouldReadUserAgainAfterDelete() {
+        when(userDao.getUserById(USER_ID.toString(), true)).thenReturn(user);
+
+        cachingUserDao.getUserById(USER_ID.toString(), true);
+        cachingUserDao.deleteUser(user);
+        cachingUserDao.getUserById(USER_ID.toString(), true);
+
+        verify(userDao, times(2)).getUserById(USER_ID.toString(), true);
+    }
+
+    @Test
+    public void shouldReadUserAgainAfterDeleteById() {
+        when(userDao.getUserById(USER_ID.toString(), true)).thenReturn(user);
+        when(userDao.deleteUserById(USER_ID, null)).thenReturn(true);
+
+        cachingUserDao.getUserById(USER_ID.toString(), true);
+        assertTrue(cachingUserDao.deleteUserById(USER_ID, null));
+        cachingUserDao.getUserById(USER_ID.toString(), true);
+
+        verify(userDao, times(2)).getUserById(USER_ID.toString(), true);
+    }
+
+    @Test
+    public void shouldFindUsersByNameInUnderlyingDaoOnlyOnce() {
+        when(userDao.findUsersByName(NAME, true)).thenReturn(List.of(user));
+
+        assertEquals(List.of(user), cachingUserDao.findUsersByName(NAME, true));
+        assertEquals(List.of(user), cachingUserDao.findUsersByName(NAME, true));
+
+        verify(userDao, times(1)).findUsersByName(NAME, true);
+    }
+
+    @Test
+    public void shouldFindUsersByNameAgainAfterUserWithSameNameIsSaved() {
+        final User newUser = User.builder().id(UUID.randomUUID()).name(NAME).build();
+        when(userDao.findUsersByName(NAME, true)).thenReturn(List.of(user));
+        when(userDao.saveUser(newUser)).thenReturn(newUser);
+
+        cachingUserDao.findUsersByName(NAME, true);
+        cachingUserDao.saveUser(newUser);
+        cachingUserDao.findUsersByName(NAME, true);
+
+        verify(userDao, times(2)).findUsersByName(NAME, true);
+    }
+
+    @Test
+    public void shouldFindUsersByOldNameAgainAfterRename() {
+        final User renamedUser = User.builder().id(USER_ID).name("new name").build();
+        when(userDao.findUsersByName(NAME, true)).thenReturn(List.of(user));
+        when(userDao.updateUser(renamedUser)).thenReturn(renamedUser);
+
+        cachingUserDao.findUsersByName(NAME, true);
+        cachingUserDao.updateUser(renamedUser);
+        final Collection<User> foundUsers = cachingUserDao.findUsersByName(NAME, true);
+
+        assertEquals(List.of(user), foundUsers);
+        verify(userDao, times(2)).findUsersByName(NAME, true);
+    }
+
+    @Test
+    public void shouldReadUserAgainWhenChangedByAnotherInstance() {
+        when(userDao.getUserById(USER_ID.toString(), true)).thenReturn(user);
+
+        cachingUserDao.getUserById(USER_ID.toString(), true);
+        cachingUserDao.usersChanged(Set.of(USER_ID));
+        cachingUserDao.getUserById(USER_ID.toString(), true);
+
+        verify(userDao, times(2)).getUserById(USER_ID.toString(), true);
+    }
+
+    @Test
+    public void shouldFindUsersByNameAgainWhenFoundUserIsChangedByAnotherInstance() {
+        when(userDao.findUsersByName(NAME, true)).thenReturn(List.of(user));
+
+        cachingUserDao.findUsersByName(NAME, true);
+        cachingUserDao.usersChanged(Set.of(USER_ID));
+        cachingUserDao.findUsersByName(NAME, true);
+
+        verify(userDao, times(2)).findUsersByName(NAME, true);
+    }
+
+    @Test
+    public void shouldFindUsersByNameAgainWhenUserWithSameNameIsChangedByAnotherInstance() {
+        final UUID otherId = UUID.randomUUID();
+        when(userDao.findUsersByName(NAME, true)).thenReturn(List.of(user));
+        when(userDao.getUsersByIds(Set.of(otherId))).thenReturn(List.of(User.builder().id(otherId).name(NAME).build()));
+
+        cachingUserDao.findUsersByName(NAME, true);
+        cachingUserDao.usersChanged(Set.of(otherId));
+        cachingUserDao.findUsersByName(NAME, true);
+
+        verify(userDao, times(2)).findUsersByName(NAME, true);
+    }
+
+    @Test
+    public void shouldKeepUsersByNameWhenUserWithOtherNameIsChangedByAnotherInstance() {
+        final UUID otherId = UUID.randomUUID();
+        when(userDao.findUsersByName(NAME, true)).thenReturn(List.of(user));
+        when(userDao.getUsersByIds(Set.of(otherId))).thenReturn(List.of(User.builder().id(otherId).name("other").build()));
+
+        cachingUserDao.findUsersByName(NAME, true);
+        cachingUserDao.usersChanged(Set.of(otherId));
+        cachingUserDao.findUsersByName(NAME, true);
+
+        verify(userDao, times(1)).findUsersByName(NAME, true);
+    }
+
+    @Test
+    public void shouldNotReadNamesOfChangedUsersWithoutCachedUsersByName() {
+        cachingUserDao.usersChanged(Set.of(USER_ID));
+
+        verify(userDao, never()).getUsersByIds(any());
+    }
+
+    @Test
+    public void shouldKeepUsersByNameNotContainingDeletedUser() {
+        final User otherUser = User.builder().id(UUID.randomUUID()).name("other").build();
+        when(userDao.findUsersByName(NAME, true)).thenReturn(List.of(user));
+        when(userDao.findUsersByName("other", true)).thenReturn(List.of(otherUser));
+        when(userDao.deleteUserById(USER_ID, null)).thenReturn(true);
+
+        cachingUserDao.findUsersByName(NAME, true);
+        cachingUserDao.findUsersByName("other", true);
+        cachingUserDao.deleteUserById(USER_ID, null);
+        cachingUserDao.findUsersByName(NAME, true);
+        cachingUserDao.findUsersByName("other", true);
+
+        verify(userDao, times(2)).findUsersByName(NAME, true);
+        verify(userDao, times(1)).findUsersByName("other", true);
+    }
+
+    @Test
+    public void shouldReadAllUsersAgainWhenChangesMightBeMissed() {
+        when(userDao.getUserById(USER_ID.toString(), true)).thenReturn(user);
+
+        cachingUserDao.getUserById(USER_ID.toString(), true);
+        cachingUserDao.allUsersChanged();
+        cachingUserDao.getUserById(USER_ID.toString(), true);
+
+        verify(userDao, times(2)).getUserById(USER_ID.toString(), true);
+    }
+}
@@ -2,11 +2,16 @@ package com.sap.refactoring.persistence.db;
 
 import com.sap.refactoring.exceptions.ConstraintViolationException;
 import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.exceptions.VersionConflictException;
 import com.sap.refactoring.models.User;
+import com.sap.refactoring.models.UserSaveResult;
+import com.sap.refactoring.models.UserVersion;
 import com.sap.refactoring.persistence.RoleEntity;
 import com.sap.refactoring.persistence.RoleRepository;
 import com.sap.refactoring.persistence.UserEntity;
 import com.sap.refactoring.persistence.UserRepository;
+import com.sap.refactoring.persistence.UserSummary;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,20 +21,36 @@ import org.junit.jupiter.params.provider.MethodSource;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.orm.jpa.JpaSystemException;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import java.sql.ResultSet;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.time.Instant;
+import java.util.Set;
 import java.util.UUID;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -46,6 +67,18 @@ public class DataBaseUserDaoUnitTest {
     @Mock
     private RoleRepository roleRepository;
 
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private RoleIdCache roleIdCache = new RoleIdCache(100);
+
     @InjectMocks
     private DataBaseUserDao dataBaseUserDao;
 
@@ -77,21 +110,22 @@ public class DataBaseUserDaoUnitTest {
         // Given new user without id
         user.setId(null);
 
-        when(roleRepository.findByName(ROLES.get(0))).thenReturn(Optional.empty());
-        when(roleRepository.findByName(ROLES.get(1))).thenReturn(Optional.of(RoleEntity
+        final RoleEntity existingRole = RoleEntity
                 .builder()
                 .id(ROLE_ID)
                 .name(ROLES.get(1))
-                .build()));
+                .build();
+        when(roleRepository.findAllByNameIn(Set.copyOf(ROLES))).thenReturn(List.of(existingRole));
+        when(roleRepository.getReferenceById(ROLE_ID)).thenReturn(existingRole);
 
-        when(userRepository.save(any(UserEntity.class))).thenReturn(userEntity);
+        when(userRepository.saveAndFlush(any(UserEntity.class))).thenReturn(userEntity);
 
         // when
         final User actualResult = dataBaseUserDao.saveUser(user);
 
         // then capture argument and assert on entity
         final ArgumentCaptor<UserEntity> captor = ArgumentCaptor.forClass(UserEntity.class);
-        verify(userRepository).save(captor.capture());
+        verify(userRepository).saveAndFlush(captor.capture());
 
         final UserEntity actualEntity = captor.getValue();
 
@@ -121,8 +155,105 @@ public class DataBaseUserDaoUnitTest {
         user.setId(null);
 
         // when save user an exception is thrown
-        when(userRepository.save(any(UserEntity.class))).thenThrow(new DataIntegrityViolationException(""));
+        when(userRepository.saveAndFlush(any(UserEntity.class))).thenThrow(new DataIntegrityViolationException(""));
         Assertions.assertThrows(ConstraintViolationException.class, () -> dataBaseUserDao.saveUser(user));
+
+        // then cached roles are not trusted anymore
+        verify(roleIdCache).invalidateAll();
+    }
+
+    @Test
+    public void shouldAttachCachedRolesWithoutQueryingThem() {
+        // Given all roles are cached
+        user.setId(null);
+        for (int i = 0; i < ROLES.size(); i++) {
+            final RoleEntity role = RoleEntity.builder().id(i).name(ROLES.get(i)).build();
+            roleIdCache.put(role);
+            when(roleRepository.getReferenceById(i)).thenReturn(role);
+        }
+        when(userRepository.saveAndFlush(any(UserEntity.class))).thenReturn(userEntity);
+
+        // when
+        dataBaseUserDao.saveUser(user);
+
+        // then roles are attached as references
+        verify(roleRepository, never()).findAllByNameIn(any());
+        verify(roleRepository, times(ROLES.size())).getReferenceById(any());
+    }
+
+    @Test
+    public void shouldQueryOnlyNotCachedRolesAtOnce() {
+        // Given only the first role is cached
+        user.setId(null);
+        final RoleEntity cachedRole = RoleEntity.builder().id(ROLE_ID).name(ROLES.get(0)).build();
+        roleIdCache.put(cachedRole);
+        when(roleRepository.getReferenceById(ROLE_ID)).thenReturn(cachedRole);
+        when(userRepository.saveAndFlush(any(UserEntity.class))).thenReturn(userEntity);
+
+        // when
+        dataBaseUserDao.saveUser(user);
+
+        // then
+        verify(roleRepository).findAllByNameIn(Set.of(ROLES.get(1)));
+    }
+
+    @Test
+    public void shouldSaveUsersInBulk() {
+        // Given one email exists and another one is repeated in the bulk
+        final User existingUser = User.builder().name(NAME).email("existing@example.com").roles(ROLES).build();
+        final User repeatedUser = User.builder().name(NAME).email(EMAIL).roles(ROLES).build();
+        when(userRepository.findExistingEmails(Set.of(EMAIL, existingUser.getEmail())))
+                .thenReturn(Set.of(existingUser.getEmail()));
+
+        insertUsersExcept();
+
+        // when
+        final List<UserSaveResult> results = dataBaseUserDao.saveUsers(List.of(user, existingUser, repeatedUser));
+
+        // then only the first user is inserted and the roles shared by users are queried once
+        verify(roleRepository, times(1)).findAllByNameIn(Set.copyOf(ROLES));
+        final ArgumentCaptor<Object> emails = ArgumentCaptor.forClass(Object.class);
+        verify(jdbcTemplate).query(startsWith("INSERT INTO USERS"), any(RowCallbackHandler.class), any(), any(), emails.capture());
+        assertArrayEquals(new String[]{EMAIL}, (String[]) emails.getValue());
+
+        assertEquals(List.of(UserSaveResult.Status.CREATED, UserSaveResult.Status.DUPLICATE, UserSaveResult.Status.DUPLICATE),
+                results.stream().map(UserSaveResult::getStatus).toList());
+        final User savedUser = results.get(0).getUser();
+        assertNotNull(savedUser.getId());
+        assertEquals(0L, savedUser.getVersion());
+        assertNotNull(savedUser.getUpdatedAt());
+        assertEquals(existingUser.getEmail(), results.get(1).getEmail());
+        assertNull(results.get(1).getUser());
+        verify(userRepository, never()).saveAll(any());
+    }
+
+    @Test
+    public void shouldReportEmailTakenConcurrentlyAsDuplicate() {
+        // Given the email of the second user is taken after the check
+        final User concurrentUser = User.builder().name(NAME).email("concurrent@example.com").roles(ROLES).build();
+        when(userRepository.findExistingEmails(Set.of(EMAIL, concurrentUser.getEmail()))).thenReturn(Set.of());
+        insertUsersExcept(concurrentUser.getEmail());
+
+        // when
+        final List<UserSaveResult> results = dataBaseUserDao.saveUsers(List.of(user, concurrentUser));
+
+        // then the bulk goes on and only the roles of the inserted user are inserted
+        assertEquals(List.of(UserSaveResult.Status.CREATED, UserSaveResult.Status.DUPLICATE),
+                results.stream().map(UserSaveResult::getStatus).toList());
+        assertEquals(concurrentUser.getEmail(), results.get(1).getEmail());
+        final ArgumentCaptor<List<Object[]>> userRoles = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(eq("INSERT INTO USER_ROLES (USER_ID, ROLE_ID) VALUES (?, ?)"), userRoles.capture());
+        assertEquals(ROLES.size(), userRoles.getValue().size());
+        assertTrue(userRoles.getValue().stream().allMatch(row -> results.get(0).getUser().getId().equals(row[0])));
+    }
+
+    @Test
+    public void shouldThrowExceptionWhenBulkInsertFails() {
+        doThrow(new DataIntegrityViolationException("")).when(jdbcTemplate)
+                .query(startsWith("INSERT INTO USERS"), any(RowCallbackHandler.class), any(), any(), any());
+
+        assertThrows(ConstraintViolationException.class, () -> dataBaseUserDao.saveUsers(List.of(user)));
+        verify(roleIdCache).invalidateAll();
     }
 
     @Test
@@ -131,7 +262,7 @@ public class DataBaseUserDaoUnitTest {
         when(userRepository.findAll()).thenReturn(List.of(userEntity));
 
         // when
-        final Collection<User> actualResult = dataBaseUserDao.getAllUsers();
+        final Collection<User> actualResult = dataBaseUserDao.getAllUsers(true);
 
         // then assert on dto
         assertEquals(1, actualResult.size());
@@ -150,19 +281,203 @@ public class DataBaseUserDaoUnitTest {
         when(userRepository.findAll()).thenReturn(List.of());
 
         // when
-        final Collection<User> actualResult = dataBaseUserDao.getAllUsers();
+        final Collection<User> actualResult = dataBaseUserDao.getAllUsers(true);
 
         // then assert on dto
         assertEquals(0, actualResult.size());
     }
 
+    @Test
+    public void shouldGetFirstUsersPage() {
+        //given
+        when(userRepository.findAllByOrderByIdAsc(Limit.of(10))).thenReturn(List.of(userEntity));
+
+        // when
+        final List<User> actualResult = dataBaseUserDao.getUsersPage(null, 10, true);
+
+        // then
+        assertEquals(1, actualResult.size());
+        assertEquals(USER_ID, actualResult.get(0).getId());
+    }
+
+    @Test
+    public void shouldGetNextUsersPage() {
+        //given
+        final UUID afterId = UUID.randomUUID();
+        when(userRepository.findAllByIdGreaterThanOrderByIdAsc(afterId, Limit.of(10))).thenReturn(List.of(userEntity));
+
+        // when
+        final List<User> actualResult = dataBaseUserDao.getUsersPage(afterId, 10, true);
+
+        // then
+        assertEquals(1, actualResult.size());
+        assertEquals(USER_ID, actualResult.get(0).getId());
+    }
+
+    @Test
+    public void shouldGetUsersByIdsInChunks() {
+        //given
+        final List<UUID> ids = IntStream.range(0, 1500).mapToObj(i -> UUID.randomUUID()).toList();
+        when(userRepository.findAllByIdIn(ids.subList(0, 1000))).thenReturn(List.of(userEntity));
+        when(userRepository.findAllByIdIn(ids.subList(1000, 1500))).thenReturn(List.of());
+
+        // when
+        final List<User> actualResult = dataBaseUserDao.getUsersByIds(ids);
+
+        // then
+        assertEquals(1, actualResult.size());
+        assertEquals(USER_ID, actualResult.get(0).getId());
+        verify(userRepository, times(2)).findAllByIdIn(any());
+    }
+
+    @Test
+    public void shouldGetUserVersionWithoutReadingUser() {
+        //given
+        final UserVersion version = new UserVersion(USER_ID, 3L, Instant.now());
+        when(userRepository.findVersionById(USER_ID)).thenReturn(Optional.of(version));
+
+        // when
+        final Optional<UserVersion> actualResult = dataBaseUserDao.getUserVersion(USER_ID);
+
+        // then
+        assertEquals(Optional.of(version), actualResult);
+        verify(userRepository, never()).findById(any());
+    }
+
+    @Test
+    public void shouldGetUsersPageWithoutRoles() {
+        //given
+        final UUID afterId = UUID.randomUUID();
+        when(userRepository.findAllByIdGreaterThanOrderByIdAsc(afterId, Limit.of(10), UserSummary.class))
+                .thenReturn(List.of(userSummary()));
+
+        // when
+        final List<User> actualResult = dataBaseUserDao.getUsersPage(afterId, 10, false);
+
+        // then
+        assertEquals(List.of(User.builder().id(USER_ID).name(NAME).email(EMAIL).build()), actualResult);
+        assertEquals(3L, actualResult.get(0).getVersion());
+        verify(userRepository, never()).findAllByIdGreaterThanOrderByIdAsc(afterId, Limit.of(10));
+    }
+
+    @Test
+    public void shouldGetAllUsersWithoutRoles() {
+        //given
+        when(userRepository.findAllProjectedBy(UserSummary.class)).thenReturn(List.of(userSummary()));
+
+        // when
+        final Collection<User> actualResult = dataBaseUserDao.getAllUsers(false);
+
+        // then
+        assertEquals(List.of(User.builder().id(USER_ID).name(NAME).email(EMAIL).build()), actualResult);
+        verify(userRepository, never()).findAll();
+    }
+
+    @Test
+    public void shouldGetUserByIdWithoutRoles() {
+        //given
+        when(userRepository.findProjectedById(USER_ID, UserSummary.class)).thenReturn(Optional.of(userSummary()));
+
+        // when
+        final User actualResult = dataBaseUserDao.getUserById(USER_ID.toString(), false);
+
+        // then
+        assertEquals(User.builder().id(USER_ID).name(NAME).email(EMAIL).build(), actualResult);
+        assertEquals(3L, actualResult.getVersion());
+        verify(userRepository, never()).findById(any());
+    }
+
+    @Test
+    public void shouldNotGetMissingUserByIdWithoutRoles() {
+        when(userRepository.findProjectedById(USER_ID, UserSummary.class)).thenReturn(Optional.empty());
+
+        assertThrows(NotFoundException.class, () -> dataBaseUserDao.getUserById(USER_ID.toString(), false));
+    }
+
+    @Test
+    public void shouldFindUsersByNameWithoutRoles() {
+        //given
+        when(userRepository.findAllByName(NAME, UserSummary.class)).thenReturn(List.of(userSummary()));
+
+        // when
+        final Collection<User> actualResult = dataBaseUserDao.findUsersByName(NAME, false);
+
+        // then
+        assertEquals(List.of(User.builder().id(USER_ID).name(NAME).email(EMAIL).build()), actualResult);
+        verify(userRepository, never()).findAllByName(NAME);
+    }
+
+    @Test
+    public void shouldFindUsersByRoleWithoutRoles() {
+        //given
+        final UserEntity lazyEntity = mock(UserEntity.class);
+        when(lazyEntity.getId()).thenReturn(USER_ID);
+        when(lazyEntity.getName()).thenReturn(NAME);
+        when(lazyEntity.getEmail()).thenReturn(EMAIL);
+        when(userRepository.findAllByRolesNameOrderByIdAsc("admin", Limit.of(10))).thenReturn(List.of(lazyEntity));
+
+        // when
+        final List<User> actualResult = dataBaseUserDao.findUsersByRole("admin", null, 10, false);
+
+        // then
+        assertEquals(List.of(User.builder().id(USER_ID).name(NAME).email(EMAIL).build()), actualResult);
+        verify(lazyEntity, never()).getRoles();
+    }
+
+    @Test
+    public void shouldForEachUserWithoutRoles() {
+        //given
+        when(userRepository.streamAllByOrderByIdAsc(UserSummary.class)).thenReturn(Stream.of(userSummary()));
+        final List<User> users = new ArrayList<>();
+
+        // when
+        dataBaseUserDao.forEachUser(users::add, false);
+
+        // then
+        assertEquals(List.of(User.builder().id(USER_ID).name(NAME).email(EMAIL).build()), users);
+        verify(userRepository, never()).streamAllByOrderByIdAsc();
+        verifyNoInteractions(entityManager);
+    }
+
+    @Test
+    public void shouldFindUsersByRolePageByPage() {
+        //given
+        final UUID afterId = UUID.randomUUID();
+        when(userRepository.findAllByRolesNameOrderByIdAsc("admin", Limit.of(10))).thenReturn(List.of(userEntity));
+        when(userRepository.findAllByRolesNameAndIdGreaterThanOrderByIdAsc("admin", afterId, Limit.of(10))).thenReturn(List.of());
+
+        // when
+        final List<User> firstPage = dataBaseUserDao.findUsersByRole("admin", null, 10, true);
+        final List<User> nextPage = dataBaseUserDao.findUsersByRole("admin", afterId, 10, true);
+
+        // then
+        assertEquals(List.of(USER_ID), firstPage.stream().map(User::getId).toList());
+        assertTrue(nextPage.isEmpty());
+    }
+
+    @Test
+    public void shouldPassStreamedUsersToConsumer() {
+        //given
+        when(userRepository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(userEntity));
+
+        // when
+        final List<User> consumedUsers = new ArrayList<>();
+        dataBaseUserDao.forEachUser(consumedUsers::add, true);
+
+        // then users are mapped and detached one by one
+        assertEquals(1, consumedUsers.size());
+        assertEquals(USER_ID, consumedUsers.get(0).getId());
+        assertTrue(consumedUsers.get(0).getRoles().containsAll(ROLES));
+        verify(entityManager).detach(userEntity);
+    }
+
     @Test
     public void shouldGetOneUser() {
         //given
         when(userRepository.findById(USER_ID)).thenReturn(Optional.of(userEntity));
 
         // when
-        final User actualResult = dataBaseUserDao.getUserById(USER_ID.toString());
+        final User actualResult = dataBaseUserDao.getUserById(USER_ID.toString(), true);
 
         // then assert on dto
         assertEquals(USER_ID, actualResult.getId());
@@ -178,38 +493,67 @@ public class DataBaseUserDaoUnitTest {
         when(userRepository.findById(USER_ID)).thenReturn(Optional.empty());
 
         // then
-        assertThrows(NotFoundException.class, () -> dataBaseUserDao.getUserById(USER_ID.toString()));
+        assertThrows(NotFoundException.class, () -> dataBaseUserDao.getUserById(USER_ID.toString(), true));
 
     }
 
     @Test
     public void shouldDeleteUser() {
+        when(userRepository.deleteDirectlyById(USER_ID)).thenReturn(1);
+
+        assertTrue(dataBaseUserDao.deleteUserById(USER_ID, null));
+        verify(userRepository, never()).findById(any());
+    }
+
+    @Test
+    public void shouldNotDeleteMissingUser() {
+        when(userRepository.deleteDirectlyByIdAndVersion(USER_ID, 2L)).thenReturn(0);
+        when(userRepository.existsById(USER_ID)).thenReturn(false);
+
+        assertFalse(dataBaseUserDao.deleteUserById(USER_ID, 2L));
+    }
+
+    @Test
+    public void shouldDeleteUserOfGivenVersion() {
+        user.setVersion(2L);
+        when(userRepository.deleteDirectlyByIdAndVersion(USER_ID, 2L)).thenReturn(1);
+
         dataBaseUserDao.deleteUser(user);
-        verify(userRepository).deleteById(USER_ID);
+
+        verify(userRepository, never()).existsById(any());
+    }
+
+    @Test
+    public void shouldNotDeleteUserOfAnotherVersion() {
+        when(userRepository.deleteDirectlyByIdAndVersion(USER_ID, 2L)).thenReturn(0);
+        when(userRepository.existsById(USER_ID)).thenReturn(true);
+
+        assertThrows(VersionConflictException.class, () -> dataBaseUserDao.deleteUserById(USER_ID, 2L));
     }
 
     @Test
     public void shouldUpdateUser() {
         // Given
-        when(roleRepository.findByName(ROLES.get(0))).thenReturn(Optional.empty());
-        when(roleRepository.findByName(ROLES.get(1))).thenReturn(Optional.of(RoleEntity
+        final RoleEntity existingRole = RoleEntity
                 .builder()
                 .id(ROLE_ID)
                 .name(ROLES.get(1))
-                .build()));
+                .build();
+        when(roleRepository.findAllByNameIn(Set.copyOf(ROLES))).thenReturn(List.of(existingRole));
+        when(roleRepository.getReferenceById(ROLE_ID)).thenReturn(existingRole);
 
-        when(userRepository.save(any(UserEntity.class))).thenReturn(userEntity);
+        when(userRepository.saveAndFlush(any(UserEntity.class))).thenReturn(userEntity);
 
         // when
         final User actualResult = dataBaseUserDao.saveUser(user);
 
         // then capture argument and assert on entity
         final ArgumentCaptor<UserEntity> captor = ArgumentCaptor.forClass(UserEntity.class);
-        verify(userRepository).save(captor.capture());
+        verify(userRepository).saveAndFlush(captor.capture());
 
         final UserEntity actualEntity = captor.getValue();
 
-        assertEquals(USER_ID, actualEntity.getId());
+        assertNotNull(actualEntity.getId());
         assertEquals(NAME, actualEntity.getName());
         assertEquals(EMAIL, actualEntity.getEmail());
         assertEquals(ROLES.size(), actualEntity.getRoles().size());
@@ -230,13 +574,173 @@ public class DataBaseUserDaoUnitTest {
         assertTrue(actualResult.getRoles().containsAll(ROLES));
     }
 
+    @Test
+    public void shouldUpdateLoadedUser() {
+        // Given
+        final RoleEntity existingRole = RoleEntity
+                .builder()
+                .id(ROLE_ID)
+                .name(ROLES.get(1))
+                .build();
+        when(roleRepository.findAllByNameIn(Set.of(ROLES.get(1)))).thenReturn(List.of(existingRole));
+        when(roleRepository.getReferenceById(ROLE_ID)).thenReturn(existingRole);
+
+        // the user had the role ADMIN and another one, the role USER is new
+        final RoleEntity keptRole = userEntity.getRoles().stream()
+                .filter(role -> role.getName().equals(ROLES.get(0)))
+                .findFirst()
+                .orElseThrow();
+        userEntity.setRoles(new HashSet<>(Set.of(keptRole, RoleEntity.builder().id(2).name("OLD").build())));
+        userEntity.setName("Old Name");
+        userEntity.setVersion(1L);
+        when(userRepository.findById(USER_ID)).thenReturn(Optional.of(userEntity));
+        doAnswer(invocation -> {
+            userEntity.setVersion(userEntity.getVersion() + 1);
+            return null;
+        }).when(userRepository).flush();
+        user.setVersion(1L);
+
+        // when
+        final User actualResult = dataBaseUserDao.updateUser(user);
+
+        // then the loaded entity is modified and flushed
+        verify(userRepository).flush();
+        verify(userRepository, never()).save(any());
+
+        assertEquals(USER_ID, userEntity.getId());
+        assertEquals(NAME, userEntity.getName());
+        assertEquals(EMAIL, userEntity.getEmail());
+        assertEquals(ROLES.size(), userEntity.getRoles().size());
+        assertTrue(userEntity.getRoles().stream()
+                .map(RoleEntity::getName)
+                .toList()
+                .containsAll(ROLES));
+        assertTrue(userEntity.getRoles().contains(keptRole));
+        assertTrue(userEntity.getRoles().contains(existingRole));
+
+        // then assert on dto
+        assertEquals(USER_ID, actualResult.getId());
+        assertEquals(NAME, actualResult.getName());
+        assertEquals(EMAIL, actualResult.getEmail());
+        assertEquals(ROLES.size(), actualResult.getRoles().size());
+        assertTrue(actualResult.getRoles().containsAll(ROLES));
+        assertEquals(2L, actualResult.getVersion());
+    }
+
+    @Test
+    public void shouldNotUpdateDeletedUser() {
+        when(userRepository.findById(USER_ID)).thenReturn(Optional.empty());
+
+        assertThrows(NotFoundException.class, () -> dataBaseUserDao.updateUser(user));
+
+        verify(userRepository, never()).flush();
+    }
+
+    @Test
+    public void shouldNotUpdateUserOfAnotherVersion() {
+        userEntity.setVersion(3L);
+        user.setVersion(2L);
+        when(userRepository.findById(USER_ID)).thenReturn(Optional.of(userEntity));
+
+        assertThrows(VersionConflictException.class, () -> dataBaseUserDao.updateUser(user));
+
+        verify(userRepository, never()).flush();
+    }
+
+    @Test
+    public void shouldThrowVersionConflictWhenUserIsModifiedConcurrently() {
+        userEntity.setVersion(2L);
+        user.setVersion(2L);
+        when(userRepository.findById(USER_ID)).thenReturn(Optional.of(userEntity));
+        doThrow(new ObjectOptimisticLockingFailureException(UserEntity.class, USER_ID)).when(userRepository).flush();
+
+        assertThrows(VersionConflictException.class, () -> dataBaseUserDao.updateUser(user));
+    }
+
+    @Test
+    public void shouldRetryUpdateWithRolesFromDbWhenCachedRoleIsDeleted() {
+        // the cached id of the role USER belongs to a deleted role
+        final RoleEntity deletedRole = RoleEntity.builder().id(ROLE_ID).name(ROLES.get(1)).build();
+        final RoleEntity recreatedRole = RoleEntity.builder().id(2).name(ROLES.get(1)).build();
+        roleIdCache.put(deletedRole);
+        when(roleRepository.getReferenceById(ROLE_ID)).thenReturn(deletedRole);
+        when(roleRepository.findAllByNameIn(Set.of(ROLES.get(1)))).thenReturn(List.of(recreatedRole));
+        when(roleRepository.getReferenceById(2)).thenReturn(recreatedRole);
+        when(userRepository.findById(USER_ID)).thenAnswer(invocation -> Optional.of(UserEntity.builder()
+                .id(USER_ID)
+                .name(NAME)
+                .email(EMAIL)
+                .roles(new HashSet<>(Set.of(RoleEntity.builder().id(3).name(ROLES.get(0)).build())))
+                .version(1L)
+                .build()));
+        doThrow(new DataIntegrityViolationException("")).doNothing().when(userRepository).flush();
+
+        final User actualResult = dataBaseUserDao.updateUser(user);
+
+        verify(userRepository, times(2)).flush();
+        verify(roleRepository).findAllByNameIn(Set.of(ROLES.get(1)));
+        assertEquals(Set.copyOf(ROLES), Set.copyOf(actualResult.getRoles()));
+        assertEquals(Map.of(ROLES.get(1), 2), roleIdCache.getAll(List.of(ROLES.get(1))));
+    }
+
+    @Test
+    public void shouldThrowConstraintViolationWhenRetriedUpdateFails() {
+        when(userRepository.findById(USER_ID)).thenAnswer(invocation -> Optional.of(UserEntity.builder()
+                .id(USER_ID)
+                .name(NAME)
+                .email(EMAIL)
+                .roles(new HashSet<>(userEntity.getRoles()))
+                .version(1L)
+                .build()));
+        doThrow(new DataIntegrityViolationException("")).when(userRepository).flush();
+
+        assertThrows(ConstraintViolationException.class, () -> dataBaseUserDao.updateUser(user));
+
+        verify(userRepository, times(2)).flush();
+        verify(roleIdCache, times(2)).invalidateAll();
+    }
+
+    @Test
+    public void shouldWriteUsersWithTheirIdsAndVersions() {
+        user.setVersion(3L);
+        final User newUser = User.builder()
+                .id(UUID.randomUUID())
+                .name("Jane Doe")
+                .email("jane.doe@example.com")
+                .roles(List.of(ROLES.get(1)))
+                .version(0L)
+                .build();
+        final RoleEntity adminRole = RoleEntity.builder().id(ROLE_ID).name(ROLES.get(0)).build();
+        final RoleEntity userRole = RoleEntity.builder().id(2).name(ROLES.get(1)).build();
+        when(roleRepository.findAllByNameIn(Set.copyOf(ROLES))).thenReturn(List.of(adminRole, userRole));
+        when(roleRepository.getReferenceById(ROLE_ID)).thenReturn(adminRole);
+        when(roleRepository.getReferenceById(2)).thenReturn(userRole);
+        // the first user exists, the second one is new
+        when(jdbcTemplate.batchUpdate(eq("UPDATE USERS SET NAME = ?, VERSION = ?, UPDATED_AT = CURRENT_TIMESTAMP WHERE ID = ?"), anyList()))
+                .thenReturn(new int[]{1, 0});
+
+        dataBaseUserDao.writeUsers(List.of(user, newUser), List.of("deleted@example.com"));
+
+        verify(jdbcTemplate).batchUpdate(eq("DELETE FROM USERS WHERE EMAIL = ?"),
+                argThat((List<Object[]> args) -> rows(args).equals(List.of(List.of("deleted@example.com")))));
+        verify(jdbcTemplate).batchUpdate(eq("INSERT INTO USERS (ID, NAME, EMAIL, VERSION) VALUES (?, ?, ?, ?)"),
+                argThat((List<Object[]> args) -> rows(args).equals(List.of(
+                        List.of(newUser.getId(), "Jane Doe", "jane.doe@example.com", 0L)))));
+        verify(jdbcTemplate).batchUpdate(eq("DELETE FROM USER_ROLES WHERE USER_ID = ?"),
+                argThat((List<Object[]> args) -> rows(args).equals(List.of(List.of(USER_ID)))));
+        verify(jdbcTemplate).batchUpdate(eq("INSERT INTO USER_ROLES (USER_ID, ROLE_ID) VALUES (?, ?)"),
+                argThat((List<Object[]> args) -> Set.copyOf(rows(args)).equals(Set.of(
+                        List.of(USER_ID, ROLE_ID), List.of(USER_ID, 2), List.of(newUser.getId(), 2)))));
+        verify(userRepository, never()).saveAndFlush(any());
+    }
+
     @Test
     public void shouldFindAllUsersByName() {
         //given
         when(userRepository.findAllByName(NAME)).thenReturn(List.of(userEntity));
 
         // when
-        final Collection<User> actualResult = dataBaseUserDao.findUsersByName(NAME);
+        final Collection<User> actualResult = dataBaseUserDao.findUsersByName(NAME, true);
 
         // then assert on dto
         assertEquals(1, actualResult.size());
@@ -255,9 +759,64 @@ public class DataBaseUserDaoUnitTest {
         when(userRepository.findAllByName(NAME)).thenReturn(List.of());
 
         // when
-        final Collection<User> actualResult = dataBaseUserDao.findUsersByName(NAME);
+        final Collection<User> actualResult = dataBaseUserDao.findUsersByName(NAME, true);
 
         // then assert on dto
         assertEquals(0, actualResult.size());
     }
-}
\ No newline at end of file
+
+    private static List<List<Object>> rows(List<Object[]> args) {
+        return args.stream()
+                .map(List::of)
+                .toList();
+    }
+
+    /**
+     * Lets the bulk insert of users return all of them except the ones with the given emails
+     */
+    private void insertUsersExcept(String... takenEmails) {
+        doAnswer(invocation -> {
+            final RowCallbackHandler handler = invocation.getArgument(1);
+            final String[] ids = invocation.getArgument(2);
+            final String[] emails = invocation.getArgument(4);
+            for (int i = 0; i < ids.length; i++) {
+                if (!Set.of(takenEmails).contains(emails[i])) {
+                    final ResultSet resultSet = mock(ResultSet.class);
+                    when(resultSet.getObject("ID", UUID.class)).thenReturn(UUID.fromString(ids[i]));
+                    when(resultSet.getObject("UPDATED_AT", OffsetDateTime.class)).thenReturn(OffsetDateTime.now());
+                    handler.processRow(resultSet);
+                }
+            }
+            return null;
+        }).when(jdbcTemplate).query(startsWith("INSERT INTO USERS"), any(RowCallbackHandler.class), any(), any(), any());
+    }
+
+    private static UserSummary userSummary() {
+        return new UserSummary() {
+            @Override
+            public UUID getId() {
+                return USER_ID;
+            }
+
+            @Override
+            public String getName() {
+                return NAME;
+            }
+
+            @Override
+            public String getEmail() {
+                return EMAIL;
+            }
+
+            @Override
+            public Long getVersion() {
+                return 3L;
+            }
+
+            @Override
+            public Instant getUpdatedAt() {
+                return null;
+            }
+        };
+    }
+}
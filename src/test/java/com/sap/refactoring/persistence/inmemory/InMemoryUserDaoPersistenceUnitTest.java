@@ -0,0 +1,129 @@
+package com.sap.refactoring.persistence.inmemory;
+
+import com.sap.refactoring.models.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+public class InMemoryUserDaoPersistenceUnitTest {
+    @TempDir
+    Path directory;
+
+    private final List<InMemoryUserDaoPersistence> started = new ArrayList<>();
+
+    @AfterEach
+    public void stop() throws Exception {
+        for (InMemoryUserDaoPersistence persistence : started) {
+            persistence.stop();
+        }
+    }
+
+    @Test
+    public void shouldRestoreChangesFromWriteAheadLog() throws IOException {
+        final InMemoryUserDao userDao = new InMemoryUserDao();
+        start(userDao);
+        final User updatedUser = userDao.saveUser(user("updated@email.com"));
+        updatedUser.setName("New Name");
+        userDao.updateUser(updatedUser);
+        final User deletedUser = userDao.saveUser(user("deleted@email.com"));
+        userDao.deleteUser(deletedUser);
+
+        final InMemoryUserDao restoredUserDao = new InMemoryUserDao();
+        start(restoredUserDao);
+
+        Assertions.assertEquals(List.of(updatedUser), new ArrayList<>(restoredUserDao.getAllUsers(true)));
+        Assertions.assertEquals(1L, restoredUserDao.getUserById(updatedUser.getId().toString(), true).getVersion());
+    }
+
+    @Test
+    public void shouldRestoreSnapshotAndChangesAfterIt() throws IOException {
+        final InMemoryUserDao userDao = new InMemoryUserDao();
+        final InMemoryUserDaoPersistence persistence = start(userDao);
+        IntStream.range(0, 100).forEach(num -> userDao.saveUser(user("email" + num)));
+        persistence.snapshot();
+        final User userAfterSnapshot = userDao.saveUser(user("after@email.com"));
+        userDao.deleteUser(user("email0"));
+
+        final InMemoryUserDao restoredUserDao = new InMemoryUserDao();
+        start(restoredUserDao);
+
+        Assertions.assertEquals(sorted(userDao.getAllUsers(true)), sorted(restoredUserDao.getAllUsers(true)));
+        Assertions.assertEquals(userAfterSnapshot, restoredUserDao.getUserById(userAfterSnapshot.getId().toString(), true));
+        Assertions.assertEquals(1, Files.list(directory).filter(file -> file.toString().endsWith(UserSnapshots.SNAPSHOT_SUFFIX)).count());
+    }
+
+    @Test
+    public void shouldNotLoseChangesMadeDuringSnapshot() throws Exception {
+        final InMemoryUserDao userDao = new InMemoryUserDao();
+        final InMemoryUserDaoPersistence persistence = start(userDao);
+        final List<User> savedUsers = IntStream.range(0, 1000)
+                .mapToObj(num -> userDao.saveUser(user("email" + num)))
+                .toList();
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> writes = executor.submit(() -> savedUsers.forEach(user -> {
+                user.setName("updated " + user.getName());
+                userDao.updateUser(user);
+            }));
+            persistence.snapshot();
+            persistence.snapshot();
+            writes.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        final InMemoryUserDao restoredUserDao = new InMemoryUserDao();
+        start(restoredUserDao);
+
+        Assertions.assertEquals(sorted(userDao.getAllUsers(true)), sorted(restoredUserDao.getAllUsers(true)));
+    }
+
+    @Test
+    public void shouldIgnoreSnapshotInterruptedBeforeItWasComplete() throws IOException {
+        final InMemoryUserDao userDao = new InMemoryUserDao();
+        start(userDao);
+        final User user = userDao.saveUser(user("fake@email.com"));
+        Files.write(directory.resolve(UserSnapshots.SNAPSHOT_PREFIX + 5 + UserSnapshots.SNAPSHOT_SUFFIX + ".tmp"), new byte[]{1, 2, 3});
+
+        final InMemoryUserDao restoredUserDao = new InMemoryUserDao();
+        start(restoredUserDao);
+
+        Assertions.assertEquals(List.of(user), new ArrayList<>(restoredUserDao.getAllUsers(true)));
+    }
+
+    private InMemoryUserDaoPersistence start(InMemoryUserDao userDao) throws IOException {
+        final InMemoryUserDaoPersistence persistence = new InMemoryUserDaoPersistence(userDao, directory, Duration.ofHours(1), false);
+        persistence.start();
+        started.add(persistence);
+        return persistence;
+    }
+
+    private static List<User> sorted(Collection<User> users) {
+        return users.stream()
+                .sorted(Comparator.comparing(User::getEmail))
+                .toList();
+    }
+
+    private static User user(String email) {
+        return User.builder()
+                .name("Fake Name")
+                .email(email)
+                .roles(List.of("admin", "master"))
+                .build();
+    }
+}
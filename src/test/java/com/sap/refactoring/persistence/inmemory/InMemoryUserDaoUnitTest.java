@@ -1,24 +1,39 @@
 package com.sap.refactoring.persistence.inmemory;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 import java.util.stream.IntStream;
 
 import com.sap.refactoring.exceptions.ConstraintViolationException;
 import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.exceptions.VersionConflictException;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import com.sap.refactoring.models.User;
+import com.sap.refactoring.models.UserSaveResult;
+import com.sap.refactoring.models.UserVersion;
+import com.sap.refactoring.persistence.UserDao;
 
 public class InMemoryUserDaoUnitTest
 {
-	InMemoryUserDao userDao;
+	protected UserDao userDao;
 
 	@BeforeEach()
 	public void setup(){
-		userDao = new InMemoryUserDao();
+		userDao = createUserDao();
+	}
+
+	/**
+	 * Other implementations of {@link UserDao} are checked against the same contract by overriding this method
+	 */
+	protected UserDao createUserDao() {
+		return new InMemoryUserDao();
 	}
 
 	@Test
@@ -31,7 +46,19 @@ public class InMemoryUserDaoUnitTest
 
 		final User savedUser = userDao.saveUser(user);
 		Assertions.assertNotNull(savedUser.getId());
-		Assertions.assertEquals(savedUser, userDao.getUserById(savedUser.getId().toString()));
+		Assertions.assertEquals(savedUser, userDao.getUserById(savedUser.getId().toString(), true));
+	}
+
+	@Test
+	public void shouldSaveUserWithoutRoles() {
+		final User user = User.builder()
+								.name("Fake Name")
+								.email("fake@email.com")
+								.roles(null)
+								.build();
+
+		final User savedUser = userDao.saveUser(user);
+		Assertions.assertEquals(List.of(), userDao.getUserById(savedUser.getId().toString(), true).getRoles());
 	}
 
 	@Test
@@ -53,6 +80,30 @@ public class InMemoryUserDaoUnitTest
 		Assertions.assertThrows(ConstraintViolationException.class, () -> userDao.saveUser(user2));
 	}
 
+	@Test
+	public void shouldSaveUsersInBulkAndReportDuplicates() {
+		final String email = "fake@email.com";
+		final User existingUser = User.builder()
+				.name("Fake Name")
+				.email(email)
+				.roles(List.of("admin"))
+				.build();
+		userDao.saveUser(existingUser);
+
+		final List<User> newUsers = List.of(
+				User.builder().name("Name1").email("email1").roles(List.of("admin")).build(),
+				User.builder().name("Name2").email(email).roles(List.of("admin")).build(),
+				User.builder().name("Name3").email("email1").roles(List.of("admin")).build());
+
+		final List<UserSaveResult> results = userDao.saveUsers(newUsers);
+
+		Assertions.assertEquals(List.of(UserSaveResult.Status.CREATED, UserSaveResult.Status.DUPLICATE, UserSaveResult.Status.DUPLICATE),
+				results.stream().map(UserSaveResult::getStatus).toList());
+		Assertions.assertEquals(results.get(0).getUser(), userDao.getUserById(results.get(0).getUser().getId().toString(), true));
+		Assertions.assertEquals(email, results.get(1).getEmail());
+		Assertions.assertEquals(2, userDao.getAllUsers(true).size());
+	}
+
 	@Test
 	public void shouldReturnAllUsers() {
 		final Collection<User> users = List.of(
@@ -70,12 +121,105 @@ public class InMemoryUserDaoUnitTest
 
 		users.forEach(userDao::saveUser);
 
-		Assertions.assertEquals(users.size(), userDao.getAllUsers().size());
-		users.forEach(user -> Assertions.assertTrue(userDao.getAllUsers().contains(user)));
+		Assertions.assertEquals(users.size(), userDao.getAllUsers(true).size());
+		users.forEach(user -> Assertions.assertTrue(userDao.getAllUsers(true).contains(user)));
+	}
+
+	@Test
+	public void shouldReturnAllUsersPageByPage() {
+		//given
+		final int usersCount = 25;
+		final int pageSize = 10;
+		IntStream.range(0, usersCount).forEach(num -> userDao.saveUser(User.builder()
+				.name("name" + num)
+				.email("email" + num)
+				.roles(List.of("admin"))
+				.build()));
+
+		//when
+		final List<UUID> pagedIds = new ArrayList<>();
+		UUID cursor = null;
+		List<User> page;
+		do {
+			page = userDao.getUsersPage(cursor, pageSize, true);
+			page.forEach(user -> pagedIds.add(user.getId()));
+			cursor = page.isEmpty() ? null : page.get(page.size() - 1).getId();
+		} while (page.size() == pageSize);
+
+		//then every user is returned once, in id order
+		Assertions.assertEquals(usersCount, pagedIds.size());
+		Assertions.assertEquals(pagedIds.stream().sorted(UserDao.ID_ORDER).toList(), pagedIds);
+	}
+
+	@Test
+	public void shouldFindUsersByRolePageByPage() {
+		//given
+		final int usersCount = 25;
+		IntStream.range(0, usersCount).forEach(num -> userDao.saveUser(User.builder()
+				.name("name" + num)
+				.email("email" + num)
+				.roles(num % 2 == 0 ? List.of("admin", "even") : List.of("admin"))
+				.build()));
+
+		//when
+		final List<UUID> pagedIds = new ArrayList<>();
+		UUID cursor = null;
+		List<User> page;
+		do {
+			page = userDao.findUsersByRole("even", cursor, 5, true);
+			page.forEach(user -> pagedIds.add(user.getId()));
+			cursor = page.isEmpty() ? null : page.get(page.size() - 1).getId();
+		} while (page.size() == 5);
+
+		//then every user with the role is returned once, in id order
+		Assertions.assertEquals(13, pagedIds.size());
+		Assertions.assertEquals(pagedIds.stream().sorted(UserDao.ID_ORDER).toList(), pagedIds);
+		Assertions.assertTrue(userDao.findUsersByRole("unknown", null, 5, true).isEmpty());
+	}
+
+	@Test
+	public void shouldFindUserByNewRolesOnlyAfterUpdate() {
+		final User user = User.builder()
+				.name("Fake Name")
+				.email("fake@email.com")
+				.roles(List.of("admin", "master"))
+				.build();
+		userDao.saveUser(user);
+
+		user.setRoles(List.of("master", "viewer"));
+		userDao.updateUser(user);
+
+		Assertions.assertTrue(userDao.findUsersByRole("admin", null, 10, true).isEmpty());
+		Assertions.assertEquals(List.of(user), userDao.findUsersByRole("viewer", null, 10, true));
+		userDao.deleteUser(user);
+		Assertions.assertTrue(userDao.findUsersByRole("master", null, 10, true).isEmpty());
+	}
+
+	@Test
+	public void shouldPassAllUsersToConsumer() {
+		final Collection<User> users = List.of(
+				User.builder()
+						.name("Fake Name")
+						.email("email1")
+						.roles(List.of("admin", "master"))
+						.build(),
+				User.builder()
+						.name("Name Fake")
+						.email("email2")
+						.roles(List.of("master"))
+						.build());
+
+		users.forEach(userDao::saveUser);
+
+		final List<User> consumedUsers = new ArrayList<>();
+		userDao.forEachUser(consumedUsers::add, true);
+
+		Assertions.assertEquals(users.size(), consumedUsers.size());
+		Assertions.assertTrue(consumedUsers.containsAll(users));
 	}
 
 	@Test void shouldThrowWhenIdNotFound(){
-		Assertions.assertThrows(NotFoundException.class, () -> userDao.getUserById("not_existing_id"));
+		Assertions.assertThrows(NotFoundException.class, () -> userDao.getUserById("not_existing_id", true));
 	}
 
 	@Test
@@ -88,17 +232,72 @@ public class InMemoryUserDaoUnitTest
 				.build();
 
 		final User savedUser = userDao.saveUser(user);
-		Assertions.assertEquals(savedUser, userDao.getUserById(savedUser.getId().toString()));
+		Assertions.assertEquals(savedUser, userDao.getUserById(savedUser.getId().toString(), true));
 
 		//when
 		userDao.deleteUser(savedUser);
 		//then
-		Assertions.assertThrows(NotFoundException.class, () -> userDao.getUserById(savedUser.getId().toString()));
+		Assertions.assertThrows(NotFoundException.class, () -> userDao.getUserById(savedUser.getId().toString(), true));
 
 		//then does not throw when delete again
 		Assertions.assertDoesNotThrow(() -> userDao.deleteUser(savedUser));
 	}
 
+	@Test
+	public void shouldDeleteUserById() {
+		final User user = User.builder()
+				.name("Fake Name")
+				.email("fake@email.com")
+				.roles(List.of("admin", "master"))
+				.build();
+
+		final User savedUser = userDao.saveUser(user);
+
+		Assertions.assertTrue(userDao.deleteUserById(savedUser.getId(), null));
+		Assertions.assertThrows(NotFoundException.class, () -> userDao.getUserById(savedUser.getId().toString(), true));
+		Assertions.assertFalse(userDao.deleteUserById(savedUser.getId(), null));
+		Assertions.assertFalse(userDao.deleteUserById(UUID.randomUUID(), 0L));
+
+		//then the email is free again
+		Assertions.assertDoesNotThrow(() -> userDao.saveUser(user));
+	}
+
+	@Test
+	public void shouldDeleteUserByIdOfExpectedVersionOnly() {
+		final User user = User.builder()
+				.name("Fake Name")
+				.email("fake@email.com")
+				.roles(List.of("admin", "master"))
+				.build();
+
+		final User savedUser = userDao.saveUser(user);
+		userDao.updateUser(user);
+
+		Assertions.assertThrows(VersionConflictException.class, () -> userDao.deleteUserById(savedUser.getId(), 0L));
+		Assertions.assertEquals(user, userDao.getUserById(savedUser.getId().toString(), true));
+		Assertions.assertTrue(userDao.deleteUserById(savedUser.getId(), 1L));
+	}
+
+	@Test
+	public void shouldFindRecreatedUserByNewIdOnly() {
+		//given
+		final User user = User.builder()
+				.name("Fake Name")
+				.email("fake@email.com")
+				.roles(List.of("admin", "master"))
+				.build();
+
+		final String oldUuid = userDao.saveUser(user).getId().toString();
+		userDao.deleteUser(user);
+
+		//when the user with the same email is created again
+		final String newUuid = userDao.saveUser(user).getId().toString();
+
+		//then only the new id is resolvable
+		Assertions.assertThrows(NotFoundException.class, () -> userDao.getUserById(oldUuid, true));
+		Assertions.assertEquals(user, userDao.getUserById(newUuid, true));
+	}
+
 	@Test
 	public void shouldUpdateUser() {
 		//given
@@ -116,7 +315,78 @@ public class InMemoryUserDaoUnitTest
 		user.setName(newName);
 		userDao.updateUser(user);
 		//then
-		Assertions.assertEquals(user, userDao.getUserById(uuid));
+		Assertions.assertEquals(user, userDao.getUserById(uuid, true));
+	}
+
+	@Test
+	public void shouldIncrementVersionOnUpdate() {
+		final User user = User.builder()
+				.name("Fake Name")
+				.email("fake@email.com")
+				.roles(List.of("admin", "master"))
+				.build();
+
+		final String uuid = userDao.saveUser(user).getId().toString();
+		Assertions.assertEquals(0L, userDao.getUserById(uuid, true).getVersion());
+
+		user.setName("new_Name");
+		Assertions.assertEquals(1L, userDao.updateUser(user).getVersion());
+		user.setVersion(null);
+		Assertions.assertEquals(2L, userDao.updateUser(user).getVersion());
+		Assertions.assertEquals(2L, userDao.getUserById(uuid, true).getVersion());
+	}
+
+	@Test
+	public void shouldGetVersionOfUser() {
+		final User user = User.builder()
+				.name("Fake Name")
+				.email("fake@email.com")
+				.roles(List.of("admin", "master"))
+				.build();
+
+		final User savedUser = userDao.saveUser(user);
+		Assertions.assertEquals(0L, userDao.getUserVersion(savedUser.getId()).map(UserVersion::getVersion).orElseThrow());
+
+		savedUser.setName("new_Name");
+		userDao.updateUser(savedUser);
+		Assertions.assertEquals(1L, userDao.getUserVersion(savedUser.getId()).map(UserVersion::getVersion).orElseThrow());
+
+		userDao.deleteUserById(savedUser.getId(), null);
+		Assertions.assertEquals(Optional.empty(), userDao.getUserVersion(savedUser.getId()));
+	}
+
+	@Test
+	public void shouldNotModifyUserOfAnotherVersion() {
+		final User user = User.builder()
+				.name("Fake Name")
+				.email("fake@email.com")
+				.roles(List.of("admin", "master"))
+				.build();
+
+		final String uuid = userDao.saveUser(user).getId().toString();
+		final User staleUser = new User(user);
+		user.setName("new_Name");
+		userDao.updateUser(user);
+
+		staleUser.setName("stale name");
+		Assertions.assertThrows(VersionConflictException.class, () -> userDao.updateUser(staleUser));
+		Assertions.assertThrows(VersionConflictException.class, () -> userDao.deleteUser(staleUser));
+		Assertions.assertEquals(user, userDao.getUserById(uuid, true));
+	}
+
+	@Test
+	public void shouldNotRecreateDeletedUserOnUpdate() {
+		final User user = User.builder()
+				.name("Fake Name")
+				.email("fake@email.com")
+				.roles(List.of("admin", "master"))
+				.build();
+
+		final String uuid = userDao.saveUser(user).getId().toString();
+		userDao.deleteUser(user);
+
+		Assertions.assertThrows(NotFoundException.class, () -> userDao.updateUser(user));
+		Assertions.assertThrows(NotFoundException.class, () -> userDao.getUserById(uuid, true));
 	}
 
 	@Test
@@ -129,10 +399,78 @@ public class InMemoryUserDaoUnitTest
 				.build();
 
 		final User savedUser = userDao.saveUser(user);
-		final Collection<User> foundUsers = userDao.findUsersByName(name);
+		final Collection<User> foundUsers = userDao.findUsersByName(name, true);
 		Assertions.assertTrue(foundUsers.contains(savedUser));
 	}
 
+	@Test
+	public void shouldFindUserByNewNameOnlyAfterRename() {
+		//given
+		final String oldName = "old name";
+		final String newName = "new name";
+		final User user = User.builder()
+				.name(oldName)
+				.email("fake@email.com")
+				.roles(List.of("admin", "master"))
+				.build();
+
+		userDao.saveUser(user);
+
+		//when
+		user.setName(newName);
+		userDao.updateUser(user);
+
+		//then
+		Assertions.assertTrue(userDao.findUsersByName(oldName, true).isEmpty());
+		Assertions.assertEquals(List.of(user), userDao.findUsersByName(newName, true));
+	}
+
+	@Test
+	public void shouldFindUsersByNamePrefixIgnoringCaseOrderedByName() {
+		//given
+		final User bob = userDao.saveUser(User.builder().name("bob").email("bob@email.com").roles(List.of("admin")).build());
+		final User bobby = userDao.saveUser(User.builder().name("Bobby").email("bobby@email.com").roles(List.of("admin")).build());
+		final User boa = userDao.saveUser(User.builder().name("BOA").email("boa@email.com").roles(List.of("admin")).build());
+		userDao.saveUser(User.builder().name("Alice").email("alice@email.com").roles(List.of("admin")).build());
+		userDao.saveUser(User.builder().name("Bc").email("bc@email.com").roles(List.of("admin")).build());
+
+		//then
+		Assertions.assertEquals(List.of(boa, bob, bobby), userDao.findUsersByNamePrefix("bO", 10, true));
+		Assertions.assertEquals(List.of(boa, bob), userDao.findUsersByNamePrefix("BO", 2, true));
+		Assertions.assertEquals(List.of(bob, bobby), userDao.findUsersByNamePrefix("bob", 10, true));
+		Assertions.assertTrue(userDao.findUsersByNamePrefix("bobz", 10, true).isEmpty());
+	}
+
+	@Test
+	public void shouldFindUserByNewNamePrefixOnlyAfterRename() {
+		final User user = userDao.saveUser(User.builder().name("old name").email("fake@email.com").roles(List.of("admin")).build());
+
+		user.setName("New Name");
+		userDao.updateUser(user);
+
+		Assertions.assertTrue(userDao.findUsersByNamePrefix("old", 10, true).isEmpty());
+		Assertions.assertEquals(List.of(user), userDao.findUsersByNamePrefix("new", 10, true));
+
+		userDao.deleteUser(user);
+
+		Assertions.assertTrue(userDao.findUsersByNamePrefix("new", 10, true).isEmpty());
+	}
+
+	@Test
+	public void shouldNotFindDeletedUserByName() {
+		final String name = "name";
+		final User user = User.builder()
+				.name(name)
+				.email("fake@email.com")
+				.roles(List.of("admin", "master"))
+				.build();
+
+		userDao.saveUser(user);
+		userDao.deleteUser(user);
+
+		Assertions.assertTrue(userDao.findUsersByName(name, true).isEmpty());
+	}
+
 	@Test
 	public void shouldNotAffectSavedUsersAfterSaving() {
 		//given
@@ -147,8 +485,8 @@ public class InMemoryUserDaoUnitTest
 		user.setName("new name");
 		savedUser.setName("new name");
 		//then changes should not affect the persisted object
-		Assertions.assertNotEquals(savedUser, userDao.getUserById(savedUser.getId().toString()));
-		Assertions.assertNotEquals(user, userDao.getUserById(savedUser.getId().toString()));
+		Assertions.assertNotEquals(savedUser, userDao.getUserById(savedUser.getId().toString(), true));
+		Assertions.assertNotEquals(user, userDao.getUserById(savedUser.getId().toString(), true));
 	}
 
 	@Test
@@ -171,8 +509,8 @@ public class InMemoryUserDaoUnitTest
 		updatedUser.setName("other name");
 
 		//then changes should not affect the persisted object
-		Assertions.assertNotEquals(user, userDao.getUserById(uuid));
-		Assertions.assertNotEquals(updatedUser, userDao.getUserById(uuid));
+		Assertions.assertNotEquals(user, userDao.getUserById(uuid, true));
+		Assertions.assertNotEquals(updatedUser, userDao.getUserById(uuid, true));
 	}
 
 	@Test
@@ -197,7 +535,7 @@ public class InMemoryUserDaoUnitTest
 					}
 				});
 
-		Assertions.assertEquals(1, userDao.getAllUsers().size());
+		Assertions.assertEquals(1, userDao.getAllUsers(true).size());
 	}
 
 	@Test
@@ -212,11 +550,42 @@ public class InMemoryUserDaoUnitTest
 		final String uuid = userDao.saveUser(user).getId().toString();
 
 		//when retreive and change user
-		final User retreivedUser = userDao.getAllUsers().iterator().next();
+		final User retreivedUser = userDao.getAllUsers(true).iterator().next();
 		retreivedUser.setName("new name");
 
 		//then changes should not affect the persisted object
-		Assertions.assertNotEquals(retreivedUser, userDao.getUserById(uuid));
+		Assertions.assertNotEquals(retreivedUser, userDao.getUserById(uuid, true));
+	}
+
+	@Test
+	public void shouldNotAffectSavedUsersWhenRolesOfReadUserAreChanged() {
+		final User user = User.builder()
+				.name("Fake Name")
+				.email("fake@email.com")
+				.roles(List.of("admin", "master"))
+				.build();
+
+		final String uuid = userDao.saveUser(user).getId().toString();
+
+		final User retreivedUser = userDao.getUserById(uuid, true);
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> retreivedUser.getRoles().add("root"));
+		retreivedUser.setRoles(List.of("root"));
+
+		Assertions.assertEquals(List.of("admin", "master"), userDao.getUserById(uuid, true).getRoles());
+	}
+
+	@Test
+	public void shouldShareRolesOfStoredUserBetweenReads() {
+		Assumptions.assumeTrue(userDao instanceof InMemoryUserDao, "only the in-memory dao keeps users as objects");
+		final User user = User.builder()
+				.name("Fake Name")
+				.email("fake@email.com")
+				.roles(new ArrayList<>(List.of("admin", "master")))
+				.build();
+
+		final String uuid = userDao.saveUser(user).getId().toString();
+
+		Assertions.assertSame(userDao.getUserById(uuid, true).getRoles(), userDao.getAllUsers(true).iterator().next().getRoles());
 	}
 
 	@Test
@@ -231,11 +600,11 @@ public class InMemoryUserDaoUnitTest
 		final String uuid = userDao.saveUser(user).getId().toString();
 
 		//when retreive and change user
-		final User retreivedUser = userDao.getUserById(uuid);
+		final User retreivedUser = userDao.getUserById(uuid, true);
 		retreivedUser.setName("new name");
 
 		//then changes should not affect the persisted object
-		Assertions.assertNotEquals(retreivedUser, userDao.getUserById(uuid));
+		Assertions.assertNotEquals(retreivedUser, userDao.getUserById(uuid, true));
 	}
 
 	@Test
@@ -251,10 +620,10 @@ public class InMemoryUserDaoUnitTest
 		final String uuid = userDao.saveUser(user).getId().toString();
 
 		//when retreive and change user
-		final User retreivedUser = userDao.findUsersByName(name).iterator().next();
+		final User retreivedUser = userDao.findUsersByName(name, true).iterator().next();
 		retreivedUser.setName("new name");
 
 		//then changes should not affect the persisted object
-		Assertions.assertNotEquals(retreivedUser, userDao.getUserById(uuid));
+		Assertions.assertNotEquals(retreivedUser, userDao.getUserById(uuid, true));
 	}
 }
@@ -0,0 +1,110 @@
+package com.sap.refactoring.persistence.inmemory;
+
+import com.sap.refactoring.models.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class WriteAheadLogUnitTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldReplayChangesInOrder() throws IOException {
+        final User user = user("fake@email.com");
+        try (WriteAheadLog writeAheadLog = new WriteAheadLog(directory, 1, true)) {
+            writeAheadLog.logPut(user);
+            writeAheadLog.logDelete(user);
+        }
+
+        final List<String> changes = new ArrayList<>();
+        final long count = WriteAheadLog.replay(WriteAheadLog.segment(directory, 1),
+                put -> changes.add("put " + put), delete -> changes.add("delete " + delete));
+
+        Assertions.assertEquals(2, count);
+        Assertions.assertEquals(List.of("put " + user, "delete fake@email.com"), changes);
+    }
+
+    @Test
+    public void shouldDropRecordTornAtAnyByteWhenWriterIsKilledDuringAppend() throws IOException {
+        final Path segment = WriteAheadLog.segment(directory, 1);
+        try (WriteAheadLog writeAheadLog = new WriteAheadLog(directory, 1, false)) {
+            writeAheadLog.logPut(user("first@email.com"));
+        }
+        final long firstRecordEnd = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            // appended by another log, so that the segment ends with a complete second record
+            final Path otherDirectory = Files.createDirectory(directory.resolve("other"));
+            try (WriteAheadLog otherLog = new WriteAheadLog(otherDirectory, 1, false)) {
+                otherLog.logPut(user("second@email.com"));
+            }
+            channel.write(ByteBuffer.wrap(Files.readAllBytes(WriteAheadLog.segment(otherDirectory, 1))));
+        }
+        final long secondRecordEnd = Files.size(segment);
+
+        // a killed writer leaves any prefix of the record it was appending
+        for (long size = firstRecordEnd; size < secondRecordEnd; size++) {
+            final Path tornSegment = directory.resolve("torn.log");
+            Files.copy(segment, tornSegment, StandardCopyOption.REPLACE_EXISTING);
+            try (FileChannel channel = FileChannel.open(tornSegment, StandardOpenOption.WRITE)) {
+                channel.truncate(size);
+            }
+
+            final List<User> users = new ArrayList<>();
+            Assertions.assertEquals(1, WriteAheadLog.replay(tornSegment, users::add, email -> {}));
+            Assertions.assertEquals("first@email.com", users.get(0).getEmail());
+            Assertions.assertEquals(firstRecordEnd, Files.size(tornSegment));
+        }
+    }
+
+    @Test
+    public void shouldStopReplayAtCorruptedRecord() throws IOException {
+        final Path segment = WriteAheadLog.segment(directory, 1);
+        try (WriteAheadLog writeAheadLog = new WriteAheadLog(directory, 1, false)) {
+            writeAheadLog.logPut(user("first@email.com"));
+            writeAheadLog.logPut(user("second@email.com"));
+        }
+        final byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(segment, bytes);
+
+        final List<User> users = new ArrayList<>();
+        Assertions.assertEquals(1, WriteAheadLog.replay(segment, users::add, email -> {}));
+        Assertions.assertEquals("first@email.com", users.get(0).getEmail());
+    }
+
+    @Test
+    public void shouldContinueInNextSegmentAfterRotation() throws IOException {
+        try (WriteAheadLog writeAheadLog = new WriteAheadLog(directory, 1, false)) {
+            writeAheadLog.logPut(user("first@email.com"));
+            Assertions.assertEquals(2, writeAheadLog.rotate());
+            writeAheadLog.logPut(user("second@email.com"));
+        }
+
+        Assertions.assertEquals(List.of(1L, 2L), WriteAheadLog.generations(directory));
+        final List<User> users = new ArrayList<>();
+        WriteAheadLog.replay(WriteAheadLog.segment(directory, 2), users::add, email -> {});
+        Assertions.assertEquals("second@email.com", users.get(0).getEmail());
+    }
+
+    private static User user(String email) {
+        return User.builder()
+                .id(UUID.randomUUID())
+                .name("Fake Name")
+                .email(email)
+                .roles(List.of("admin", "master"))
+                .version(0L)
+                .build();
+    }
+}
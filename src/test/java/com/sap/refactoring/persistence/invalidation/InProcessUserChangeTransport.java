@@ -0,0 +1,30 @@
+package com.sap.refactoring.persistence.invalidation;
+
+import java.util.UUID;
+
+/**
+ * {@link UserChangeTransport} standing in for the database in tests, changes are published when the test tells so
+ */
+public class InProcessUserChangeTransport implements UserChangeTransport {
+    private volatile UserInvalidationBus bus;
+
+    @Override
+    public void start(UserInvalidationBus bus) {
+        this.bus = bus;
+    }
+
+    @Override
+    public void stop() {
+        bus = null;
+    }
+
+    public void usersChanged(UUID... ids) {
+        for (UUID id : ids) {
+            bus.publish(id);
+        }
+    }
+
+    public void connectionLost() {
+        bus.publishAll();
+    }
+}
@@ -0,0 +1,94 @@
+package com.sap.refactoring.persistence.invalidation;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class UserInvalidationBusUnitTest {
+    private static final UUID FIRST_ID = UUID.randomUUID();
+    private static final UUID SECOND_ID = UUID.randomUUID();
+
+    @Mock
+    private UserChangeListener listener;
+
+    private final InProcessUserChangeTransport transport = new InProcessUserChangeTransport();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private UserInvalidationBus bus;
+
+    @AfterEach
+    public void stop() {
+        bus.stop();
+    }
+
+    @Test
+    public void shouldDeliverBurstOfChangesInOneBatch() {
+        start(Duration.ofHours(1));
+        transport.usersChanged(FIRST_ID, SECOND_ID, FIRST_ID, FIRST_ID);
+
+        bus.deliver();
+
+        verify(listener).usersChanged(Set.of(FIRST_ID, SECOND_ID));
+        assertEquals(4, meterRegistry.get(UserInvalidationBus.EVENTS_COUNTER_NAME).counter().count());
+        assertEquals(1, meterRegistry.get(UserInvalidationBus.BATCH_SUMMARY_NAME).summary().count());
+    }
+
+    @Test
+    public void shouldPublishEveryIdOfNotification() {
+        start(Duration.ofHours(1));
+        PostgresUserChangeTransport.publish(bus, FIRST_ID + ",not-an-id," + SECOND_ID);
+
+        bus.deliver();
+
+        verify(listener).usersChanged(Set.of(FIRST_ID, SECOND_ID));
+    }
+
+    @Test
+    public void shouldDeliverChangesOnlyOnce() {
+        start(Duration.ofHours(1));
+        transport.usersChanged(FIRST_ID);
+        bus.deliver();
+
+        bus.deliver();
+
+        verify(listener, times(1)).usersChanged(any());
+    }
+
+    @Test
+    public void shouldDeliverThatAllUsersChangedWhenChangesMightBeMissed() {
+        start(Duration.ofHours(1));
+        transport.usersChanged(FIRST_ID);
+        transport.connectionLost();
+
+        bus.deliver();
+
+        verify(listener).allUsersChanged();
+        verify(listener, never()).usersChanged(any());
+    }
+
+    @Test
+    public void shouldDeliverChangesPeriodically() {
+        start(Duration.ofMillis(10));
+
+        transport.usersChanged(FIRST_ID);
+
+        verify(listener, timeout(1000)).usersChanged(Set.of(FIRST_ID));
+    }
+
+    private void start(Duration coalesceInterval) {
+        bus = new UserInvalidationBus(transport, coalesceInterval, meterRegistry);
+        bus.subscribe(listener);
+        bus.start();
+    }
+}
@@ -0,0 +1,58 @@
+package com.sap.refactoring.persistence.offheap;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class OffHeapHashIndexUnitTest {
+
+    @Test
+    public void shouldKeepAllValuesOfTheSameKey() {
+        final OffHeapHashIndex index = new OffHeapHashIndex(16);
+        index.add(1, 2, 10);
+        index.add(1, 2, 20);
+        index.add(2, 1, 30);
+
+        final List<Long> values = new ArrayList<>();
+        index.forEach(1, 2, values::add);
+
+        Assertions.assertEquals(List.of(10L, 20L), values);
+        Assertions.assertEquals(20, index.find(1, 2, value -> value > 10));
+        Assertions.assertEquals(OffHeapHashIndex.NO_VALUE, index.find(1, 2, value -> value > 20));
+    }
+
+    @Test
+    public void shouldRemoveOnlyTheGivenValue() {
+        final OffHeapHashIndex index = new OffHeapHashIndex(16);
+        index.add(1, 2, 10);
+        index.add(1, 2, 20);
+
+        Assertions.assertTrue(index.remove(1, 2, 10));
+        Assertions.assertFalse(index.remove(1, 2, 10));
+        Assertions.assertEquals(20, index.find(1, 2, value -> true));
+        Assertions.assertEquals(1, index.size());
+    }
+
+    @Test
+    public void shouldGrowAndDropTombstones() {
+        final OffHeapHashIndex index = new OffHeapHashIndex(16);
+        for (long key = 0; key < 10_000; key++) {
+            index.add(key, -key, key);
+        }
+        for (long key = 0; key < 10_000; key += 2) {
+            index.remove(key, -key, key);
+        }
+        // reuses the table instead of growing forever when entries are added and removed
+        for (long key = 0; key < 100_000; key++) {
+            index.add(-1, key, key);
+            index.remove(-1, key, key);
+        }
+
+        Assertions.assertEquals(5_000, index.size());
+        for (long key = 0; key < 10_000; key++) {
+            Assertions.assertEquals(key % 2 == 0 ? OffHeapHashIndex.NO_VALUE : key, index.find(key, -key, value -> true));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.sap.refactoring.persistence.offheap;
+
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.persistence.UserDao;
+import com.sap.refactoring.persistence.inmemory.InMemoryUserDaoUnitTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Runs the contract of {@link InMemoryUserDaoUnitTest} against {@link OffHeapUserDao}.
+ * Slabs are small so that users are spread over many of them and freed space gets compacted
+ */
+public class OffHeapUserDaoUnitTest extends InMemoryUserDaoUnitTest {
+    private static final int SLAB_SIZE = 1024;
+
+    @Override
+    protected UserDao createUserDao() {
+        return new OffHeapUserDao(SLAB_SIZE);
+    }
+
+    @Test
+    public void shouldKeepUsersWhenIndexesGrowAndRecordsAreCompacted() {
+        final List<User> users = IntStream.range(0, 5000)
+                .mapToObj(num -> userDao.saveUser(User.builder()
+                        .name("name" + num % 100)
+                        .email("email" + num)
+                        .roles(List.of("role" + num % 3, "admin"))
+                        .build()))
+                .toList();
+
+        // every update frees a record, so the records are compacted several times
+        final List<User> updatedUsers = users.stream()
+                .map(user -> {
+                    final User updatedUser = new User(user);
+                    updatedUser.setName("updated " + user.getName());
+                    return userDao.updateUser(updatedUser);
+                })
+                .toList();
+        updatedUsers.subList(0, 2500).forEach(userDao::deleteUser);
+
+        Assertions.assertEquals(2500, userDao.getAllUsers(true).size());
+        Assertions.assertEquals(25, userDao.findUsersByName("updated name7", true).size());
+        final User user = users.get(4999);
+        Assertions.assertEquals(List.of("role1", "admin"), userDao.getUserById(user.getId().toString(), true).getRoles());
+        Assertions.assertEquals("updated " + user.getName(), userDao.getUserById(user.getId().toString(), true).getName());
+    }
+}
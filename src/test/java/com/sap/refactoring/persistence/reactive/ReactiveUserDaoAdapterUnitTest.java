@@ -0,0 +1,106 @@
+package com.sap.refactoring.persistence.reactive;
+
+import com.sap.refactoring.exceptions.ConstraintViolationException;
+import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.persistence.UserDao;
+import com.sap.refactoring.persistence.inmemory.InMemoryUserDao;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class ReactiveUserDaoAdapterUnitTest {
+    private static final int PAGE_SIZE = 2;
+    private UserDao userDao;
+    private ReactiveUserDaoAdapter reactiveUserDao;
+
+    @BeforeEach
+    public void setup() {
+        userDao = spy(new InMemoryUserDao());
+        reactiveUserDao = new ReactiveUserDaoAdapter(userDao, Schedulers.boundedElastic(), PAGE_SIZE);
+    }
+
+    @Test
+    public void shouldSaveAndGetUser() {
+        final User savedUser = reactiveUserDao.saveUser(user("fake@email.com")).block();
+
+        StepVerifier.create(reactiveUserDao.getUserById(savedUser.getId().toString()))
+                .expectNext(savedUser)
+                .verifyComplete();
+    }
+
+    @Test
+    public void shouldSignalConstraintViolationWhenEmailIsDuplicated() {
+        reactiveUserDao.saveUser(user("fake@email.com")).block();
+
+        StepVerifier.create(reactiveUserDao.saveUser(user("fake@email.com")))
+                .verifyError(ConstraintViolationException.class);
+    }
+
+    @Test
+    public void shouldSignalNotFoundWhenUserDoesNotExist() {
+        StepVerifier.create(reactiveUserDao.getUserById(UUID.randomUUID().toString()))
+                .verifyError(NotFoundException.class);
+    }
+
+    @Test
+    public void shouldGetAllUsersPageByPage() {
+        final List<User> savedUsers = IntStream.range(0, 5)
+                .mapToObj(i -> userDao.saveUser(user("fake" + i + "@email.com")))
+                .sorted((user1, user2) -> UserDao.ID_ORDER.compare(user1.getId(), user2.getId()))
+                .toList();
+
+        StepVerifier.create(reactiveUserDao.getAllUsers())
+                .expectNextSequence(savedUsers)
+                .verifyComplete();
+        verify(userDao, times(3)).getUsersPage(any(), eq(PAGE_SIZE), eq(true));
+    }
+
+    @Test
+    public void shouldReadNextPageOnlyWhenRequested() {
+        IntStream.range(0, 10).forEach(i -> userDao.saveUser(user("fake" + i + "@email.com")));
+
+        StepVerifier.create(reactiveUserDao.getAllUsers(), 1)
+                .expectNextCount(1)
+                .thenAwait()
+                .then(() -> verify(userDao, times(1)).getUsersPage(any(), anyInt(), eq(true)))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    public void shouldUpdateAndDeleteUser() {
+        final User savedUser = userDao.saveUser(user("fake@email.com"));
+        final User userToUpdate = new User(savedUser);
+        userToUpdate.setName("New Name");
+
+        StepVerifier.create(reactiveUserDao.updateUser(userToUpdate))
+                .expectNext(userToUpdate)
+                .verifyComplete();
+        StepVerifier.create(reactiveUserDao.findUsersByName("New Name"))
+                .expectNext(userToUpdate)
+                .verifyComplete();
+
+        StepVerifier.create(reactiveUserDao.deleteUser(userToUpdate))
+                .verifyComplete();
+        assertEquals(0, userDao.getAllUsers(true).size());
+    }
+
+    private static User user(String email) {
+        return User.builder()
+                .name("Fake Name")
+                .email(email)
+                .roles(List.of("admin"))
+                .build();
+    }
+}
@@ -0,0 +1,185 @@
+package com.sap.refactoring.persistence.tiered;
+
+import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.models.UserSaveResult;
+import com.sap.refactoring.persistence.UserDao;
+import com.sap.refactoring.persistence.db.DataBaseUserDao;
+import com.sap.refactoring.persistence.inmemory.InMemoryUserDao;
+import com.sap.refactoring.persistence.inmemory.InMemoryUserDaoUnitTest;
+import com.sap.refactoring.persistence.invalidation.InProcessUserChangeTransport;
+import com.sap.refactoring.persistence.invalidation.UserInvalidationBus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs the contract of {@link InMemoryUserDaoUnitTest} against {@link TieredUserDao} writing behind to a mocked {@link DataBaseUserDao}
+ */
+public class TieredUserDaoUnitTest extends InMemoryUserDaoUnitTest {
+    private final DataBaseUserDao dataBaseUserDao = mock(DataBaseUserDao.class);
+    private TieredUserDao tieredUserDao;
+
+    @Override
+    protected UserDao createUserDao() {
+        tieredUserDao = new TieredUserDao(new InMemoryUserDao(), dataBaseUserDao, new SimpleMeterRegistry(),
+                100, 10, Duration.ofSeconds(1), Duration.ofMillis(10), "", Optional.empty());
+        tieredUserDao.start();
+        return tieredUserDao;
+    }
+
+    @AfterEach
+    public void stop() throws InterruptedException {
+        tieredUserDao.stop();
+    }
+
+    @Test
+    public void shouldLoadUsersFromDataBaseOnStart() throws InterruptedException {
+        final User storedUser = new User(UUID.randomUUID(), "Stored Name", "stored@email.com", List.of("admin"), 7L);
+        final DataBaseUserDao loadedDataBaseUserDao = mock(DataBaseUserDao.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<User>>getArgument(0).accept(storedUser);
+            return null;
+        }).when(loadedDataBaseUserDao).forEachUser(any(), eq(true));
+
+        final TieredUserDao loadedUserDao = new TieredUserDao(new InMemoryUserDao(), loadedDataBaseUserDao, new SimpleMeterRegistry(),
+                100, 10, Duration.ofSeconds(1), Duration.ofMillis(10), "", Optional.empty());
+        loadedUserDao.start();
+
+        final User loadedUser = loadedUserDao.getUserById(storedUser.getId().toString(), true);
+        Assertions.assertEquals(storedUser, loadedUser);
+        Assertions.assertEquals(7L, loadedUser.getVersion());
+
+        // loaded users are not written back
+        loadedUserDao.stop();
+        verify(loadedDataBaseUserDao, never()).writeUsers(any(), any());
+    }
+
+    @Test
+    public void shouldRejectUsersSavedInBulkWhenQueueIsFull() throws InterruptedException {
+        final TieredUserDao fullUserDao = new TieredUserDao(new InMemoryUserDao(), dataBaseUserDao, new SimpleMeterRegistry(),
+                1, 10, Duration.ofMillis(10), Duration.ofHours(1), "", Optional.empty());
+        fullUserDao.start();
+        final List<User> users = List.of(newUser(),
+                User.builder().name("Other Name").email("other@email.com").roles(List.of("admin")).build(),
+                User.builder().name("Third Name").email("third@email.com").roles(List.of("admin")).build());
+
+        final List<UserSaveResult> results = fullUserDao.saveUsers(users);
+
+        Assertions.assertEquals(List.of(UserSaveResult.Status.CREATED, UserSaveResult.Status.REJECTED, UserSaveResult.Status.REJECTED),
+                results.stream().map(UserSaveResult::getStatus).toList());
+        Assertions.assertEquals(1, fullUserDao.getAllUsers(true).size());
+        fullUserDao.stop();
+    }
+
+    @Test
+    public void shouldNotStartWithPersistenceDirectory() {
+        Assertions.assertThrows(IllegalStateException.class, () -> new TieredUserDao(new InMemoryUserDao(), dataBaseUserDao,
+                new SimpleMeterRegistry(), 100, 10, Duration.ofSeconds(1), Duration.ofMillis(10), "users", Optional.empty()));
+    }
+
+    @Test
+    public void shouldWriteModificationsBehindOnShutdown() throws InterruptedException {
+        final User user = userDao.saveUser(User.builder()
+                .name("Fake Name")
+                .email("fake@email.com")
+                .roles(List.of("admin"))
+                .build());
+
+        tieredUserDao.stop();
+
+        verify(dataBaseUserDao, atLeastOnce()).writeUsers(argThat(users -> users.contains(user)), any());
+    }
+
+    @Test
+    public void shouldTakeOverUserChangedByAnotherInstance() {
+        final User user = userDao.saveUser(newUser());
+        tieredUserDao.flush();
+        final User changedUser = new User(user.getId(), "Changed Name", user.getEmail(), List.of("user"), 1L);
+        when(dataBaseUserDao.getUsersByIds(Set.of(user.getId()))).thenReturn(List.of(changedUser));
+
+        tieredUserDao.usersChanged(Set.of(user.getId()));
+
+        final User refreshedUser = userDao.getUserById(user.getId().toString(), true);
+        Assertions.assertEquals("Changed Name", refreshedUser.getName());
+        Assertions.assertEquals(List.of("user"), refreshedUser.getRoles());
+        Assertions.assertEquals(1L, refreshedUser.getVersion());
+        Assertions.assertEquals(List.of(refreshedUser), List.copyOf(userDao.findUsersByName("Changed Name", true)));
+        Assertions.assertTrue(userDao.findUsersByName("Fake Name", true).isEmpty());
+    }
+
+    @Test
+    public void shouldRemoveUserDeletedByAnotherInstance() {
+        final User user = userDao.saveUser(newUser());
+        tieredUserDao.flush();
+        when(dataBaseUserDao.getUsersByIds(Set.of(user.getId()))).thenReturn(List.of());
+
+        tieredUserDao.usersChanged(Set.of(user.getId()));
+
+        Assertions.assertThrows(NotFoundException.class, () -> userDao.getUserById(user.getId().toString(), true));
+    }
+
+    @Test
+    public void shouldReadChangedUsersByOneQuery() {
+        final User user = userDao.saveUser(newUser());
+        final User otherUser = userDao.saveUser(User.builder().name("Other Name").email("other@email.com").roles(List.of("admin")).build());
+        tieredUserDao.flush();
+        final Set<UUID> ids = Set.of(user.getId(), otherUser.getId());
+        when(dataBaseUserDao.getUsersByIds(ids)).thenReturn(List.of(user, otherUser));
+
+        tieredUserDao.usersChanged(ids);
+
+        verify(dataBaseUserDao, times(1)).getUsersByIds(ids);
+        verify(dataBaseUserDao, never()).getUserById(any(), anyBoolean());
+        Assertions.assertEquals(user, userDao.getUserById(user.getId().toString(), true));
+    }
+
+    @Test
+    public void shouldIgnoreEchoOfOwnWrite() {
+        final User user = userDao.saveUser(newUser());
+        tieredUserDao.flush();
+        when(dataBaseUserDao.getUsersByIds(Set.of(user.getId())))
+                .thenReturn(List.of(new User(user.getId(), "Stale Name", user.getEmail(), user.getRoles(), 0L)));
+
+        tieredUserDao.usersChanged(Set.of(user.getId()));
+
+        Assertions.assertEquals("Fake Name", userDao.getUserById(user.getId().toString(), true).getName());
+    }
+
+    @Test
+    public void shouldKeepPendingModificationWhenUserIsChangedByAnotherInstance() throws InterruptedException {
+        final InProcessUserChangeTransport transport = new InProcessUserChangeTransport();
+        final UserInvalidationBus bus = new UserInvalidationBus(transport, Duration.ofHours(1), new SimpleMeterRegistry());
+        bus.start();
+        final TieredUserDao notFlushedUserDao = new TieredUserDao(new InMemoryUserDao(), dataBaseUserDao, new SimpleMeterRegistry(),
+                100, 10, Duration.ofSeconds(1), Duration.ofHours(1), "", Optional.of(bus));
+        notFlushedUserDao.start();
+        final User user = notFlushedUserDao.saveUser(newUser());
+
+        transport.usersChanged(user.getId());
+        bus.deliver();
+
+        Assertions.assertEquals(user, notFlushedUserDao.getUserById(user.getId().toString(), true));
+        bus.stop();
+        notFlushedUserDao.stop();
+    }
+
+    private static User newUser() {
+        return User.builder()
+                .name("Fake Name")
+                .email("fake@email.com")
+                .roles(List.of("admin"))
+                .build();
+    }
+}
@@ -0,0 +1,131 @@
+package com.sap.refactoring.persistence.tiered;
+
+import com.sap.refactoring.exceptions.ConstraintViolationException;
+import com.sap.refactoring.exceptions.WriteQueueFullException;
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.persistence.db.DataBaseUserDao;
+import com.sap.refactoring.persistence.inmemory.InMemoryUserDao;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class WriteBehindLogUnitTest {
+    @Mock
+    private DataBaseUserDao dataBaseUserDao;
+
+    @Captor
+    private ArgumentCaptor<Collection<User>> usersCaptor;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private WriteBehindLog writeBehindLog;
+
+    @Test
+    public void shouldCoalesceModificationsOfUser() {
+        final InMemoryUserDao userDao = userDao(10);
+        final User user = userDao.saveUser(user("fake@email.com"));
+        user.setName("Second Name");
+        userDao.updateUser(user);
+        user.setName("Third Name");
+        userDao.updateUser(user);
+
+        assertTrue(writeBehindLog.flush());
+
+        verify(dataBaseUserDao).writeUsers(usersCaptor.capture(), eq(List.of()));
+        assertEquals(List.of(user), List.copyOf(usersCaptor.getValue()));
+        assertEquals(2L, usersCaptor.getValue().iterator().next().getVersion());
+        assertEquals(0, writeBehindLog.getPendingCount());
+        assertEquals(1, meterRegistry.get(WriteBehindLog.LAG_TIMER_NAME).timer().count());
+    }
+
+    @Test
+    public void shouldWriteDeletionOfUserByEmail() {
+        final InMemoryUserDao userDao = userDao(10);
+        final User user = userDao.saveUser(user("fake@email.com"));
+        userDao.deleteUser(user);
+
+        assertTrue(writeBehindLog.flush());
+
+        verify(dataBaseUserDao).writeUsers(List.of(), List.of("fake@email.com"));
+    }
+
+    @Test
+    public void shouldWriteInBatches() {
+        final InMemoryUserDao userDao = userDao(10);
+        for (int i = 0; i < 5; i++) {
+            userDao.saveUser(user("fake%d@email.com".formatted(i)));
+        }
+
+        assertTrue(writeBehindLog.flush());
+
+        verify(dataBaseUserDao, times(3)).writeUsers(any(), any());
+    }
+
+    @Test
+    public void shouldKeepModificationsPendingWhenWriteFails() {
+        final InMemoryUserDao userDao = userDao(10);
+        userDao.saveUser(user("fake@email.com"));
+        doThrow(new DataAccessResourceFailureException("connection refused"))
+                .doNothing()
+                .when(dataBaseUserDao).writeUsers(any(), any());
+
+        assertFalse(writeBehindLog.flush());
+        assertEquals(1, writeBehindLog.getPendingCount());
+        assertEquals(1, meterRegistry.get(WriteBehindLog.FAILURES_COUNTER_NAME).counter().count());
+
+        assertTrue(writeBehindLog.flush());
+        assertEquals(0, writeBehindLog.getPendingCount());
+    }
+
+    @Test
+    public void shouldRejectModificationsWhenQueueIsFull() {
+        final InMemoryUserDao userDao = userDao(1);
+        userDao.saveUser(user("first@email.com"));
+
+        final User secondUser = user("second@email.com");
+        assertThrows(WriteQueueFullException.class, () -> userDao.saveUser(secondUser));
+
+        writeBehindLog.flush();
+        assertDoesNotThrow(() -> userDao.saveUser(secondUser));
+    }
+
+    @Test
+    public void shouldFreeSlotWhenModificationFails() {
+        final InMemoryUserDao userDao = userDao(1);
+        final User user = userDao.saveUser(user("first@email.com"));
+        writeBehindLog.flush();
+
+        assertThrows(ConstraintViolationException.class, () -> userDao.saveUser(user("first@email.com")));
+        assertDoesNotThrow(() -> userDao.deleteUser(user));
+        assertEquals(1, writeBehindLog.getPendingCount());
+    }
+
+    private InMemoryUserDao userDao(int capacity) {
+        writeBehindLog = new WriteBehindLog(dataBaseUserDao, capacity, 2, Duration.ofMillis(10), meterRegistry);
+        final InMemoryUserDao userDao = new InMemoryUserDao();
+        userDao.setChangeLog(writeBehindLog);
+        return userDao;
+    }
+
+    private static User user(String email) {
+        return User.builder()
+                .name("Fake Name")
+                .email(email)
+                .roles(List.of("admin"))
+                .build();
+    }
+}
@@ -0,0 +1,96 @@
+package com.sap.refactoring.services;
+
+import com.sap.refactoring.exceptions.IllegalRequestException;
+import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.exceptions.VersionConflictException;
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.persistence.ReactiveUserDao;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ReactiveUserServiceUnitTest {
+    private static final String ID = UUID.randomUUID().toString();
+    @Mock
+    private ReactiveUserDao userDao;
+
+    @InjectMocks
+    private ReactiveUserService userService;
+
+    @Test
+    void shouldDeleteUser() {
+        final User user = user("fake@email.com");
+        when(userDao.getUserById(ID)).thenReturn(Mono.just(user));
+        when(userDao.deleteUser(user)).thenReturn(Mono.empty());
+
+        StepVerifier.create(userService.deleteUser(ID))
+                .verifyComplete();
+        verify(userDao).deleteUser(user);
+    }
+
+    @Test
+    void shouldReadUserAgainWhenItIsModifiedBeforeDelete() {
+        final User user = user("fake@email.com");
+        user.setVersion(1L);
+        final User modifiedUser = new User(user);
+        modifiedUser.setVersion(2L);
+        when(userDao.getUserById(ID)).thenReturn(Mono.just(user), Mono.just(modifiedUser));
+        when(userDao.deleteUser(any())).thenReturn(Mono.error(new VersionConflictException("modified")), Mono.empty());
+
+        StepVerifier.create(userService.deleteUser(ID))
+                .verifyComplete();
+        verify(userDao, times(2)).getUserById(ID);
+    }
+
+    @Test
+    void shouldCompleteDeleteWhenUserDoesNotExist() {
+        when(userDao.getUserById(ID)).thenReturn(Mono.error(new NotFoundException()));
+
+        StepVerifier.create(userService.deleteUser(ID))
+                .verifyComplete();
+        verify(userDao, never()).deleteUser(any());
+    }
+
+    @Test
+    void shouldUpdateUser() {
+        final User oldUser = user("fake@email.com");
+        final User updatedUser = user("fake@email.com");
+        updatedUser.setId(null);
+        updatedUser.setName("New Name");
+        when(userDao.getUserById(ID)).thenReturn(Mono.just(oldUser));
+        when(userDao.updateUser(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        StepVerifier.create(userService.updateUser(ID, updatedUser))
+                .expectNextMatches(user -> user.getId().equals(oldUser.getId()) && user.getName().equals("New Name"))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldNotUpdateUniqueKey() {
+        when(userDao.getUserById(ID)).thenReturn(Mono.just(user("fake@email.com")));
+
+        StepVerifier.create(userService.updateUser(ID, user("another@email.com")))
+                .verifyError(IllegalRequestException.class);
+        verify(userDao, never()).updateUser(any());
+    }
+
+    private static User user(String email) {
+        return User.builder()
+                .id(UUID.fromString(ID))
+                .name("Fake Name")
+                .email(email)
+                .roles(List.of("admin"))
+                .build();
+    }
+}
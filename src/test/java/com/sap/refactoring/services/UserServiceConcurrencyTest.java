@@ -0,0 +1,180 @@
+package com.sap.refactoring.services;
+
+import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.exceptions.VersionConflictException;
+import com.sap.refactoring.models.User;
+import com.sap.refactoring.persistence.inmemory.InMemoryUserDao;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stress tests running concurrent modifications through {@link UserService} against a real {@link InMemoryUserDao}
+ */
+public class UserServiceConcurrencyTest {
+    private static final int USERS_COUNT = 500;
+    private static final int THREADS = 16;
+
+    private UserService userService;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setup() {
+        userService = new UserService(new InMemoryUserDao(), new SimpleMeterRegistry());
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldNotResurrectUsersDeletedDuringUpdate() throws Exception {
+        //given
+        final List<User> savedUsers = saveUsers();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+
+        //when every user is updated and deleted at the same time
+        for (User savedUser : savedUsers) {
+            final String id = savedUser.getId().toString();
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    userService.updateUser(id, renamed(savedUser, "updated"));
+                } catch (NotFoundException e) {
+                    // the delete won the race
+                }
+                return null;
+            }));
+            futures.add(executor.submit(() -> {
+                start.await();
+                userService.deleteUser(id);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+
+        //then none of the users comes back
+        assertTrue(userService.getAllUsers(true).isEmpty());
+        savedUsers.forEach(user -> assertThrows(NotFoundException.class,
+                () -> userService.getUserById(user.getId().toString(), true)));
+    }
+
+    @Test
+    public void shouldApplyConcurrentUpdatesOfDifferentUsers() throws Exception {
+        //given
+        final List<User> savedUsers = saveUsers();
+        final int updatesPerUser = 10;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+
+        //when every user gets a sequence of updates in parallel with the other users
+        for (User savedUser : savedUsers) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 1; i <= updatesPerUser; i++) {
+                    userService.updateUser(savedUser.getId().toString(), renamed(savedUser, "update" + i));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+
+        //then no update is lost
+        assertEquals(USERS_COUNT, userService.getAllUsers(true).size());
+        savedUsers.forEach(user -> assertEquals("update" + updatesPerUser,
+                userService.getUserById(user.getId().toString(), true).getName()));
+    }
+
+    @Test
+    public void shouldApplyOnlyOneOfConcurrentUpdatesBasedOnSameVersion() throws Exception {
+        //given
+        final User savedUser = saveUsers().get(0);
+        final String id = savedUser.getId().toString();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Boolean>> futures = new ArrayList<>();
+
+        //when the user is updated by several clients which have read the same version
+        for (int i = 0; i < THREADS; i++) {
+            final User updatedUser = renamed(savedUser, "update" + i);
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    userService.updateUser(id, updatedUser, savedUser.getVersion());
+                    return true;
+                } catch (VersionConflictException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+        int appliedUpdates = 0;
+        for (Future<Boolean> future : futures) {
+            appliedUpdates += future.get(30, TimeUnit.SECONDS) ? 1 : 0;
+        }
+
+        //then only one of them wins and the others have to read the user again
+        assertEquals(1, appliedUpdates);
+        assertEquals(savedUser.getVersion() + 1, userService.getUserById(id, true).getVersion());
+    }
+
+    @Test
+    public void shouldApplyConcurrentUpdatesOfSameUserWithoutExpectedVersion() throws Exception {
+        //given
+        final User savedUser = saveUsers().get(0);
+        final String id = savedUser.getId().toString();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+
+        //when the user is updated by several clients at once
+        for (int i = 0; i < THREADS; i++) {
+            final User updatedUser = renamed(savedUser, "update" + i);
+            futures.add(executor.submit(() -> {
+                start.await();
+                userService.updateUser(id, updatedUser);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+
+        //then every update is applied one after another
+        assertEquals(savedUser.getVersion() + THREADS, userService.getUserById(id, true).getVersion());
+    }
+
+    private List<User> saveUsers() {
+        return IntStream.range(0, USERS_COUNT)
+                .mapToObj(num -> userService.saveUser(User.builder()
+                        .name("userName" + num)
+                        .email("user" + num + "@email.com")
+                        .roles(List.of("role"))
+                        .build()))
+                .map(User::new)
+                .toList();
+    }
+
+    private static User renamed(User user, String name) {
+        final User renamedUser = new User(user);
+        renamedUser.setId(null);
+        renamedUser.setName(name);
+        return renamedUser;
+    }
+}
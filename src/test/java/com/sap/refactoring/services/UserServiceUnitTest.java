@@ -2,16 +2,25 @@ package com.sap.refactoring.services;
 
 import com.sap.refactoring.exceptions.IllegalRequestException;
 import com.sap.refactoring.exceptions.NotFoundException;
+import com.sap.refactoring.exceptions.VersionConflictException;
 import com.sap.refactoring.models.User;
+import com.sap.refactoring.models.UserSaveResult;
+import com.sap.refactoring.models.UserVersion;
+import com.sap.refactoring.models.UsersPage;
 import com.sap.refactoring.persistence.inmemory.InMemoryUserDao;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -22,6 +31,9 @@ public class UserServiceUnitTest {
     @Mock
     private InMemoryUserDao userDao;
 
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @InjectMocks
     private UserService userService;
 
@@ -41,40 +53,141 @@ public class UserServiceUnitTest {
         verify(userDao, times(1)).saveUser(userInService);
     }
 
+    @Test
+    void shouldSaveUsers() {
+        final List<UserSaveResult> results = List.of(UserSaveResult.created(userInDao));
+        when(userDao.saveUsers(List.of(userInService))).thenReturn(results);
+
+        assertEquals(results, userService.saveUsers(List.of(userInService)));
+    }
+
     @Test
     void shouldGetAllUsers() {
-        when(userDao.getAllUsers()).thenReturn(List.of(userInDao));
+        when(userDao.getAllUsers(true)).thenReturn(List.of(userInDao));
 
-        Collection<User> allUsers = userService.getAllUsers();
+        Collection<User> allUsers = userService.getAllUsers(true);
 
         assertTrue(allUsers.contains(userInDao));
-        verify(userDao, times(1)).getAllUsers();
+        verify(userDao, times(1)).getAllUsers(true);
+    }
+
+    @Test
+    void shouldGetUsersPageWithNextCursor() {
+        final UUID cursor = UUID.randomUUID();
+        final UUID lastId = UUID.randomUUID();
+        final User lastUser = User.builder().id(lastId).build();
+        when(userDao.getUsersPage(cursor, 3, true)).thenReturn(List.of(userInDao, lastUser, userInDao));
+
+        final UsersPage page = userService.getUsersPage(cursor.toString(), 2, true);
+
+        assertEquals(List.of(userInDao, lastUser), page.getUsers());
+        assertEquals(lastId, page.getNextCursor());
+    }
+
+    @Test
+    void shouldGetLastUsersPage() {
+        when(userDao.getUsersPage(null, 3, true)).thenReturn(List.of(userInDao));
+
+        final UsersPage page = userService.getUsersPage(null, 2, true);
+
+        assertEquals(List.of(userInDao), page.getUsers());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void shouldGetUsersPageWithoutRoles() {
+        when(userDao.getUsersPage(null, 3, false)).thenReturn(List.of(userInDao));
+
+        final UsersPage page = userService.getUsersPage(null, 2, false);
+
+        assertEquals(List.of(userInDao), page.getUsers());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void shouldFindUsersByRolePage() {
+        final UUID lastId = UUID.randomUUID();
+        final User lastUser = User.builder().id(lastId).build();
+        when(userDao.findUsersByRole("admin", null, 2, true)).thenReturn(List.of(lastUser, userInDao));
+
+        final UsersPage page = userService.findUsersByRole("admin", null, 1, true);
+
+        assertEquals(List.of(lastUser), page.getUsers());
+        assertEquals(lastId, page.getNextCursor());
+    }
+
+    @Test
+    void shouldThrowWhenPageRequestIsInvalid() {
+        assertThrows(IllegalRequestException.class, () -> userService.getUsersPage(null, 0, true));
+        assertThrows(IllegalRequestException.class, () -> userService.getUsersPage(null, UserService.MAX_PAGE_SIZE + 1, true));
+        assertThrows(IllegalRequestException.class, () -> userService.getUsersPage("not_an_id", 10, true));
+        verify(userDao, never()).getUsersPage(any(), anyInt(), anyBoolean());
     }
 
     @Test
     void shouldGetUserById() {
-        when(userDao.getUserById(ID)).thenReturn(userInDao);
-        final User foundUser = userService.getUserById(ID);
+        when(userDao.getUserById(ID, true)).thenReturn(userInDao);
+        final User foundUser = userService.getUserById(ID, true);
 
         assertEquals(userInDao, foundUser);
-        verify(userDao, times(1)).getUserById(ID);
+        verify(userDao, times(1)).getUserById(ID, true);
+    }
+
+    @Test
+    void shouldGetUserVersion() {
+        final UUID id = UUID.randomUUID();
+        final UserVersion version = new UserVersion(id, 2L, null);
+        when(userDao.getUserVersion(id)).thenReturn(Optional.of(version));
+
+        assertEquals(version, userService.getUserVersion(id.toString()));
+    }
+
+    @Test
+    void shouldThrowWhenVersionOfMissingUserIsRequested() {
+        final UUID id = UUID.randomUUID();
+        when(userDao.getUserVersion(id)).thenReturn(Optional.empty());
+
+        assertThrows(NotFoundException.class, () -> userService.getUserVersion(id.toString()));
+        assertThrows(NotFoundException.class, () -> userService.getUserVersion(ID));
     }
 
     @Test
     void shouldDeleteUserWhenUserExists() {
-        when(userDao.getUserById(ID)).thenReturn(userInDao);
+        final UUID id = UUID.randomUUID();
+        when(userDao.deleteUserById(id, null)).thenReturn(true);
+
+        userService.deleteUser(id.toString());
+
+        verify(userDao, never()).getUserById(any(), anyBoolean());
+    }
+
+    @Test
+    void shouldDeleteUserOfExpectedVersion() {
+        final UUID id = UUID.randomUUID();
+        when(userDao.deleteUserById(id, 5L)).thenReturn(true);
+
+        userService.deleteUser(id.toString(), 5L);
 
-        userService.deleteUser(ID);
-        verify(userDao, times(1)).deleteUser(userInDao);
+        verify(userDao).deleteUserById(id, 5L);
     }
 
     @Test
-    void shouldDeleteUserWhenUserDoesNotExist() {
-        when(userDao.getUserById(ID)).thenThrow(new NotFoundException());
+    void shouldCountVersionConflictsOfDelete() {
+        final UUID id = UUID.randomUUID();
+        when(userDao.deleteUserById(id, 5L)).thenThrow(new VersionConflictException("modified"));
 
-        userService.deleteUser(ID);
+        assertThrows(VersionConflictException.class, () -> userService.deleteUser(id.toString(), 5L));
 
-        verify(userDao, never()).deleteUser(any());
+        assertEquals(1, meterRegistry.get("users.version.conflicts").tag("operation", "deleteUser").counter().count());
+    }
+
+    @Test
+    void shouldThrowWhenDeletedUserDoesNotExist() {
+        final UUID id = UUID.randomUUID();
+        when(userDao.deleteUserById(id, null)).thenReturn(false);
+
+        assertThrows(NotFoundException.class, () -> userService.deleteUser(id.toString()));
+        assertThrows(NotFoundException.class, () -> userService.deleteUser("not_existing_id"));
     }
 
     @Test
@@ -87,7 +200,7 @@ public class UserServiceUnitTest {
                 .roles(List.of("admin", "master"))
                 .build();
         when(userInDao.getEmail()).thenReturn(email);
-        when(userDao.getUserById(ID)).thenReturn(userInDao);
+        when(userDao.getUserById(ID, true)).thenReturn(userInDao);
         when(userDao.updateUser(updatedUser)).thenReturn(userInDao);
 
         //when
@@ -96,6 +209,60 @@ public class UserServiceUnitTest {
         verify(userDao, times(1)).updateUser(updatedUser);
     }
 
+    @Test
+    void shouldRetryUpdateWhenUserIsModifiedConcurrently() {
+        final User updatedUser = User.builder()
+                .name("Fake Name")
+                .email("fake@email.com")
+                .roles(List.of("admin"))
+                .build();
+        when(userInDao.getEmail()).thenReturn("fake@email.com");
+        when(userInDao.getVersion()).thenReturn(1L, 2L);
+        when(userDao.getUserById(ID, true)).thenReturn(userInDao);
+        when(userDao.updateUser(updatedUser))
+                .thenThrow(new VersionConflictException("modified"))
+                .thenReturn(updatedUser);
+
+        userService.updateUser(ID, updatedUser);
+
+        assertEquals(2L, updatedUser.getVersion());
+        verify(userDao, times(2)).updateUser(updatedUser);
+        assertEquals(1, meterRegistry.get("users.version.conflicts").tag("operation", "updateUser").counter().count());
+    }
+
+    @Test
+    void shouldGiveUpUpdateAfterMaxConflictRetries() {
+        final User updatedUser = User.builder()
+                .name("Fake Name")
+                .email("fake@email.com")
+                .roles(List.of("admin"))
+                .build();
+        when(userInDao.getEmail()).thenReturn("fake@email.com");
+        when(userDao.getUserById(ID, true)).thenReturn(userInDao);
+        when(userDao.updateUser(updatedUser)).thenThrow(new VersionConflictException("modified"));
+
+        assertThrows(VersionConflictException.class, () -> userService.updateUser(ID, updatedUser));
+
+        verify(userDao, times(UserService.MAX_CONFLICT_RETRIES + 1)).updateUser(updatedUser);
+    }
+
+    @Test
+    void shouldNotRetryUpdateOfExpectedVersion() {
+        final User updatedUser = User.builder()
+                .name("Fake Name")
+                .email("fake@email.com")
+                .roles(List.of("admin"))
+                .build();
+        when(userInDao.getEmail()).thenReturn("fake@email.com");
+        when(userDao.getUserById(ID, true)).thenReturn(userInDao);
+        when(userDao.updateUser(updatedUser)).thenThrow(new VersionConflictException("modified"));
+
+        assertThrows(VersionConflictException.class, () -> userService.updateUser(ID, updatedUser, 1L));
+
+        assertEquals(1L, updatedUser.getVersion());
+        verify(userDao, times(1)).updateUser(updatedUser);
+    }
+
     @Test
     void shouldThrowWhenUniqueKeyChanges() {
         // given saved and updated users have different email
@@ -104,7 +271,7 @@ public class UserServiceUnitTest {
                 .email("fake@email.com")
                 .roles(List.of("admin", "master"))
                 .build();
-        when(userDao.getUserById(ID)).thenReturn(userInDao);
+        when(userDao.getUserById(ID, true)).thenReturn(userInDao);
 
         // then should throw exception
         assertThrows(IllegalRequestException.class, () -> {
@@ -115,12 +282,33 @@ public class UserServiceUnitTest {
     @Test
     void shouldFindUsersByName() {
         final String name = "name";
-        when(userDao.findUsersByName(name)).thenReturn(List.of(userInDao));
+        when(userDao.findUsersByName(name, true)).thenReturn(List.of(userInDao));
 
-        Collection<User> foundUsers = userService.findUsersByName(name);
+        Collection<User> foundUsers = userService.findUsersByName(name, true);
 
         assertEquals(1, foundUsers.size());
         assertTrue(foundUsers.contains(userInDao));
-        verify(userDao, times(1)).findUsersByName(name);
+        verify(userDao, times(1)).findUsersByName(name, true);
+    }
+
+    @Test
+    void shouldFindUsersByNamePrefix() {
+        when(userDao.findUsersByNamePrefix("na", 10, true)).thenReturn(List.of(userInDao));
+
+        assertEquals(List.of(userInDao), userService.findUsersByNamePrefix("na", 10, true));
+    }
+
+    @Test
+    void shouldRejectEmptyNamePrefix() {
+        assertThrows(IllegalRequestException.class, () -> userService.findUsersByNamePrefix("", 10, true));
+
+        verifyNoInteractions(userDao);
+    }
+
+    @Test
+    void shouldRejectSearchByNamePrefixWithLimitOutOfRange() {
+        assertThrows(IllegalRequestException.class, () -> userService.findUsersByNamePrefix("na", UserService.MAX_PAGE_SIZE + 1, true));
+
+        verifyNoInteractions(userDao);
     }
 }
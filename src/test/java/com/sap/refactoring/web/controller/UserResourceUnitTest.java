@@ -1,21 +1,41 @@
 package com.sap.refactoring.web.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sap.refactoring.exceptions.IllegalRequestException;
+import com.sap.refactoring.exceptions.VersionConflictException;
+import com.sap.refactoring.models.UserSaveResult;
+import com.sap.refactoring.models.UserVersion;
+import com.sap.refactoring.models.UsersPage;
 import com.sap.refactoring.services.UserService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.sap.refactoring.models.User;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -29,17 +49,23 @@ public class UserResourceUnitTest
 
 	@Mock
 	private UserService userService;
+	@Spy
+	private ObjectMapper objectMapper = new ObjectMapper();
 	@Mock
 	private User userInService;
 	@Mock
 	private User userInController;
 
+	private final MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/users");
+	private final MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+	private final ServletWebRequest webRequest = new ServletWebRequest(servletRequest, servletResponse);
+
 	@Test
 	void shouldAddUser() {
 		when(userService.saveUser(userInController)).thenReturn(userInService);
 		when(userInService.getId()).thenReturn(uuid);
 
-		ResponseEntity<User> response = userController.addUser(userInController);
+		ResponseEntity<User> response = userController.addUser(userInController, null);
 
 		// Assert
 		assertEquals(201, response.getStatusCodeValue());
@@ -48,58 +74,319 @@ public class UserResourceUnitTest
 		Mockito.verify(userService, times(1)).saveUser(any(User.class));
 	}
 
+	@Test
+	void shouldAddUsers() {
+		final List<UserSaveResult> results = List.of(UserSaveResult.created(userInService));
+		when(userService.saveUsers(List.of(userInController))).thenReturn(results);
+
+		ResponseEntity<List<UserSaveResult>> response = userController.addUsers(List.of(userInController));
+
+		assertEquals(200, response.getStatusCodeValue());
+		assertEquals(results, response.getBody());
+	}
+
 	@Test
 	void shouldUpdateUser() {
-		when(userService.updateUser(uuid.toString(), userInController)).thenReturn(userInService);
+		when(userService.updateUser(uuid.toString(), userInController, null)).thenReturn(userInService);
+		when(userInService.getVersion()).thenReturn(4L);
 
-		ResponseEntity<User> response = userController.updateUser(uuid.toString(), userInController);
+		ResponseEntity<User> response = userController.updateUser(uuid.toString(), userInController, null, null);
 
 		assertEquals(200, response.getStatusCodeValue());
 		assertEquals(userInService, response.getBody());
+		assertEquals("\"4\"", response.getHeaders().getETag());
+	}
+
+	@Test
+	void shouldUpdateUserOfVersionGivenByIfMatch() {
+		when(userService.updateUser(uuid.toString(), userInController, 3L)).thenReturn(userInService);
+		when(userInService.getVersion()).thenReturn(4L);
+
+		ResponseEntity<User> response = userController.updateUser(uuid.toString(), userInController, "\"3\"", null);
+
+		assertEquals(200, response.getStatusCodeValue());
+		assertEquals("\"4\"", response.getHeaders().getETag());
+	}
+
+	@Test
+	void shouldUpdateUserOfVersionGivenByETagOfAnotherRepresentation() {
+		when(userService.updateUser(uuid.toString(), userInController, 3L)).thenReturn(userInService);
+		when(userInService.getVersion()).thenReturn(4L);
+
+		ResponseEntity<User> response = userController.updateUser(uuid.toString(), userInController,
+				"\"3-cbor-id.email\"", "application/x-jackson-smile");
+
+		assertEquals("\"4-smile\"", response.getHeaders().getETag());
+	}
+
+	@Test
+	void shouldNotUpdateUserWhenIfMatchIsNotVersion() {
+		assertThrows(VersionConflictException.class,
+				() -> userController.updateUser(uuid.toString(), userInController, "W/\"3\"", null));
+
+		verify(userService, never()).updateUser(any(), any(), any());
 	}
 
 	@Test
 	void shouldGetUserById() {
-		when(userService.getUserById(uuid.toString())).thenReturn(userInService);
+		when(userService.getUserById(uuid.toString(), true)).thenReturn(userInService);
+		when(userInService.getVersion()).thenReturn(2L);
+
+		ResponseEntity<User> response = userController.getUserById(uuid.toString(), null, webRequest);
+
+		assertEquals(200, response.getStatusCodeValue());
+		assertEquals(userInService, response.getBody());
+		assertEquals("\"2\"", response.getHeaders().getETag());
+		assertEquals(HttpHeaders.ACCEPT, servletResponse.getHeader(HttpHeaders.VARY));
+	}
+
+	@Test
+	void shouldTellRepresentationsOfUserApartByETag() {
+		when(userService.getUserById(uuid.toString(), false)).thenReturn(userInService);
+		when(userInService.getVersion()).thenReturn(2L);
+		servletRequest.addHeader(HttpHeaders.ACCEPT, "application/json;q=0.5, application/cbor");
+
+		ResponseEntity<User> response = userController.getUserById(uuid.toString(), "name,id", webRequest);
+
+		assertEquals("\"2-cbor-id.name\"", response.getHeaders().getETag());
+		assertEquals(HttpHeaders.ACCEPT, servletResponse.getHeader(HttpHeaders.VARY));
+	}
+
+	@Test
+	void shouldGetUserByIdWithoutRoles() {
+		when(userService.getUserById(uuid.toString(), false)).thenReturn(userInService);
+
+		ResponseEntity<User> response = userController.getUserById(uuid.toString(), "id,name", webRequest);
+
+		assertEquals(userInService, response.getBody());
+		verify(userService, never()).getUserById(uuid.toString(), true);
+	}
+
+	@Test
+	void shouldGetUserByIdWithLastModified() {
+		final Instant updatedAt = Instant.parse("2026-10-18T10:15:30Z");
+		when(userService.getUserById(uuid.toString(), true)).thenReturn(userInService);
+		when(userInService.getVersion()).thenReturn(2L);
+		when(userInService.getUpdatedAt()).thenReturn(updatedAt);
+
+		ResponseEntity<User> response = userController.getUserById(uuid.toString(), null, webRequest);
+
+		assertEquals(200, response.getStatusCodeValue());
+		assertEquals(updatedAt.toEpochMilli(), response.getHeaders().getLastModified());
+	}
+
+	@Test
+	void shouldAnswerNotModifiedByVersionOfUser() {
+		servletRequest.addHeader(HttpHeaders.IF_NONE_MATCH, "\"2\"");
+		when(userService.getUserVersion(uuid.toString())).thenReturn(new UserVersion(uuid, 2L, null));
+
+		ResponseEntity<User> response = userController.getUserById(uuid.toString(), null, webRequest);
+
+		assertNull(response);
+		assertEquals(304, servletResponse.getStatus());
+		assertEquals("\"2\"", servletResponse.getHeader(HttpHeaders.ETAG));
+		verify(userService, never()).getUserById(any(), anyBoolean());
+	}
+
+	@Test
+	void shouldAnswerNotModifiedSinceModificationOfUser() {
+		final Instant updatedAt = Instant.parse("2026-10-18T10:15:30Z");
+		servletRequest.addHeader(HttpHeaders.IF_MODIFIED_SINCE, updatedAt.plusSeconds(1).toEpochMilli());
+		when(userService.getUserVersion(uuid.toString())).thenReturn(new UserVersion(uuid, 2L, updatedAt));
+
+		ResponseEntity<User> response = userController.getUserById(uuid.toString(), null, webRequest);
+
+		assertNull(response);
+		assertEquals(304, servletResponse.getStatus());
+		verify(userService, never()).getUserById(any(), anyBoolean());
+	}
+
+	@Test
+	void shouldGetModifiedUser() {
+		servletRequest.addHeader(HttpHeaders.IF_NONE_MATCH, "\"1\"");
+		when(userService.getUserVersion(uuid.toString())).thenReturn(new UserVersion(uuid, 2L, null));
+		when(userService.getUserById(uuid.toString(), true)).thenReturn(userInService);
+		when(userInService.getVersion()).thenReturn(2L);
 
-		ResponseEntity<User> response = userController.getUserById(uuid.toString());
+		ResponseEntity<User> response = userController.getUserById(uuid.toString(), null, webRequest);
 
 		assertEquals(200, response.getStatusCodeValue());
 		assertEquals(userInService, response.getBody());
+		assertEquals("\"2\"", response.getHeaders().getETag());
 	}
 
 	@Test
 	void testDeleteUser() {
-		doNothing().when(userService).deleteUser(uuid.toString());
+		doNothing().when(userService).deleteUser(uuid.toString(), null);
 
-		ResponseEntity<Void> response = userController.deleteUser(uuid.toString());
+		ResponseEntity<Void> response = userController.deleteUser(uuid.toString(), "*");
 
 		assertEquals(204, response.getStatusCodeValue());
 	}
 
+	@Test
+	void shouldDeleteUserOfVersionGivenByIfMatch() {
+		ResponseEntity<Void> response = userController.deleteUser(uuid.toString(), "\"7\"");
+
+		assertEquals(204, response.getStatusCodeValue());
+		verify(userService).deleteUser(uuid.toString(), 7L);
+	}
+
 	@Test
 	void testGetUsers() {
 		// Arrange
-		when(userService.getAllUsers()).thenReturn(Collections.singletonList(userInService));
+		when(userService.getAllUsers(true)).thenReturn(Collections.singletonList(userInService));
 
 		// Act
-		ResponseEntity<Collection<User>> response = userController.getUsers(null);
+		ResponseEntity<?> response = userController.getUsers(null, null, null, null, null, null, webRequest);
 
 		// Assert
 		assertEquals(200, response.getStatusCodeValue());
-		assertTrue(response.getBody().contains(userInService));  // Assert that the returned list contains the user
-		verify(userService, times(1)).getAllUsers();  // Ensure that getAllUsers was called once
+		assertTrue(((Collection<?>) response.getBody()).contains(userInService));  // Assert that the returned list contains the user
+		verify(userService, times(1)).getAllUsers(true);  // Ensure that getAllUsers was called once
 	}
 
 	@Test
 	void testFindUsersByName() {
 		String name = "John";
-		when(userService.findUsersByName(name)).thenReturn(Collections.singletonList(userInService));
+		when(userService.findUsersByName(name, true)).thenReturn(Collections.singletonList(userInService));
+
+		ResponseEntity<?> response = userController.getUsers(name, null, null, null, null, null, webRequest);
+
+		assertEquals(200, response.getStatusCodeValue());
+		assertTrue(((Collection<?>) response.getBody()).contains(userInService));  // Assert that the returned list contains the user
+		verify(userService, times(1)).findUsersByName(name, true);  // Ensure that findUsersByName was called once
+	}
+
+	@Test
+	void testFindUsersByNameNotModified() {
+		final User user = User.builder().id(uuid).name("John").version(4L).build();
+		when(userService.findUsersByName("John", true)).thenReturn(List.of(user));
+		final String eTag = userController.getUsers("John", null, null, null, null, null, webRequest).getHeaders().getETag();
+
+		final MockHttpServletRequest conditionalRequest = new MockHttpServletRequest("GET", "/users");
+		conditionalRequest.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+		final MockHttpServletResponse conditionalResponse = new MockHttpServletResponse();
+		when(userService.findUserVersionsByName("John")).thenReturn(List.of(new UserVersion(uuid, 4L, null)));
+
+		ResponseEntity<?> response = userController.getUsers("John", null, null, null, null, null,
+				new ServletWebRequest(conditionalRequest, conditionalResponse));
 
-		ResponseEntity<Collection<User>> response = userController.getUsers(name);
+		assertTrue(eTag.startsWith("W/\""));
+		assertNull(response);
+		assertEquals(304, conditionalResponse.getStatus());
+		assertEquals(HttpHeaders.ACCEPT, conditionalResponse.getHeader(HttpHeaders.VARY));
+		verify(userService, times(1)).findUsersByName("John", true);
+	}
+
+	@Test
+	void testFindUsersByNamePrefix() {
+		when(userService.findUsersByNamePrefix("jo", 10, true)).thenReturn(List.of(userInService));
+
+		ResponseEntity<?> response = userController.getUsers(null, "jo", null, 10, null, null, webRequest);
+
+		assertEquals(200, response.getStatusCodeValue());
+		assertEquals(List.of(userInService), response.getBody());
+		assertNull(response.getHeaders().getFirst(HttpHeaders.LINK));
+		verify(userService, never()).getAllUsers(anyBoolean());
+	}
+
+	@Test
+	void testGetUsersPage() {
+		when(userService.getUsersPage(null, 10, true)).thenReturn(new UsersPage(List.of(userInService), uuid));
+
+		ResponseEntity<?> response = userController.getUsers(null, null, null, 10, null, null, webRequest);
 
 		assertEquals(200, response.getStatusCodeValue());
-		assertTrue(response.getBody().contains(userInService));  // Assert that the returned list contains the user
-		verify(userService, times(1)).findUsersByName(name);  // Ensure that findUsersByName was called once
+		assertEquals(new UsersPage(List.of(userInService), uuid), response.getBody());
+		assertEquals("</users?limit=10&cursor=" + uuid + ">; rel=\"next\"", response.getHeaders().getFirst(HttpHeaders.LINK));
+		verify(userService, never()).getAllUsers(anyBoolean());
+	}
+
+	@Test
+	void testGetUsersPageWithoutRoles() {
+		when(userService.getUsersPage(null, 10, false)).thenReturn(new UsersPage(List.of(userInService), uuid));
+
+		ResponseEntity<?> response = userController.getUsers(null, null, null, 10, null, "id,email", webRequest);
+
+		assertEquals(new UsersPage(List.of(userInService), uuid), response.getBody());
+		assertEquals("</users?limit=10&cursor=" + uuid + "&fields=id,email>; rel=\"next\"", response.getHeaders().getFirst(HttpHeaders.LINK));
+	}
+
+	@Test
+	void testGetUsersWithUnknownField() {
+		assertThrows(IllegalRequestException.class, () -> userController.getUsers(null, null, null, 10, null, "id,password", webRequest));
+		verifyNoInteractions(userService);
+	}
+
+	@Test
+	void testFindUsersByRole() {
+		when(userService.findUsersByRole("admin & co", null, UserController.DEFAULT_PAGE_SIZE, true))
+				.thenReturn(new UsersPage(List.of(userInService), uuid));
+
+		ResponseEntity<?> response = userController.getUsers(null, null, "admin & co", null, null, null, webRequest);
+
+		assertEquals(200, response.getStatusCodeValue());
+		assertEquals(new UsersPage(List.of(userInService), uuid), response.getBody());
+		assertEquals("</users?role=admin%20%26%20co&limit=" + UserController.DEFAULT_PAGE_SIZE + "&cursor=" + uuid + ">; rel=\"next\"",
+				response.getHeaders().getFirst(HttpHeaders.LINK));
+		verify(userService, never()).getAllUsers(anyBoolean());
+	}
+
+	@Test
+	void testGetLastUsersPage() {
+		when(userService.getUsersPage(uuid.toString(), UserController.DEFAULT_PAGE_SIZE, true))
+				.thenReturn(new UsersPage(List.of(userInService), null));
+
+		ResponseEntity<?> response = userController.getUsers(null, null, null, null, uuid.toString(), null, webRequest);
+
+		assertEquals(200, response.getStatusCodeValue());
+		assertEquals(new UsersPage(List.of(userInService), null), response.getBody());
+		assertNull(response.getHeaders().getFirst(HttpHeaders.LINK));
+	}
+
+	@Test
+	void testExportUsers() throws Exception {
+		final List<User> users = List.of(
+				User.builder().id(uuid).name("name1").email("email1").roles(List.of("admin")).build(),
+				User.builder().id(UUID.randomUUID()).name("name2").email("email2").roles(List.of("master")).build());
+		doAnswer(invocation -> {
+			final Consumer<User> consumer = invocation.getArgument(0);
+			users.forEach(consumer);
+			return null;
+		}).when(userService).forEachUser(any(), eq(true));
+
+		ResponseEntity<StreamingResponseBody> response = userController.exportUsers(null);
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		response.getBody().writeTo(outputStream);
+
+		assertEquals(200, response.getStatusCodeValue());
+		assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+		final List<User> exportedUsers = outputStream.toString(StandardCharsets.UTF_8).lines()
+				.map(line -> {
+					try {
+						return objectMapper.readValue(line, User.class);
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+				})
+				.toList();
+		assertEquals(users, exportedUsers);
+	}
+
+	@Test
+	void testExportSelectedFieldsOfUsers() throws Exception {
+		final User user = User.builder().id(uuid).name("name1").email("email1").roles(List.of("admin")).build();
+		doAnswer(invocation -> {
+			final Consumer<User> consumer = invocation.getArgument(0);
+			consumer.accept(user);
+			return null;
+		}).when(userService).forEachUser(any(), eq(false));
+
+		ResponseEntity<StreamingResponseBody> response = userController.exportUsers("email,id");
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		response.getBody().writeTo(outputStream);
+
+		assertEquals("{\"id\":\"" + uuid + "\",\"email\":\"email1\"}\n", outputStream.toString(StandardCharsets.UTF_8));
 	}
 }